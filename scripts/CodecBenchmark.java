@@ -0,0 +1,108 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.p2p.model.WebSocketMessage;
+import com.p2p.util.WebSocketMessageCodec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Encode/decode cost and size of WebSocketMessage as JSON (Jackson) vs WebSocketMessageCodec.
+ * Run through scripts/bench-codec.sh.
+ */
+public class CodecBenchmark {
+
+    private static final int MESSAGES = 10_000;
+    private static final int ROUNDS = 20;
+    private static final int WARMUP_ROUNDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<WebSocketMessage> messages = sampleMessages();
+
+        List<byte[]> json = new ArrayList<>();
+        List<byte[]> binary = new ArrayList<>();
+        for (WebSocketMessage message : messages) {
+            json.add(objectMapper.writeValueAsBytes(message));
+            binary.add(WebSocketMessageCodec.encode(message));
+        }
+        System.out.printf("%-8s %12s %14s %14s%n", "format", "bytes/msg", "encode ns/msg", "decode ns/msg");
+        
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            boolean report = round == WARMUP_ROUNDS + ROUNDS - 1;
+            
+            long start = System.nanoTime();
+            long sink = 0;
+            for (WebSocketMessage message : messages) {
+                sink += objectMapper.writeValueAsBytes(message).length;
+            }
+            long jsonEncode = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (byte[] bytes : json) {
+                sink += objectMapper.readValue(bytes, WebSocketMessage.class).getSeq();
+            }
+            long jsonDecode = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (WebSocketMessage message : messages) {
+                sink += WebSocketMessageCodec.encode(message).length;
+            }
+            long binaryEncode = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for (byte[] bytes : binary) {
+                sink += WebSocketMessageCodec.decode(bytes).getSeq();
+            }
+            long binaryDecode = System.nanoTime() - start;
+            
+            if (report) {
+                print("json", json, jsonEncode, jsonDecode);
+                print("binary", binary, binaryEncode, binaryDecode);
+            }
+            if (sink == 42) {
+                System.out.println(); // Keep the loops from being optimised away
+            }
+        }
+    }
+
+    private static void print(String format, List<byte[]> encoded, long encodeNanos, long decodeNanos) {
+        long bytes = 0;
+        for (byte[] message : encoded) {
+            bytes += message.length;
+        }
+        System.out.printf("%-8s %12.1f %14.1f %14.1f%n", format, (double) bytes / MESSAGES,
+                (double) encodeNanos / MESSAGES, (double) decodeNanos / MESSAGES);
+    }
+
+    // Mostly short chats, some joins/leaves and file shares, like a busy room
+    private static List<WebSocketMessage> sampleMessages() {
+        Random random = new Random(42);
+        String[] senders = {"alice", "bob", "carol", "dave", "erin"};
+        String[] chats = {"ok", "thanks!", "can you share the slides?", "uploading the build now, give me a minute",
+                "looks good to me, merging after lunch unless someone objects to the naming"};
+        List<WebSocketMessage> messages = new ArrayList<>(MESSAGES);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < MESSAGES; i++) {
+            WebSocketMessage message = new WebSocketMessage();
+            String sender = senders[random.nextInt(senders.length)];
+            int kind = random.nextInt(10);
+            if (kind < 7) {
+                message.setType(WebSocketMessage.MessageType.CHAT);
+                message.setContent(chats[random.nextInt(chats.length)]);
+            } else if (kind < 9) {
+                message.setType(kind == 7 ? WebSocketMessage.MessageType.JOIN : WebSocketMessage.MessageType.LEAVE);
+                message.setContent(sender + (kind == 7 ? " joined the room" : " left the room"));
+            } else {
+                message.setType(WebSocketMessage.MessageType.FILE);
+                message.setContent(sender + " shared a file: report-" + i + ".pdf");
+                message.setFileId(Long.toHexString(random.nextLong()) + "abcdef01");
+            }
+            message.setSender(sender);
+            message.setSeq(i + 1);
+            message.setTimestamp(now + i * 37L);
+            messages.add(message);
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,14 @@
+#!/usr/bin/env bash
+# Bytes per message and encode/decode cost of room messages: JSON vs the binary codec.
+#
+#   scripts/bench-codec.sh
+#
+# Compiles the project, then runs scripts/CodecBenchmark.java against target/classes.
+
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+mvn -B -q compile
+mvn -B -q dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+java -cp "target/classes:$(cat target/classpath.txt)" scripts/CodecBenchmark.java
@@ -0,0 +1,36 @@
+#!/usr/bin/env bash
+# Compare the servlet runtime (P2PApplication, :8080) with the reactive runtime
+# (ReactiveP2PApplication, :8081) on the same endpoints and connection counts.
+#
+# Needs wrk (https://github.com/wg/wrk), both runtimes running against the same
+# MongoDB, a JWT from POST /api/auth/login and the id of an uploaded file:
+#
+#   TOKEN=... FILE_ID=... scripts/bench-runtimes.sh
+#
+# For each runtime and connection count it prints wrk's latency/throughput summary
+# followed by the live JVM thread count reported by /actuator/prometheus.
+
+set -euo pipefail
+
+SERVLET_URL=${SERVLET_URL:-http://localhost:8080}
+REACTIVE_URL=${REACTIVE_URL:-http://localhost:8081}
+CONNECTIONS=${CONNECTIONS:-"100 1000 10000"}
+DURATION=${DURATION:-30s}
+THREADS=${THREADS:-8}
+
+: "${TOKEN:?set TOKEN to a JWT from /api/auth/login}"
+: "${FILE_ID:?set FILE_ID to an uploaded file id}"
+
+ulimit -n 65535 2>/dev/null || true
+
+for base in "$SERVLET_URL" "$REACTIVE_URL"; do
+    for path in "/api/rooms" "/api/peers/online" "/api/files/$FILE_ID"; do
+        for c in $CONNECTIONS; do
+            echo "=== $base$path  connections=$c"
+            wrk -t"$THREADS" -c"$c" -d"$DURATION" --latency \
+                -H "Authorization: Bearer $TOKEN" "$base$path" \
+                | grep -E "Latency|Req/Sec|requests in|Requests/sec|Transfer/sec|50%|99%|Socket errors"
+            curl -s "$base/actuator/prometheus" | grep -E "^jvm_threads_live_threads" || true
+        done
+    done
+done
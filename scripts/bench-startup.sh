@@ -0,0 +1,76 @@
+#!/usr/bin/env bash
+# Time-to-first-request for the servlet runtime, with and without the production
+# launch mode (lazy init, "prod" profile) and the class-data-sharing archive.
+#
+# Needs MongoDB running and a CDS build:
+#
+#   mvn -Pcds package -DskipTests
+#   scripts/bench-startup.sh
+#
+# Each configuration is started RUNS times; a run ends when GET /actuator/health
+# first answers 200. Prints min/median/max wall-clock milliseconds per configuration.
+# The per-step startup timeline of each run is logged by StartupTimelineReporter.
+
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+JAR=${JAR:-target/p2p-information-exchange-0.0.1-SNAPSHOT.jar}
+ARCHIVE=${ARCHIVE:-target/app.jsa}
+PORT=${PORT:-8080}
+RUNS=${RUNS:-5}
+TIMEOUT_SECONDS=${TIMEOUT_SECONDS:-120}
+LOG_DIR=${LOG_DIR:-target/bench-startup}
+
+[ -f "$JAR" ] || { echo "missing $JAR, run: mvn -Pcds package -DskipTests" >&2; exit 1; }
+mkdir -p "$LOG_DIR"
+
+now_ms() {
+    date +%s%3N
+}
+
+# Start the app with the given JVM options and print milliseconds until the first 200
+time_to_first_request() {
+    local name=$1; shift
+    local start pid elapsed
+    start=$(now_ms)
+    java "$@" -Dserver.port="$PORT" -jar "$JAR" > "$LOG_DIR/$name.log" 2>&1 &
+    pid=$!
+
+    elapsed=""
+    while kill -0 "$pid" 2>/dev/null; do
+        if curl -fs -o /dev/null "http://localhost:$PORT/actuator/health"; then
+            elapsed=$(( $(now_ms) - start ))
+            break
+        fi
+        if [ $(( $(now_ms) - start )) -gt $(( TIMEOUT_SECONDS * 1000 )) ]; then
+            break
+        fi
+        sleep 0.05
+    done
+
+    kill "$pid" 2>/dev/null || true
+    wait "$pid" 2>/dev/null || true
+
+    [ -n "$elapsed" ] || { echo "$name did not come up, see $LOG_DIR/$name.log" >&2; exit 1; }
+    echo "$elapsed"
+}
+
+bench() {
+    local label=$1; shift
+    local times=()
+    for i in $(seq 1 "$RUNS"); do
+        times+=("$(time_to_first_request "$label-$i" "$@")")
+    done
+    printf '%s\n' "${times[@]}" | sort -n | awk -v label="$label" '
+        { t[NR] = $1 }
+        END { printf "%-22s min %6d ms   median %6d ms   max %6d ms\n", label, t[1], t[int((NR + 1) / 2)], t[NR] }'
+}
+
+bench "default"
+bench "prod"          -Dspring.profiles.active=prod
+if [ -f "$ARCHIVE" ]; then
+    bench "prod+cds"  -XX:SharedArchiveFile="$ARCHIVE" -Dspring.profiles.active=prod
+else
+    echo "no $ARCHIVE, skipping CDS run" >&2
+fi
@@ -0,0 +1,44 @@
+#!/usr/bin/env bash
+# Run several clustered instances on localhost against the same MongoDB.
+#
+#   mvn package -DskipTests
+#   scripts/cluster-local.sh            # nodes on 8080 8082 8083
+#   PORTS="8080 8082" scripts/cluster-local.sh
+#
+# Connect browsers to different ports and join the same room: chat reaches every
+# node via the room's owner. Check membership and ownership on any node with
+#
+#   curl -H "X-Cluster-Secret: $SECRET" "http://localhost:8080/internal/cluster/status?roomId=<id>"
+#
+# Stop one node (Ctrl-C kills all; kill <pid> for one) to watch its rooms move.
+# Logs go to target/cluster/<port>.log.
+
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+JAR=${JAR:-target/p2p-information-exchange-0.0.1-SNAPSHOT.jar}
+PORTS=${PORTS:-"8080 8082 8083"}
+# A fresh secret per run unless one is given
+SECRET=${SECRET:-$(head -c 16 /dev/urandom | od -An -tx1 | tr -d ' \n')}
+LOG_DIR=target/cluster
+
+[ -f "$JAR" ] || { echo "missing $JAR, run: mvn package -DskipTests" >&2; exit 1; }
+mkdir -p "$LOG_DIR"
+
+pids=()
+trap 'kill "${pids[@]}" 2>/dev/null || true; wait' INT TERM EXIT
+
+for port in $PORTS; do
+    java -jar "$JAR" \
+        --server.port="$port" \
+        --cluster.enabled=true \
+        --cluster.advertised-address="http://localhost:$port" \
+        --cluster.secret="$SECRET" \
+        > "$LOG_DIR/$port.log" 2>&1 &
+    pids+=($!)
+    echo "node http://localhost:$port pid $! (log $LOG_DIR/$port.log)"
+done
+echo "cluster secret: $SECRET"
+
+wait
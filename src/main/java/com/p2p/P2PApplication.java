@@ -1,25 +1,49 @@
 package com.p2p;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.autoconfigure.data.mongo.MongoReactiveDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoReactiveRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoReactiveAutoConfiguration;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import java.io.File;
 
-@SpringBootApplication
+// Reactive Mongo is only used by the reactive runtime (com.p2p.reactive)
+@SpringBootApplication(exclude = {
+        MongoReactiveAutoConfiguration.class,
+        MongoReactiveDataAutoConfiguration.class,
+        MongoReactiveRepositoriesAutoConfiguration.class
+})
 public class P2PApplication {
 
+    private static final Logger logger = LoggerFactory.getLogger(P2PApplication.class);
+    
+    // Startup steps kept for the timeline report and /actuator/startup
+    private static final int STARTUP_STEP_CAPACITY = 8192;
+
     public static void main(String[] args) {
         // Create upload directory if it doesn't exist
         File uploadDir = new File("./uploads");
         if (!uploadDir.exists()) {
-            uploadDir.mkdirs();
+            boolean created = uploadDir.mkdirs();
+            logger.info("Created upload directory {}: {}", uploadDir.getAbsolutePath(), created);
         }
         
-        SpringApplication.run(P2PApplication.class, args);
+        SpringApplication application = new SpringApplication(P2PApplication.class);
+        application.setApplicationStartup(new BufferingApplicationStartup(STARTUP_STEP_CAPACITY));
+        ConfigurableApplicationContext context = application.run(args);
+        
+        // CDS training run (see the "cds" Maven profile): load everything, then exit so the JVM dumps the archive
+        if (Boolean.getBoolean("p2p.startup.exit-after-refresh")) {
+            System.exit(SpringApplication.exit(context));
+        }
     }
     
     @Bean
@@ -34,4 +58,4 @@ public class P2PApplication {
             }
         };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,26 @@
+package com.p2p.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+// Plain (non-STOMP) WebSocket endpoint for live file relays; it authenticates in its first frame
+@Configuration
+@EnableWebSocket
+public class FileRelaySocketConfig implements WebSocketConfigurer {
+
+    private FileRelayWebSocketHandler fileRelayWebSocketHandler;
+
+    @Autowired
+    public FileRelaySocketConfig(FileRelayWebSocketHandler fileRelayWebSocketHandler) {
+        this.fileRelayWebSocketHandler = fileRelayWebSocketHandler;
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(fileRelayWebSocketHandler, "/ws-relay")
+                .setAllowedOrigins("*");
+    }
+}
@@ -0,0 +1,59 @@
+package com.p2p.config;
+
+import com.p2p.service.FileRelayService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Raw WebSocket endpoint for live relays (/ws-relay); all logic lives in {@link FileRelayService}
+ */
+@Component
+public class FileRelayWebSocketHandler extends AbstractWebSocketHandler {
+
+    private FileRelayService fileRelayService;
+
+    @Autowired
+    public FileRelayWebSocketHandler(FileRelayService fileRelayService) {
+        this.fileRelayService = fileRelayService;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        // Container defaults (8 KB on Tomcat) are smaller than a chunk
+        session.setBinaryMessageSizeLimit(fileRelayService.getMaxMessageSize());
+        session.setTextMessageSizeLimit(fileRelayService.getMaxMessageSize());
+        fileRelayService.onConnected(session);
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        fileRelayService.onText(session, message.getPayload());
+    }
+
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        ByteBuffer payload = message.getPayload();
+        byte[] chunk = new byte[payload.remaining()];
+        payload.get(chunk);
+        fileRelayService.onBinary(session, chunk);
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+        if (session.isOpen()) {
+            session.close(CloseStatus.SERVER_ERROR);
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        fileRelayService.onClosed(session);
+    }
+}
@@ -0,0 +1,41 @@
+package com.p2p.config;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+import com.p2p.util.RequestTiming;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Attributes Mongo command time to the "db" phase of the current request.
+ * The sync driver reports command events on the calling thread.
+ */
+@Configuration
+public class MongoTimingConfig {
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer requestTimingCommandListener() {
+        return builder -> builder.addCommandListener(new CommandListener() {
+            @Override
+            public void commandSucceeded(CommandSucceededEvent event) {
+                record(event.getElapsedTime(TimeUnit.NANOSECONDS));
+            }
+            
+            @Override
+            public void commandFailed(CommandFailedEvent event) {
+                record(event.getElapsedTime(TimeUnit.NANOSECONDS));
+            }
+            
+            private void record(long nanos) {
+                RequestTiming timing = RequestTiming.current();
+                if (timing != null) {
+                    timing.add("db", nanos);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,122 @@
+package com.p2p.config;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Broker channel executor that runs each destination on a fixed shard.
+ *
+ * Every message for /topic/room/{roomId} is handled by the same single-threaded shard,
+ * so a room's messages keep their order and a busy room only competes with the rooms
+ * hashed to its own shard. The broker fan-out itself only enqueues into the per-session
+ * outbound queues ({@link SessionOutboundExecutor}), so slow subscribers never hold a shard.
+ * A full shard queue blocks the sending thread until there is room, pushing back on the
+ * inbound channel; running the task on the sender instead would overtake the room's queued
+ * messages. A send from a shard thread itself can't wait on a full shard, so it is dropped
+ * and counted.
+ */
+public class RoomPartitionedExecutor extends ThreadPoolTaskExecutor {
+
+    private static final String ROOM_TOPIC_PREFIX = "/topic/room/";
+    private static final String SHARD_THREAD_PREFIX = "broker-shard-";
+
+    private final ThreadPoolExecutor[] shards;
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public RoomPartitionedExecutor(int shardCount, int shardQueueCapacity) {
+        this.shards = new ThreadPoolExecutor[Math.max(1, shardCount)];
+        for (int i = 0; i < shards.length; i++) {
+            String threadName = SHARD_THREAD_PREFIX + i;
+            shards[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, shardQueueCapacity)),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    this::waitForRoom);
+        }
+        
+        // Fallback pool for tasks that don't carry a message
+        setCorePoolSize(1);
+        setMaxPoolSize(1);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (task instanceof MessageHandlingRunnable) {
+            String key = partitionKey(((MessageHandlingRunnable) task).getMessage());
+            if (key != null) {
+                shards[Math.floorMod(key.hashCode(), shards.length)].execute(task);
+                return;
+            }
+        }
+        super.execute(task);
+    }
+
+    @Override
+    public void shutdown() {
+        for (ThreadPoolExecutor shard : shards) {
+            shard.shutdownNow();
+        }
+        super.shutdown();
+    }
+
+    public Map<String, Object> getStats() {
+        List<Integer> queued = new ArrayList<>(shards.length);
+        long completed = 0;
+        for (ThreadPoolExecutor shard : shards) {
+            queued.add(shard.getQueue().size());
+            completed += shard.getCompletedTaskCount();
+        }
+        
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("shards", shards.length);
+        stats.put("queuedPerShard", queued);
+        stats.put("completed", completed);
+        stats.put("blocked", blocked.sum());
+        stats.put("dropped", dropped.sum());
+        return stats;
+    }
+
+    // Shard queue full: wait for room behind the tasks already queued, so order is kept
+    private void waitForRoom(Runnable task, ThreadPoolExecutor shard) {
+        if (shard.isShutdown() || Thread.currentThread().getName().startsWith(SHARD_THREAD_PREFIX)) {
+            dropped.increment();
+            return;
+        }
+        blocked.increment();
+        try {
+            shard.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped.increment();
+        }
+    }
+
+    // Room id for room topics, otherwise the destination itself (or the session for destination-less messages)
+    private static String partitionKey(Message<?> message) {
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination != null) {
+            if (destination.startsWith(ROOM_TOPIC_PREFIX)) {
+                int end = destination.indexOf('/', ROOM_TOPIC_PREFIX.length());
+                return end < 0 ? destination.substring(ROOM_TOPIC_PREFIX.length())
+                        : destination.substring(ROOM_TOPIC_PREFIX.length(), end);
+            }
+            return destination;
+        }
+        return SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+    }
+}
@@ -0,0 +1,13 @@
+package com.p2p.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Runs the @Scheduled jobs: peer timeouts (PeerRegistrationService, which never ran before this
+// was enabled), version retention (FileService), the peer availability sync and replay buffer
+// eviction (RoomReplayBuffer). Under the lazy "prod" profile these beans must be eager (see
+// StartupConfig), or their jobs only start once something first uses them.
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
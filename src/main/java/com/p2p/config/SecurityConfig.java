@@ -6,6 +6,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Profile;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
@@ -18,6 +19,7 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 @Configuration
+@Profile("!simple-security")
 @EnableWebSecurity
 @EnableGlobalMethodSecurity(prePostEnabled = true)
 public class SecurityConfig extends WebSecurityConfigurerAdapter {
@@ -48,15 +50,23 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
             .antMatchers("/dashboard").permitAll()
             .antMatchers("/room/**").permitAll()
             
+            // WebSocket handshakes; the token comes in the STOMP CONNECT (or first relay) frame
+            .antMatchers("/ws/**", "/ws-native", "/ws-relay").permitAll()
+            
             // Static resources
             .antMatchers("/css/**", "/js/**", "/images/**").permitAll()
             .antMatchers("/h2-console/**").permitAll()
             .antMatchers("/swagger-ui/**", "/v3/api-docs/**").permitAll()
             
-            // IMPORTANT: Allow file download endpoints
-            .antMatchers("/api/files/{fileId}").permitAll()
             .antMatchers("/uploads/**").permitAll()
             
+            // Metrics scrape and health check
+            .antMatchers("/actuator/health", "/actuator/prometheus").permitAll()
+            .antMatchers("/actuator/startup").hasRole("ADMIN")
+            
+            // Node-to-node relay, authenticated by the shared cluster secret
+            .antMatchers("/internal/cluster/**").permitAll()
+            
             // Debug endpoints
             .antMatchers("/api/rooms/debug/**").permitAll()
             
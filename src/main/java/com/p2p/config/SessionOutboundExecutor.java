@@ -0,0 +1,207 @@
+package com.p2p.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client outbound channel executor with a bounded queue per WebSocket session.
+ *
+ * Messages for a session are written in order by at most one pool thread at a time,
+ * and a thread drains at most {@code DRAIN_BATCH} messages before yielding to other
+ * sessions. When a session's queue is full the {@link OverflowPolicy} decides whether
+ * to drop the oldest message, drop the new one, or disconnect the session; either way
+ * a slow subscriber only ever delays itself.
+ */
+public class SessionOutboundExecutor extends ThreadPoolTaskExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionOutboundExecutor.class);
+    private static final int DRAIN_BATCH = 32;
+
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        DROP_NEWEST,
+        DISCONNECT
+    }
+
+    private final int sessionQueueCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final Map<String, SessionQueue> queues = new ConcurrentHashMap<>();
+
+    // Metrics
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+
+    public SessionOutboundExecutor(int threads, int sessionQueueCapacity, OverflowPolicy overflowPolicy) {
+        this.sessionQueueCapacity = Math.max(1, sessionQueueCapacity);
+        this.overflowPolicy = overflowPolicy;
+        setCorePoolSize(threads);
+        setMaxPoolSize(threads);
+        setAllowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        String sessionId = null;
+        if (task instanceof MessageHandlingRunnable) {
+            sessionId = SimpMessageHeaderAccessor.getSessionId(((MessageHandlingRunnable) task).getMessage().getHeaders());
+        }
+        if (sessionId == null) {
+            super.execute(task);
+            return;
+        }
+        
+        while (true) {
+            SessionQueue queue = queues.computeIfAbsent(sessionId, SessionQueue::new);
+            if (queue.offer((MessageHandlingRunnable) task)) {
+                return;
+            }
+            // The queue was retired after draining empty; retry with a fresh one
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("threads", getMaxPoolSize());
+        stats.put("activeThreads", getActiveCount());
+        stats.put("sessionsWithQueuedMessages", queues.size());
+        stats.put("queued", queued.get());
+        stats.put("maxQueueDepth", maxQueueDepth.get());
+        stats.put("sessionQueueCapacity", sessionQueueCapacity);
+        stats.put("overflowPolicy", overflowPolicy.name());
+        stats.put("dropped", dropped.sum());
+        stats.put("disconnected", disconnected.sum());
+        return stats;
+    }
+
+    private class SessionQueue implements Runnable {
+
+        private final String sessionId;
+        private final ArrayDeque<MessageHandlingRunnable> tasks = new ArrayDeque<>();
+        private boolean scheduled;
+        private boolean retired;
+        private boolean overflowed;
+
+        SessionQueue(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        /**
+         * @return false if this queue has been retired and must not be used any more
+         */
+        synchronized boolean offer(MessageHandlingRunnable task) {
+            if (retired) {
+                return false;
+            }
+            if (overflowed) {
+                dropped.increment();
+                return true; // Session is being disconnected, nothing more goes out
+            }
+            
+            if (tasks.size() >= sessionQueueCapacity) {
+                switch (overflowPolicy) {
+                    case DROP_NEWEST:
+                        dropped.increment();
+                        return true;
+                    case DROP_OLDEST:
+                        tasks.poll();
+                        queued.decrementAndGet();
+                        dropped.increment();
+                        break;
+                    case DISCONNECT:
+                    default:
+                        disconnect(task.getMessageHandler());
+                        return true;
+                }
+            }
+            
+            tasks.add(task);
+            maxQueueDepth.accumulateAndGet(tasks.size(), Math::max);
+            queued.incrementAndGet();
+            if (!scheduled) {
+                scheduled = true;
+                SessionOutboundExecutor.super.execute(this);
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < DRAIN_BATCH; i++) {
+                Runnable task;
+                synchronized (this) {
+                    task = tasks.poll();
+                    if (task == null) {
+                        // Drained: retire so idle and closed sessions don't keep a queue around
+                        scheduled = false;
+                        retired = true;
+                        queues.remove(sessionId, this);
+                        return;
+                    }
+                    queued.decrementAndGet();
+                }
+                try {
+                    task.run();
+                } catch (Throwable ex) {
+                    logger.warn("Error sending message to session {}", sessionId, ex);
+                }
+            }
+            
+            // Yield to other sessions, then carry on with this one
+            SessionOutboundExecutor.super.execute(this);
+        }
+
+        // Called with the lock held: drop the backlog and let the ERROR frame close the session
+        private void disconnect(MessageHandler handler) {
+            overflowed = true;
+            dropped.add(tasks.size() + 1);
+            queued.addAndGet(-tasks.size());
+            tasks.clear();
+            disconnected.increment();
+            logger.warn("Outbound queue for session {} overflowed ({} messages), disconnecting", sessionId, sessionQueueCapacity);
+            
+            StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.ERROR);
+            accessor.setSessionId(sessionId);
+            accessor.setMessage("Outbound queue overflow, client too slow");
+            Message<byte[]> error = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+            tasks.add(new MessageHandlingRunnable() {
+                @Override
+                public Message<?> getMessage() {
+                    return error;
+                }
+                
+                @Override
+                public MessageHandler getMessageHandler() {
+                    return handler;
+                }
+                
+                @Override
+                public void run() {
+                    handler.handleMessage(error);
+                }
+            });
+            queued.incrementAndGet();
+            if (!scheduled) {
+                scheduled = true;
+                SessionOutboundExecutor.super.execute(this);
+            }
+        }
+    }
+}
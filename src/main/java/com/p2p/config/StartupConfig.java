@@ -0,0 +1,43 @@
+package com.p2p.config;
+
+import com.p2p.security.TokenRevocationList;
+import com.p2p.service.ChatLogService;
+import com.p2p.service.ClusterMembershipService;
+import com.p2p.service.FileService;
+import com.p2p.service.OnlinePeerSnapshot;
+import com.p2p.service.PasswordVerificationService;
+import com.p2p.service.PeerAvailabilityIndex;
+import com.p2p.service.PeerRegistrationService;
+import com.p2p.service.RoomReplayBuffer;
+import com.p2p.service.UserService;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Startup tuning for the "prod" profile, which turns on lazy bean initialisation.
+ *
+ * Beans that warm caches, register meters or start background work (cluster heartbeat,
+ * chat log writer) in their constructor/@PostConstruct stay eager, so that work happens
+ * before the first request rather than during it. Beans with @Scheduled methods stay
+ * eager too: their jobs are only registered once the bean is created.
+ */
+@Configuration
+public class StartupConfig {
+
+    @Bean
+    public static LazyInitializationExcludeFilter eagerWarmupBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(
+                OnlinePeerSnapshot.class,
+                UserService.class,
+                TokenRevocationList.class,
+                PasswordVerificationService.class,
+                WebSocketMetrics.class,
+                ClusterMembershipService.class,
+                ChatLogService.class,
+                PeerAvailabilityIndex.class,
+                FileService.class,
+                PeerRegistrationService.class,
+                RoomReplayBuffer.class);
+    }
+}
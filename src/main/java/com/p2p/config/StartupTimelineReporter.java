@@ -0,0 +1,73 @@
+package com.p2p.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Logs a startup timeline once the application is ready: JVM time to ready and the
+ * slowest recorded startup steps (bean instantiation, context refresh, ...).
+ * The full timeline is available at /actuator/startup.
+ */
+@Component
+public class StartupTimelineReporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupTimelineReporter.class);
+
+    @Value("${startup.report.enabled:true}")
+    private boolean enabled;
+
+    @Value("${startup.report.top-steps:15}")
+    private int topSteps;
+
+    @EventListener
+    public void onApplicationReady(ApplicationReadyEvent event) {
+        if (!enabled) {
+            return;
+        }
+        
+        long uptimeMs = ManagementFactory.getRuntimeMXBean().getUptime();
+        logger.info("Startup: ready {} ms after JVM start (context startup {} ms)",
+                uptimeMs, event.getTimeTaken() != null ? event.getTimeTaken().toMillis() : -1);
+        
+        ApplicationStartup startup = event.getApplicationContext().getApplicationStartup();
+        if (!(startup instanceof BufferingApplicationStartup)) {
+            return;
+        }
+        
+        // getBufferedTimeline keeps the steps for /actuator/startup
+        StartupTimeline timeline = ((BufferingApplicationStartup) startup).getBufferedTimeline();
+        List<StartupTimeline.TimelineEvent> slowest = timeline.getEvents().stream()
+                .sorted(Comparator.comparing(StartupTimeline.TimelineEvent::getDuration).reversed())
+                .limit(topSteps)
+                .collect(Collectors.toList());
+        
+        StringBuilder report = new StringBuilder();
+        for (StartupTimeline.TimelineEvent step : slowest) {
+            report.append(String.format("%n  %6d ms  %s%s", step.getDuration().toMillis(),
+                    step.getStartupStep().getName(), describe(step)));
+        }
+        logger.info("Startup: {} steps recorded, slowest {}:{}", timeline.getEvents().size(), slowest.size(), report);
+    }
+
+    private String describe(StartupTimeline.TimelineEvent step) {
+        for (StartupStep.Tag tag : step.getStartupStep().getTags()) {
+            if ("beanName".equals(tag.getKey())) {
+                return " [" + tag.getValue() + "]";
+            }
+        }
+        return "";
+    }
+}
@@ -1,19 +1,86 @@
 package com.p2p.config;
 
+import com.p2p.security.StompAuthChannelInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private StompAuthChannelInterceptor stompAuthChannelInterceptor;
+
+    // Thread counts of 0 mean two per CPU
+    @Value("${websocket.inbound.threads:0}")
+    private int inboundThreads;
+
+    @Value("${websocket.inbound.queue-capacity:10000}")
+    private int inboundQueueCapacity;
+
+    @Value("${websocket.broker.shards:0}")
+    private int brokerShards;
+
+    @Value("${websocket.broker.shard-queue-capacity:10000}")
+    private int brokerShardQueueCapacity;
+
+    @Value("${websocket.outbound.threads:0}")
+    private int outboundThreads;
+
+    @Value("${websocket.outbound.session-queue-capacity:1000}")
+    private int outboundSessionQueueCapacity;
+
+    @Value("${websocket.outbound.overflow-policy:DROP_OLDEST}")
+    private SessionOutboundExecutor.OverflowPolicy outboundOverflowPolicy;
+
+    @Value("${websocket.transport.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${websocket.transport.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Autowired
+    public WebSocketConfig(StompAuthChannelInterceptor stompAuthChannelInterceptor) {
+        this.stompAuthChannelInterceptor = stompAuthChannelInterceptor;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic");
+        config.enableSimpleBroker("/topic", "/queue");
         config.setApplicationDestinationPrefixes("/app");
+        
+        // Partition broker work by room so one busy room can't delay the others
+        config.configureBrokerChannel()
+                .taskExecutor(new RoomPartitionedExecutor(threads(brokerShards), brokerShardQueueCapacity));
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        int threads = threads(inboundThreads);
+        registration.taskExecutor()
+                .corePoolSize(threads)
+                .maxPoolSize(threads)
+                .queueCapacity(inboundQueueCapacity);
+        registration.interceptors(stompAuthChannelInterceptor);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor(new SessionOutboundExecutor(threads(outboundThreads),
+                outboundSessionQueueCapacity, outboundOverflowPolicy));
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Last line of defence behind the per-session queues: a single stuck write
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeLimit);
     }
 
     @Override
@@ -21,5 +88,13 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/ws")
                 .setAllowedOrigins("*")
                 .withSockJS();
+        
+        // Plain WebSocket: needed for binary frames (/topic/room/{roomId}/bin), SockJS only carries text
+        registry.addEndpoint("/ws-native")
+                .setAllowedOrigins("*");
+    }
+
+    private static int threads(int configured) {
+        return configured > 0 ? configured : Runtime.getRuntime().availableProcessors() * 2;
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,11 @@
 package com.p2p.config;
 
 import com.p2p.model.WebSocketMessage;
+import com.p2p.service.RoomMessageRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
-import org.springframework.messaging.simp.SimpMessageSendingOperations;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionConnectedEvent;
@@ -12,17 +14,19 @@ import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 @Component
 public class WebSocketEventListener {
 
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketEventListener.class);
+
     // Removed 'final' modifier
-    private SimpMessageSendingOperations messagingTemplate;
+    private RoomMessageRouter roomMessageRouter;
     
     @Autowired
-    public WebSocketEventListener(SimpMessageSendingOperations messagingTemplate) {
-        this.messagingTemplate = messagingTemplate;
+    public WebSocketEventListener(RoomMessageRouter roomMessageRouter) {
+        this.roomMessageRouter = roomMessageRouter;
     }
     
     @EventListener
     public void handleWebSocketConnectListener(SessionConnectedEvent event) {
-        System.out.println("Received a new web socket connection");
+        logger.debug("Received a new web socket connection {}", StompHeaderAccessor.wrap(event.getMessage()).getSessionId());
     }
     
     @EventListener
@@ -38,7 +42,8 @@ public class WebSocketEventListener {
             message.setSender(username);
             message.setContent(username + " left the room");
             
-            messagingTemplate.convertAndSend("/topic/room/" + roomId, message);
+            // Sequenced and relayed like any other room event
+            roomMessageRouter.publish(roomId, message);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,97 @@
+package com.p2p.config;
+
+import com.p2p.model.WebSocketMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * WebSocket session/subscription gauges and room message counters by message type.
+ * Room ids are deliberately not a tag: every room ever used would become a time series.
+ */
+@Component
+public class WebSocketMetrics {
+
+    private MeterRegistry meterRegistry;
+    
+    // Message type -> counter
+    private final Map<String, Counter> roomMessages = new ConcurrentHashMap<>();
+    
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final AtomicInteger subscriptions = new AtomicInteger();
+    
+    // Session id -> number of live subscriptions, so a disconnect can release them all
+    private final Map<String, AtomicInteger> sessionSubscriptions = new ConcurrentHashMap<>();
+    
+    @Autowired
+    public WebSocketMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        
+        Gauge.builder("p2p.websocket.sessions", sessions, AtomicInteger::get)
+                .description("Connected STOMP sessions")
+                .register(meterRegistry);
+        Gauge.builder("p2p.websocket.subscriptions", subscriptions, AtomicInteger::get)
+                .description("Active STOMP subscriptions")
+                .register(meterRegistry);
+    }
+    
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        String sessionId = StompHeaderAccessor.wrap(event.getMessage()).getSessionId();
+        if (sessionId != null && sessionSubscriptions.putIfAbsent(sessionId, new AtomicInteger()) == null) {
+            sessions.incrementAndGet();
+        }
+    }
+    
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        String sessionId = StompHeaderAccessor.wrap(event.getMessage()).getSessionId();
+        AtomicInteger count = sessionId != null ? sessionSubscriptions.get(sessionId) : null;
+        if (count != null) {
+            count.incrementAndGet();
+            subscriptions.incrementAndGet();
+        }
+    }
+    
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        String sessionId = StompHeaderAccessor.wrap(event.getMessage()).getSessionId();
+        AtomicInteger count = sessionId != null ? sessionSubscriptions.get(sessionId) : null;
+        if (count != null && count.getAndUpdate(c -> Math.max(0, c - 1)) > 0) {
+            subscriptions.decrementAndGet();
+        }
+    }
+    
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        AtomicInteger count = sessionSubscriptions.remove(event.getSessionId());
+        if (count != null) {
+            sessions.decrementAndGet();
+            subscriptions.addAndGet(-count.get());
+        }
+    }
+    
+    /**
+     * Count a STOMP message broadcast to a room
+     */
+    public void recordRoomMessage(WebSocketMessage.MessageType type) {
+        roomMessages.computeIfAbsent(type != null ? type.name() : "UNKNOWN",
+                name -> Counter.builder("p2p.websocket.room.messages")
+                        .description("STOMP messages broadcast to rooms")
+                        .tag("type", name)
+                        .register(meterRegistry))
+                .increment();
+    }
+}
@@ -2,34 +2,38 @@ package com.p2p.controller;
 
 import com.p2p.model.User;
 import com.p2p.security.JwtTokenProvider;
+import com.p2p.service.PasswordVerificationService;
 import com.p2p.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/api/auth")
 public class AuthController {
 
     // Removed 'final' modifiers
-    private AuthenticationManager authenticationManager;
+    private PasswordVerificationService passwordVerificationService;
     private UserService userService;
     private JwtTokenProvider jwtTokenProvider;
     
     @Autowired
-    public AuthController(AuthenticationManager authenticationManager, UserService userService, JwtTokenProvider jwtTokenProvider) {
-        this.authenticationManager = authenticationManager;
+    public AuthController(PasswordVerificationService passwordVerificationService, UserService userService, JwtTokenProvider jwtTokenProvider) {
+        this.passwordVerificationService = passwordVerificationService;
         this.userService = userService;
         this.jwtTokenProvider = jwtTokenProvider;
     }
@@ -40,30 +44,69 @@ public class AuthController {
         return ResponseEntity.ok(registeredUser);
     }
     
+    // Live availability check for the signup form
+    @GetMapping("/available")
+    public ResponseEntity<Map<String, Boolean>> checkAvailability(
+            @RequestParam(value = "username", required = false) String username,
+            @RequestParam(value = "email", required = false) String email) {
+        Map<String, Boolean> response = new HashMap<>();
+        if (username != null) {
+            response.put("username", userService.isUsernameAvailable(username));
+        }
+        if (email != null) {
+            response.put("email", userService.isEmailAvailable(email));
+        }
+        return ResponseEntity.ok(response);
+    }
+    
+    // BCrypt runs on the dedicated login pool and the response is completed from there,
+    // so the request thread is released at once; shed load instead of queueing
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody Map<String, String> loginRequest) {
+    public CompletableFuture<ResponseEntity<?>> login(@RequestBody Map<String, String> loginRequest) {
         String username = loginRequest.get("username");
         String password = loginRequest.get("password");
         
-        Authentication authentication = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(username, password));
-        
-        SecurityContextHolder.getContext().setAuthentication(authentication);
-        
-        String jwt = jwtTokenProvider.generateToken((User) authentication.getPrincipal());
-        
-        Map<String, Object> response = new HashMap<>();
-        response.put("token", jwt);
-        response.put("user", authentication.getPrincipal());
-        
-        return ResponseEntity.ok(response);
+        return passwordVerificationService.authenticate(username, password)
+                .<ResponseEntity<?>>thenApply(authentication -> {
+                    String jwt = jwtTokenProvider.generateToken((User) authentication.getPrincipal());
+                    
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("token", jwt);
+                    response.put("user", authentication.getPrincipal());
+                    return ResponseEntity.ok(response);
+                })
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof PasswordVerificationService.LoginRejectedException) {
+                        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                .header(HttpHeaders.RETRY_AFTER,
+                                        String.valueOf(((PasswordVerificationService.LoginRejectedException) cause).getRetryAfterSeconds()))
+                                .body(cause.getMessage());
+                    }
+                    // Authentication failures are handled as if thrown by the controller
+                    throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                });
     }
     
     @PostMapping("/logout")
     public ResponseEntity<?> logout(HttpServletRequest request) {
-        // In a stateless JWT approach, the client is responsible for discarding the token
-        // Here we can implement any server-side cleanup if needed
+        // Revoke the presented token so it can't be reused before it expires
+        String authHeader = request.getHeader("Authorization");
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            jwtTokenProvider.revokeToken(authHeader.substring(7));
+        }
         
         return ResponseEntity.ok().body("Logged out successfully");
     }
+    
+    // Revoke a leaked or compromised token without rotating jwt.secret for everyone
+    @PostMapping("/revoke")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> revokeToken(@RequestBody Map<String, String> request) {
+        String token = request.get("token");
+        if (token == null || !jwtTokenProvider.revokeToken(token)) {
+            return ResponseEntity.badRequest().body("Invalid or expired token");
+        }
+        return ResponseEntity.ok().body("Token revoked");
+    }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+package com.p2p.controller;
+
+import com.p2p.model.ClusterEnvelope;
+import com.p2p.service.ClusterMembershipService;
+import com.p2p.service.RoomMessageRouter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Node-to-node endpoints. Not for clients: every call must carry the shared cluster secret.
+ */
+@RestController
+@RequestMapping("/internal/cluster")
+public class ClusterController {
+
+    private ClusterMembershipService membershipService;
+    private RoomMessageRouter roomMessageRouter;
+
+    @Value("${cluster.secret:}")
+    private String secret;
+    
+    @Autowired
+    public ClusterController(ClusterMembershipService membershipService, RoomMessageRouter roomMessageRouter) {
+        this.membershipService = membershipService;
+        this.roomMessageRouter = roomMessageRouter;
+    }
+    
+    @PostMapping("/messages")
+    public ResponseEntity<Void> receiveMessages(@RequestHeader(value = RoomMessageRouter.SECRET_HEADER, required = false) String providedSecret,
+                                                @RequestBody List<ClusterEnvelope> envelopes) {
+        if (!isAuthorized(providedSecret)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        
+        roomMessageRouter.receive(envelopes);
+        return ResponseEntity.noContent().build();
+    }
+    
+    // Membership, relay stats and, with ?roomId=, which node owns that room
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> getStatus(@RequestHeader(value = RoomMessageRouter.SECRET_HEADER, required = false) String providedSecret,
+                                                         @RequestParam(value = "roomId", required = false) String roomId) {
+        if (!isAuthorized(providedSecret)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        
+        Map<String, Object> status = membershipService.getStatus();
+        status.put("relay", roomMessageRouter.getStats());
+        if (roomId != null) {
+            status.put("roomOwner", membershipService.getOwner(roomId));
+        }
+        return ResponseEntity.ok(status);
+    }
+    
+    private boolean isAuthorized(String providedSecret) {
+        if (!membershipService.isEnabled() || secret.isEmpty() || providedSecret == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8),
+                providedSecret.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,27 +1,57 @@
 package com.p2p.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.p2p.config.RoomPartitionedExecutor;
+import com.p2p.config.SessionOutboundExecutor;
 import com.p2p.model.File;
 import com.p2p.model.Room;
 import com.p2p.model.User;
 import com.p2p.repository.FileRepository;
 import com.p2p.repository.RoomRepository;
 import com.p2p.repository.UserRepository;
+import com.p2p.security.AccessControlService;
+import com.p2p.service.ChatLogService;
+import com.p2p.service.ChunkStore;
+import com.p2p.service.FileRelayService;
+import com.p2p.service.PasswordVerificationService;
+import com.p2p.service.PeerAvailabilityIndex;
+import com.p2p.service.PeerRankingService;
+import com.p2p.service.RoomOccupancyIndex;
+import com.p2p.service.SignalingService;
+import com.p2p.service.SwarmTracker;
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/debug")
@@ -29,6 +59,13 @@ public class DebugController {
 
     private static final Logger logger = LoggerFactory.getLogger(DebugController.class);
     
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int EXPORT_BATCH_SIZE = 500;
+    private static final int EXPORT_FLUSH_EVERY = 100;
+    
+    // Fields that are never exported, even when asked for explicitly
+    private static final Set<String> USER_HIDDEN_FIELDS = Set.of("password");
+    
     @Value("${file.upload.dir}")
     private String uploadDir;
     
@@ -41,6 +78,50 @@ public class DebugController {
     @Autowired
     private FileRepository fileRepository;
     
+    @Autowired
+    private PasswordVerificationService passwordVerificationService;
+    
+    @Autowired
+    private ChatLogService chatLogService;
+    
+    @Autowired
+    private AccessControlService accessControlService;
+    
+    @Autowired
+    private RoomOccupancyIndex roomOccupancyIndex;
+    
+    @Autowired
+    private SignalingService signalingService;
+    
+    @Autowired
+    private FileRelayService fileRelayService;
+    
+    @Autowired
+    private SwarmTracker swarmTracker;
+    
+    @Autowired
+    private ChunkStore chunkStore;
+    
+    @Autowired
+    private PeerAvailabilityIndex peerAvailabilityIndex;
+    
+    @Autowired
+    private PeerRankingService peerRankingService;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    @Qualifier("brokerChannelExecutor")
+    private TaskExecutor brokerChannelExecutor;
+    
+    @Autowired
+    @Qualifier("clientOutboundChannelExecutor")
+    private TaskExecutor clientOutboundChannelExecutor;
+    
     @GetMapping("/system-info")
     public ResponseEntity<Map<String, Object>> getSystemInfo() {
         Map<String, Object> info = new HashMap<>();
@@ -83,22 +164,116 @@ public class DebugController {
             info.put("databaseError", e.getMessage());
         }
         
+        // Login pool stats
+        info.put("loginPool", passwordVerificationService.getStats());
+        
+        // Chat log writer
+        info.put("chatLog", chatLogService.getStats());
+        info.put("accessControl", accessControlService.getStats());
+        info.put("roomOccupancy", roomOccupancyIndex.getStats());
+        info.put("signaling", signalingService.getStats());
+        info.put("fileRelay", fileRelayService.getStats());
+        info.put("swarm", swarmTracker.getStats());
+        info.put("chunks", chunkStore.getStats());
+        info.put("availability", peerAvailabilityIndex.getStats());
+        info.put("ranking", peerRankingService.getStats());
+        
+        // STOMP broker shards and per-session outbound queues
+        if (brokerChannelExecutor instanceof RoomPartitionedExecutor) {
+            info.put("websocketBroker", ((RoomPartitionedExecutor) brokerChannelExecutor).getStats());
+        }
+        if (clientOutboundChannelExecutor instanceof SessionOutboundExecutor) {
+            info.put("websocketOutbound", ((SessionOutboundExecutor) clientOutboundChannelExecutor).getStats());
+        }
+        
         return ResponseEntity.ok(info);
     }
     
+    // Collection dumps are streamed from a Mongo cursor as newline-delimited JSON,
+    // one document per line, so memory stays flat whatever the collection size.
+    // Optional "fields" is a comma-separated projection, e.g. ?fields=username,email
+    
     @GetMapping("/users")
-    public ResponseEntity<List<User>> getAllUsers() {
-        return ResponseEntity.ok(userRepository.findAll());
+    @PreAuthorize("hasRole('ADMIN')")
+    public void exportUsers(@RequestParam(value = "fields", required = false) String fields,
+                            HttpServletResponse response) throws IOException {
+        streamCollection(mongoTemplate.getCollectionName(User.class), fields, USER_HIDDEN_FIELDS, response);
     }
     
     @GetMapping("/rooms")
-    public ResponseEntity<List<Room>> getAllRooms() {
-        return ResponseEntity.ok(roomRepository.findAll());
+    @PreAuthorize("hasRole('ADMIN')")
+    public void exportRooms(@RequestParam(value = "fields", required = false) String fields,
+                            HttpServletResponse response) throws IOException {
+        streamCollection(mongoTemplate.getCollectionName(Room.class), fields, Set.of(), response);
     }
     
     @GetMapping("/files")
-    public ResponseEntity<List<File>> getAllFiles() {
-        return ResponseEntity.ok(fileRepository.findAll());
+    @PreAuthorize("hasRole('ADMIN')")
+    public void exportFiles(@RequestParam(value = "fields", required = false) String fields,
+                            HttpServletResponse response) throws IOException {
+        streamCollection(mongoTemplate.getCollectionName(File.class), fields, Set.of(), response);
+    }
+    
+    private void streamCollection(String collection, String fields, Set<String> hiddenFields,
+                                  HttpServletResponse response) throws IOException {
+        Query query = new Query().cursorBatchSize(EXPORT_BATCH_SIZE);
+        List<String> included = new ArrayList<>();
+        if (fields != null) {
+            for (String field : fields.split(",")) {
+                String name = field.trim();
+                if (!name.isEmpty() && !isHidden(name, hiddenFields)) {
+                    included.add(name);
+                }
+            }
+        }
+        // Mongo can't mix inclusion and exclusion: include only allowed fields, or else
+        // exclude the hidden ones. An empty include list must never mean "everything".
+        if (!included.isEmpty()) {
+            included.forEach(name -> query.fields().include(name));
+        } else {
+            hiddenFields.forEach(name -> query.fields().exclude(name));
+        }
+        
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding("UTF-8");
+        
+        long count = 0;
+        OutputStream out = response.getOutputStream();
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+        try (CloseableIterator<Document> cursor = mongoTemplate.stream(query, Document.class, collection)) {
+            while (cursor.hasNext()) {
+                Document document = cursor.next();
+                Object id = document.remove("_id");
+                if (id != null) {
+                    document.put("id", id instanceof ObjectId ? ((ObjectId) id).toHexString() : id);
+                }
+                
+                writer.writeValue(generator, document);
+                generator.writeRaw('\n');
+                
+                // Flush the first row straight away, then in small batches
+                if (++count == 1 || count % EXPORT_FLUSH_EVERY == 0) {
+                    generator.flush();
+                    out.flush();
+                }
+            }
+        }
+        generator.flush();
+        out.flush();
+        logger.debug("Exported {} documents from {}", count, collection);
+    }
+    
+    // The field itself or anything nested under it
+    private static boolean isHidden(String name, Set<String> hiddenFields) {
+        for (String hidden : hiddenFields) {
+            if (name.equals(hidden) || name.startsWith(hidden + ".")) {
+                return true;
+            }
+        }
+        return false;
     }
     
     @GetMapping("/rooms/user/{userId}")
@@ -153,6 +328,14 @@ public class DebugController {
             result.put("ownerId", file.getOwnerId());
             result.put("uploadDate", file.getUploadDate());
             result.put("encrypted", file.isEncrypted());
+            result.put("chunked", file.isChunked());
+            result.put("versionGroupId", file.getVersionGroupId());
+            result.put("version", file.getVersion());
+            
+            if (file.isChunked()) {
+                result.put("storedSize", file.getStoredSize());
+                return ResponseEntity.ok(result);
+            }
             
             // Check if file exists on disk
             java.io.File physicalFile = new java.io.File(file.getFilePath());
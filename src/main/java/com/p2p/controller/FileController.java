@@ -1,11 +1,24 @@
 package com.p2p.controller;
 
+import com.p2p.model.BlockSignature;
 import com.p2p.model.File;
+import com.p2p.model.MerkleProof;
+import com.p2p.model.SwarmView;
 import com.p2p.model.User;
+import com.p2p.security.AccessControlService;
+import com.p2p.service.FileIntegrityService;
 import com.p2p.service.FileService;
+import com.p2p.service.PeerAvailabilityIndex;
+import com.p2p.service.PeerRankingService;
+import com.p2p.service.SwarmTracker;
+import com.p2p.util.RequestTiming;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.AbstractResource;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
@@ -15,12 +28,14 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/files")
@@ -28,16 +43,40 @@ public class FileController {
 
     private static final Logger logger = LoggerFactory.getLogger(FileController.class);
     private FileService fileService;
+    private AccessControlService accessControlService;
+    private SwarmTracker swarmTracker;
+    private FileIntegrityService fileIntegrityService;
+    private PeerAvailabilityIndex peerAvailabilityIndex;
+    private PeerRankingService peerRankingService;
+    
+    private Timer downloadTimer;
+    private DistributionSummary downloadBytes;
     
     @Autowired
-    public FileController(FileService fileService) {
+    public FileController(FileService fileService, MeterRegistry meterRegistry,
+                          AccessControlService accessControlService, SwarmTracker swarmTracker,
+                          FileIntegrityService fileIntegrityService, PeerAvailabilityIndex peerAvailabilityIndex,
+                          PeerRankingService peerRankingService) {
         this.fileService = fileService;
+        this.accessControlService = accessControlService;
+        this.swarmTracker = swarmTracker;
+        this.fileIntegrityService = fileIntegrityService;
+        this.peerAvailabilityIndex = peerAvailabilityIndex;
+        this.peerRankingService = peerRankingService;
+        this.downloadTimer = Timer.builder("p2p.file.download")
+                .description("Time to read (and decrypt) a file for download")
+                .register(meterRegistry);
+        this.downloadBytes = DistributionSummary.builder("p2p.file.download.bytes")
+                .description("Size of downloaded files")
+                .baseUnit("bytes")
+                .register(meterRegistry);
     }
     
     @PostMapping("/upload")
     public ResponseEntity<File> uploadFile(
             @RequestParam("file") MultipartFile file,
             @RequestParam(value = "encrypt", defaultValue = "false") boolean encrypt,
+            @RequestParam(value = "previousVersionId", required = false) String previousVersionId,
             @AuthenticationPrincipal User user) throws IOException {
         
         logger.debug("Uploading file: {}, encrypt: {}, user: {}", 
@@ -48,8 +87,17 @@ public class FileController {
             return ResponseEntity.badRequest().build();
         }
         
+        // A new version of one of the user's own files
+        File previous = null;
+        if (previousVersionId != null && !previousVersionId.isEmpty()) {
+            previous = fileService.getFileById(previousVersionId);
+            if (previous == null || !accessControlService.canDeleteFile(user.getId(), previousVersionId)) {
+                return ResponseEntity.notFound().build();
+            }
+        }
+        
         try {
-            File uploadedFile = fileService.storeFile(file, user.getId(), encrypt);
+            File uploadedFile = fileService.storeFile(file, user.getId(), encrypt, previous);
             logger.debug("File uploaded successfully. ID: {}", uploadedFile.getId());
             return ResponseEntity.ok(uploadedFile);
         } catch (Exception e) {
@@ -67,47 +115,235 @@ public class FileController {
     
     @GetMapping("/{fileId}")
     public ResponseEntity<Resource> downloadFile(@PathVariable String fileId, 
-            @RequestParam(value = "decryptionKey", required = false) String decryptionKey) throws IOException {
+            @RequestParam(value = "decryptionKey", required = false) String decryptionKey,
+            @AuthenticationPrincipal User user) throws IOException {
         
         logger.debug("Downloading file: {}", fileId);
         
+        long start = System.nanoTime();
         try {
-            java.io.File file = fileService.getFile(fileId);
-            if (!file.exists()) {
-                logger.error("File not found on disk: {}", file.getAbsolutePath());
-                return ResponseEntity.notFound().build();
-            }
-            
-            Path path = Paths.get(file.getAbsolutePath());
-            ByteArrayResource resource;
-            
-            byte[] fileData = Files.readAllBytes(path);
-            
-            // If decryption key is provided, decrypt the file
-            if (decryptionKey != null && !decryptionKey.isEmpty()) {
-                logger.debug("Decrypting file with provided key");
-                fileData = fileService.decryptFile(fileData, decryptionKey);
-            }
-            
-            resource = new ByteArrayResource(fileData);
-            
             // Get file metadata
             File fileMetadata = fileService.getFileById(fileId);
             
-            if (fileMetadata == null) {
-                logger.error("File metadata not found for ID: {}", fileId);
+            // 404 rather than 403 so file ids can't be probed
+            if (fileMetadata == null || !accessControlService.canReadFile(user.getId(), fileId)) {
+                logger.debug("File {} not found or not readable by {}", fileId, user.getId());
+                return ResponseEntity.notFound().build();
+            }
+            
+            Resource resource;
+            long length;
+            try {
+                resource = fileService.getContent(fileMetadata);
+                
+                // If decryption key is provided, decrypt the file
+                if (decryptionKey != null && !decryptionKey.isEmpty()) {
+                    long diskStart = System.nanoTime();
+                    byte[] fileData;
+                    try (InputStream in = resource.getInputStream()) {
+                        fileData = in.readAllBytes();
+                    }
+                    RequestTiming.record("disk", diskStart);
+                    
+                    logger.debug("Decrypting file with provided key");
+                    fileData = fileService.decryptFile(fileData, decryptionKey);
+                    resource = new ByteArrayResource(fileData);
+                    length = fileData.length;
+                } else {
+                    // Streamed chunk by chunk, so Range requests for a few blocks only read those blocks
+                    length = resource.contentLength();
+                }
+            } catch (NoSuchFileException | java.io.FileNotFoundException e) {
+                logger.error("Stored content missing for file {}", fileId);
+                peerRankingService.recordTransfer(PeerRankingService.SERVER, 0, 0, 0, false);
                 return ResponseEntity.notFound().build();
             }
             
             logger.debug("Serving file: {}, type: {}", fileMetadata.getOriginalFilename(), fileMetadata.getFileType());
+            downloadBytes.record(length);
             
             return ResponseEntity.ok()
                     .contentType(MediaType.parseMediaType(fileMetadata.getFileType()))
                     .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileMetadata.getOriginalFilename() + "\"")
-                    .body(resource);
+                    .body(new ServerTransferResource(resource));
         } catch (Exception e) {
             logger.error("Error downloading file", e);
             throw e;
+        } finally {
+            downloadTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    // Every version of a file, newest first, that the user can read
+    @GetMapping("/{fileId}/versions")
+    public ResponseEntity<List<File>> getVersions(@PathVariable String fileId, @AuthenticationPrincipal User user) {
+        File file = fileService.getFileById(fileId);
+        if (file == null || !accessControlService.canReadFile(user.getId(), fileId)) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        List<File> versions = fileService.getVersions(file).stream()
+                .filter(version -> accessControlService.canReadFile(user.getId(), version.getId()))
+                .collect(Collectors.toList());
+        return ResponseEntity.ok(versions);
+    }
+    
+    // Block signature of a stored file, for a delta upload of its next version
+    @GetMapping("/{fileId}/signature")
+    public ResponseEntity<BlockSignature> getSignature(@PathVariable String fileId,
+                                                       @AuthenticationPrincipal User user) throws IOException {
+        File file = fileService.getFileById(fileId);
+        if (file == null || !accessControlService.canReadFile(user.getId(), fileId)) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        try {
+            return ResponseEntity.ok(fileService.getSignature(file));
+        } catch (NoSuchFileException e) {
+            logger.error("Stored content missing for file {}", file.getId());
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    // New version of one of the user's files, sent as a delta (see FileService.storeDelta)
+    @PostMapping(value = "/{fileId}/delta", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<File> uploadDelta(@PathVariable String fileId,
+                                            @RequestParam("length") long length,
+                                            @RequestParam(value = "filename", required = false) String filename,
+                                            @RequestParam(value = "contentType", required = false) String contentType,
+                                            @RequestParam(value = "sha256", required = false) String sha256,
+                                            InputStream delta,
+                                            @AuthenticationPrincipal User user) throws IOException {
+        File previous = fileService.getFileById(fileId);
+        if (previous == null || !accessControlService.canDeleteFile(user.getId(), fileId)) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        try {
+            File uploadedFile = fileService.storeDelta(previous, delta, filename, contentType, length, sha256, user.getId());
+            logger.debug("Delta upload stored as {}, previous version {}", uploadedFile.getId(), fileId);
+            return ResponseEntity.ok(uploadedFile);
+        } catch (NoSuchFileException e) {
+            logger.error("Stored content missing for file {}", previous.getId());
+            return ResponseEntity.notFound().build();
+        } catch (RuntimeException e) {
+            logger.debug("Rejected delta upload against {}: {}", fileId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    // Swarm tracker: announce the pieces held (base64 bitfield), get back who holds the rest
+    @PostMapping("/{fileId}/swarm/announce")
+    public ResponseEntity<SwarmView> announce(@PathVariable String fileId,
+                                              @RequestBody Map<String, Object> request,
+                                              @AuthenticationPrincipal User user) throws IOException {
+        File file = fileService.getFileById(fileId);
+        if (file == null || !accessControlService.canReadFile(user.getId(), fileId)) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        String bitfield = (String) request.get("bitfield");
+        String event = (String) request.get("event");
+        int port = request.get("port") instanceof Number ? ((Number) request.get("port")).intValue() : 0;
+        long fromPeers = request.get("downloadedFromPeers") instanceof Number
+                ? ((Number) request.get("downloadedFromPeers")).longValue() : 0;
+        try {
+            return ResponseEntity.ok(swarmTracker.announce(file, user.getId(), bitfield, event, port, fromPeers));
+        } catch (NoSuchFileException e) {
+            logger.error("Stored content missing for file {}", file.getId());
+            return ResponseEntity.notFound().build();
+        } catch (RuntimeException e) {
+            logger.debug("Rejected swarm announce for {}: {}", fileId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    // Announce that the user holds a complete copy and serves it (on "port" if given)
+    @PostMapping("/{fileId}/peers")
+    public ResponseEntity<Map<String, Object>> announceHolder(@PathVariable String fileId,
+                                                              @RequestBody(required = false) Map<String, Object> request,
+                                                              @AuthenticationPrincipal User user) {
+        if (fileService.getFileById(fileId) == null || !accessControlService.canReadFile(user.getId(), fileId)) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        int port = request != null && request.get("port") instanceof Number ? ((Number) request.get("port")).intValue() : 0;
+        peerAvailabilityIndex.announce(fileId, user.getId(), port);
+        return ResponseEntity.ok(Map.of("fileId", fileId, "holders", peerAvailabilityIndex.getHolderCount(fileId)));
+    }
+    
+    @DeleteMapping("/{fileId}/peers")
+    public ResponseEntity<?> withdrawHolder(@PathVariable String fileId, @AuthenticationPrincipal User user) {
+        peerAvailabilityIndex.withdraw(fileId, user.getId());
+        return ResponseEntity.ok().build();
+    }
+    
+    // Up to k online peers holding a complete copy, best first, plus how many hold one in total.
+    // serverScore is on the same scale as the peers' scores, for choosing between them and the server.
+    @GetMapping("/{fileId}/peers")
+    public ResponseEntity<Map<String, Object>> findHolders(@PathVariable String fileId,
+                                                           @RequestParam(value = "k", defaultValue = "10") int k,
+                                                           @AuthenticationPrincipal User user) {
+        if (fileService.getFileById(fileId) == null || !accessControlService.canReadFile(user.getId(), fileId)) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        return ResponseEntity.ok(Map.of(
+                "fileId", fileId,
+                "holders", peerAvailabilityIndex.getHolderCount(fileId),
+                "peers", peerAvailabilityIndex.findPeers(fileId, user.getId(), k),
+                "serverScore", peerRankingService.score(PeerRankingService.SERVER)));
+    }
+    
+    // A single piece from the server, for pieces too few peers hold
+    @GetMapping("/{fileId}/pieces/{index}")
+    public ResponseEntity<Resource> downloadPiece(@PathVariable String fileId, @PathVariable int index,
+                                                  @AuthenticationPrincipal User user) throws IOException {
+        File file = fileService.getFileById(fileId);
+        if (file == null || !accessControlService.canReadFile(user.getId(), fileId)) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        try {
+            file = swarmTracker.ensurePieces(file);
+        } catch (NoSuchFileException e) {
+            logger.error("Stored content missing for file {}", file.getId());
+            peerRankingService.recordTransfer(PeerRankingService.SERVER, 0, 0, 0, false);
+            return ResponseEntity.notFound().build();
+        }
+        if (index < 0 || index >= file.getPieceCount()) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        long diskStart = System.nanoTime();
+        byte[] piece = swarmTracker.readPiece(file, index);
+        RequestTiming.record("disk", diskStart);
+        
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header("X-Piece-SHA256", swarmTracker.getPieceHash(file, index))
+                .body(new ServerTransferResource(new ByteArrayResource(piece)));
+    }
+    
+    // Merkle proof for blocks [from, to) of the stored bytes; defaults to the single block "from"
+    @GetMapping("/{fileId}/merkle/proof")
+    public ResponseEntity<MerkleProof> getMerkleProof(@PathVariable String fileId,
+                                                      @RequestParam("from") int from,
+                                                      @RequestParam(value = "to", required = false) Integer to,
+                                                      @AuthenticationPrincipal User user) throws IOException {
+        File file = fileService.getFileById(fileId);
+        if (file == null || !accessControlService.canReadFile(user.getId(), fileId)) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        try {
+            return ResponseEntity.ok(fileIntegrityService.proveRange(file, from, to != null ? to : from + 1));
+        } catch (NoSuchFileException e) {
+            logger.error("Stored content missing for file {}", file.getId());
+            return ResponseEntity.notFound().build();
+        } catch (RuntimeException e) {
+            logger.debug("Rejected Merkle proof request for {}: {}", fileId, e.getMessage());
+            return ResponseEntity.badRequest().build();
         }
     }
     
@@ -115,13 +351,8 @@ public class FileController {
     public ResponseEntity<?> deleteFile(@PathVariable String fileId, @AuthenticationPrincipal User user) {
         logger.debug("Deleting file: {}", fileId);
         
-        // Check if user owns the file
-        File file = fileService.getFilesByOwnerId(user.getId()).stream()
-                .filter(f -> f.getId().equals(fileId))
-                .findFirst()
-                .orElse(null);
-                
-        if (file == null) {
+        // Only the owner may delete; answer 404 either way so file ids can't be probed
+        if (!accessControlService.canDeleteFile(user.getId(), fileId)) {
             logger.error("File not found or user doesn't have permission");
             return ResponseEntity.notFound().build();
         }
@@ -138,4 +369,80 @@ public class FileController {
         // For now, we just return a success message
         return ResponseEntity.ok().body("File decryption initiated");
     }
+    
+    /**
+     * Response body that reports the server's own transfer time and bytes to the ranking
+     * (as {@link PeerRankingService#SERVER}) once the response has been written
+     */
+    private class ServerTransferResource extends AbstractResource {
+        private final Resource delegate;
+        
+        private ServerTransferResource(Resource delegate) {
+            this.delegate = delegate;
+        }
+        
+        @Override
+        public boolean exists() {
+            return delegate.exists();
+        }
+        
+        @Override
+        public long contentLength() throws IOException {
+            return delegate.contentLength();
+        }
+        
+        @Override
+        public long lastModified() {
+            return 0;
+        }
+        
+        @Override
+        public String getFilename() {
+            return delegate.getFilename();
+        }
+        
+        @Override
+        public String getDescription() {
+            return delegate.getDescription();
+        }
+        
+        @Override
+        public InputStream getInputStream() throws IOException {
+            long start = System.currentTimeMillis();
+            return new FilterInputStream(delegate.getInputStream()) {
+                private long bytes;
+                private boolean failed;
+                private boolean closed;
+                
+                @Override
+                public int read() throws IOException {
+                    byte[] one = new byte[1];
+                    return read(one, 0, 1) == 1 ? one[0] & 0xFF : -1;
+                }
+                
+                // Read errors are the server's fault; a client hanging up is not
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    try {
+                        int n = super.read(buffer, offset, length);
+                        bytes += Math.max(0, n);
+                        return n;
+                    } catch (IOException e) {
+                        failed = true;
+                        throw e;
+                    }
+                }
+                
+                @Override
+                public void close() throws IOException {
+                    if (!closed) {
+                        closed = true;
+                        peerRankingService.recordTransfer(PeerRankingService.SERVER, bytes,
+                                System.currentTimeMillis() - start, 0, !failed);
+                    }
+                    super.close();
+                }
+            };
+        }
+    }
 }
\ No newline at end of file
@@ -1,13 +1,19 @@
 package com.p2p.controller;
 
 import com.p2p.model.Peer;
+import com.p2p.model.PeerDelta;
+import com.p2p.model.PeerTransfer;
 import com.p2p.model.User;
+import com.p2p.service.PeerRankingService;
+import com.p2p.service.SignalingService;
 import com.p2p.service.SimplePeerService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -16,10 +22,15 @@ import java.util.Map;
 public class PeerController {
 
     private SimplePeerService peerService;
+    private SignalingService signalingService;
+    private PeerRankingService peerRankingService;
     
     @Autowired
-    public PeerController(SimplePeerService peerService) {
+    public PeerController(SimplePeerService peerService, SignalingService signalingService,
+                          PeerRankingService peerRankingService) {
         this.peerService = peerService;
+        this.signalingService = signalingService;
+        this.peerRankingService = peerRankingService;
     }
     
     @PostMapping("/register")
@@ -38,6 +49,13 @@ public class PeerController {
         return ResponseEntity.ok(peers);
     }
     
+    // Joins and leaves since the given version; omit "since" to get the full list once
+    @GetMapping("/online/changes")
+    public ResponseEntity<PeerDelta> getOnlinePeerChanges(@RequestParam(value = "since", required = false) Long since) {
+        PeerDelta delta = peerService.getOnlinePeerChanges(since);
+        return ResponseEntity.ok(delta);
+    }
+    
     @PutMapping("/{peerId}/status")
     public ResponseEntity<Peer> updateStatus(@PathVariable String peerId,
                                              @RequestBody Map<String, Boolean> request,
@@ -56,4 +74,69 @@ public class PeerController {
         peerService.setPeerStatus(user.getId(), false);
         return ResponseEntity.ok().build();
     }
+    
+    // Outcome of a download this user received: either a signaled transfer ("transferId") or a
+    // swarm fetch from a peer the tracker handed out ("source"). Server downloads are measured server-side.
+    @PostMapping("/transfers/report")
+    public ResponseEntity<?> reportTransfer(@RequestBody Map<String, Object> request,
+                                            @AuthenticationPrincipal User user) {
+        Object transferId = request.get("transferId");
+        Object source = request.get("source");
+        if (!(request.get("bytes") instanceof Number) || !(request.get("durationMs") instanceof Number)
+                || (transferId != null && !(transferId instanceof String))
+                || (transferId == null && (!(source instanceof String) || source.equals(user.getId())
+                        || source.equals(PeerRankingService.SERVER)))) {
+            return ResponseEntity.badRequest().build();
+        }
+        long bytes = ((Number) request.get("bytes")).longValue();
+        long durationMs = ((Number) request.get("durationMs")).longValue();
+        long rttMs = request.get("rttMs") instanceof Number ? ((Number) request.get("rttMs")).longValue() : 0;
+        boolean success = !Boolean.FALSE.equals(request.get("success"));
+        if (bytes < 0 || durationMs < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        if (!peerRankingService.tryAcquireReport(user.getId())) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        }
+        if (transferId != null) {
+            if (!signalingService.reportOutcome((String) transferId, user.getId(), bytes, durationMs, rttMs, success)) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok().build();
+        }
+        
+        if (!peerRankingService.isExpectedReport(user.getId(), (String) source)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        peerRankingService.recordTransfer((String) source, bytes, durationMs, rttMs, success);
+        return ResponseEntity.ok().build();
+    }
+    
+    // Sources (user ids and/or "server") ordered best first, with their current estimates
+    @GetMapping("/ranking")
+    public ResponseEntity<List<Map<String, Object>>> rankSources(@RequestParam("sources") List<String> sources) {
+        List<Map<String, Object>> ranking = new ArrayList<>();
+        for (String source : peerRankingService.rank(sources)) {
+            ranking.add(peerRankingService.describe(source));
+        }
+        return ResponseEntity.ok(ranking);
+    }
+    
+    // Direct (WebRTC) transfers this user sends or receives, as reported over /app/room.signal
+    @GetMapping("/transfers")
+    public ResponseEntity<List<PeerTransfer>> getTransfers(@RequestParam(value = "roomId", required = false) String roomId,
+                                                           @AuthenticationPrincipal User user) {
+        return ResponseEntity.ok(signalingService.getTransfers(user.getId(), roomId));
+    }
+    
+    @GetMapping("/transfers/{transferId}")
+    public ResponseEntity<PeerTransfer> getTransfer(@PathVariable String transferId,
+                                                    @AuthenticationPrincipal User user) {
+        PeerTransfer transfer = signalingService.getTransfer(transferId);
+        if (transfer == null || !transfer.involves(user.getId())) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(transfer);
+    }
 }
\ No newline at end of file
@@ -1,7 +1,11 @@
 package com.p2p.controller;
 
+import com.p2p.model.ChatLogEntry;
 import com.p2p.model.Room;
 import com.p2p.model.User;
+import com.p2p.security.AccessControlService;
+import com.p2p.service.ChatLogService;
+import com.p2p.service.RoomOccupancyIndex;
 import com.p2p.service.RoomService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -18,10 +22,17 @@ import java.util.ArrayList;
 public class RoomController {
 
     private RoomService roomService;
+    private ChatLogService chatLogService;
+    private AccessControlService accessControlService;
+    private RoomOccupancyIndex roomOccupancyIndex;
     
     @Autowired
-    public RoomController(RoomService roomService) {
+    public RoomController(RoomService roomService, ChatLogService chatLogService,
+                          AccessControlService accessControlService, RoomOccupancyIndex roomOccupancyIndex) {
         this.roomService = roomService;
+        this.chatLogService = chatLogService;
+        this.accessControlService = accessControlService;
+        this.roomOccupancyIndex = roomOccupancyIndex;
     }
     
     @PostMapping
@@ -39,11 +50,45 @@ public class RoomController {
     }
     
     @GetMapping("/{roomId}")
-    public ResponseEntity<Room> getRoom(@PathVariable String roomId) {
+    public ResponseEntity<Room> getRoom(@PathVariable String roomId, @AuthenticationPrincipal User user) {
+        if (!accessControlService.isRoomMember(user.getId(), roomId)) {
+            return ResponseEntity.status(403).build();
+        }
         Room room = roomService.getRoomById(roomId);
         return ResponseEntity.ok(room);
     }
     
+    // Message history, newest page first: pass the returned "nextBefore" as "before" to page back
+    @GetMapping("/{roomId}/messages")
+    public ResponseEntity<Map<String, Object>> getRoomMessages(@PathVariable String roomId,
+                                                               @RequestParam(value = "before", required = false) Long before,
+                                                               @RequestParam(value = "since", required = false) Long sinceTime,
+                                                               @RequestParam(value = "limit", defaultValue = "50") int limit,
+                                                               @AuthenticationPrincipal User user) {
+        if (!accessControlService.isRoomMember(user.getId(), roomId)) {
+            return ResponseEntity.status(403).build();
+        }
+        List<ChatLogEntry> messages = chatLogService.getHistory(roomId, before, sinceTime, limit);
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("messages", messages);
+        // Sequence numbers start at 1, so there is nothing older than seq 1
+        long oldest = messages.isEmpty() ? 1 : messages.get(0).getSeq();
+        response.put("nextBefore", oldest > 1 ? oldest : null);
+        return ResponseEntity.ok(response);
+    }
+    
+    // Who is connected to the room right now (in memory, no database read);
+    // presence changes after "version" arrive on /topic/room/{roomId}/presence
+    @GetMapping("/{roomId}/occupancy")
+    public ResponseEntity<Map<String, Object>> getRoomOccupancy(@PathVariable String roomId,
+                                                                @AuthenticationPrincipal User user) {
+        if (!accessControlService.isRoomMember(user.getId(), roomId)) {
+            return ResponseEntity.status(403).build();
+        }
+        return ResponseEntity.ok(roomOccupancyIndex.getSnapshot(roomId));
+    }
+    
     @GetMapping("/link/{link}")
     public ResponseEntity<Room> getRoomByLink(@PathVariable String link) {
         Room room = roomService.getRoomByLink(link);
@@ -102,38 +147,61 @@ public class RoomController {
         return ResponseEntity.ok(room);
     }
     
+    // Only the creator adds members; everyone else joins through the room link
     @PostMapping("/{roomId}/members")
     public ResponseEntity<Room> addMember(@PathVariable String roomId, 
-                                          @RequestBody Map<String, String> request) {
+                                          @RequestBody Map<String, String> request,
+                                          @AuthenticationPrincipal User user) {
+        if (!isCreator(roomId, user)) {
+            return ResponseEntity.status(403).build();
+        }
         String userId = request.get("userId");
         Room room = roomService.addMemberToRoom(roomId, userId);
         return ResponseEntity.ok(room);
     }
     
+    // The creator can remove anyone; members can remove themselves
     @DeleteMapping("/{roomId}/members/{userId}")
     public ResponseEntity<Room> removeMember(@PathVariable String roomId, 
-                                            @PathVariable String userId) {
+                                            @PathVariable String userId,
+                                            @AuthenticationPrincipal User user) {
+        if (!userId.equals(user.getId()) && !isCreator(roomId, user)) {
+            return ResponseEntity.status(403).build();
+        }
         Room room = roomService.removeMemberFromRoom(roomId, userId);
         return ResponseEntity.ok(room);
     }
     
     @PostMapping("/{roomId}/files")
     public ResponseEntity<Room> addFile(@PathVariable String roomId, 
-                                        @RequestBody Map<String, String> request) {
+                                        @RequestBody Map<String, String> request,
+                                        @AuthenticationPrincipal User user) {
         String fileId = request.get("fileId");
+        if (fileId == null || !accessControlService.canShareFile(user.getId(), fileId, roomId)) {
+            return ResponseEntity.status(403).build();
+        }
         Room room = roomService.addFileToRoom(roomId, fileId);
         return ResponseEntity.ok(room);
     }
     
+    // The room's creator or the file's owner can take a file out of the room
     @DeleteMapping("/{roomId}/files/{fileId}")
     public ResponseEntity<Room> removeFile(@PathVariable String roomId, 
-                                          @PathVariable String fileId) {
+                                          @PathVariable String fileId,
+                                          @AuthenticationPrincipal User user) {
+        if (!accessControlService.canDeleteFile(user.getId(), fileId) && !isCreator(roomId, user)) {
+            return ResponseEntity.status(403).build();
+        }
         Room room = roomService.removeFileFromRoom(roomId, fileId);
         return ResponseEntity.ok(room);
     }
     
     @PostMapping("/{roomId}/generate-link")
-    public ResponseEntity<Map<String, String>> generateLink(@PathVariable String roomId) {
+    public ResponseEntity<Map<String, String>> generateLink(@PathVariable String roomId,
+                                                            @AuthenticationPrincipal User user) {
+        if (!isCreator(roomId, user)) {
+            return ResponseEntity.status(403).build();
+        }
         String link = roomService.generateRoomLink(roomId);
         return ResponseEntity.ok(Map.of("link", link));
     }
@@ -150,4 +218,9 @@ public class RoomController {
         roomService.deleteRoom(roomId);
         return ResponseEntity.ok().build();
     }
+    
+    private boolean isCreator(String roomId, User user) {
+        Room room = roomService.getRoomById(roomId);
+        return room.getCreatorId() != null && room.getCreatorId().equals(user.getId());
+    }
 }
\ No newline at end of file
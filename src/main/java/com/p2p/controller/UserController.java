@@ -37,12 +37,15 @@ public class UserController {
     @PutMapping("/current")
     public ResponseEntity<User> updateCurrentUser(@RequestBody User updatedUser, 
                                                  @AuthenticationPrincipal User currentUser) {
+        // The principal is shared through the user cache, so never modify it: update a fresh copy
+        User user = userService.getUserById(currentUser.getId());
+        
         // Only update allowed fields
-        currentUser.setEmail(updatedUser.getEmail());
+        user.setEmail(updatedUser.getEmail());
         
         // Don't allow role change through this endpoint
         
-        User savedUser = userService.updateUser(currentUser);
+        User savedUser = userService.updateUser(user);
         
         // Don't expose the password
         savedUser.setPassword(null);
@@ -1,104 +1,177 @@
 package com.p2p.controller;
 
+import com.p2p.config.WebSocketMetrics;
 import com.p2p.model.File;
-import com.p2p.model.Room;
+import com.p2p.model.RoomReplay;
+import com.p2p.model.SignalMessage;
 import com.p2p.model.WebSocketMessage;
+import com.p2p.security.AccessControlService;
 import com.p2p.service.FileService;
+import com.p2p.service.RoomMessageRouter;
+import com.p2p.service.RoomReplayBuffer;
 import com.p2p.service.RoomService;
+import com.p2p.service.SignalingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.stereotype.Controller;
 
 import java.security.Principal;
+import java.util.List;
+import java.util.Map;
 
+// Room broadcasts go through RoomMessageRouter so they reach subscribers on every node
 @Controller
 public class WebSocketController {
 
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketController.class);
+    
     // Removed 'final' modifiers
     private RoomService roomService;
     private FileService fileService;
+    private WebSocketMetrics webSocketMetrics;
+    private RoomMessageRouter roomMessageRouter;
+    private RoomReplayBuffer roomReplayBuffer;
+    private AccessControlService accessControlService;
+    private SignalingService signalingService;
     
     @Autowired
-    public WebSocketController(RoomService roomService, FileService fileService) {
+    public WebSocketController(RoomService roomService, FileService fileService, WebSocketMetrics webSocketMetrics,
+                               RoomMessageRouter roomMessageRouter, RoomReplayBuffer roomReplayBuffer,
+                               AccessControlService accessControlService, SignalingService signalingService) {
         this.roomService = roomService;
         this.fileService = fileService;
+        this.webSocketMetrics = webSocketMetrics;
+        this.roomMessageRouter = roomMessageRouter;
+        this.roomReplayBuffer = roomReplayBuffer;
+        this.accessControlService = accessControlService;
+        this.signalingService = signalingService;
+    }
+    
+    // Sent by a client after it re-subscribes to a room: {"lastSeq": n}. The answer goes to this session only.
+    @MessageMapping("/room.resume/{roomId}")
+    @SendToUser(destinations = "/queue/room-replay", broadcast = false)
+    public RoomReplay resumeRoom(@DestinationVariable String roomId,
+                                 @Payload Map<String, Object> request,
+                                 Principal principal) {
+        if (!isMember(roomId, principal)) {
+            return null;
+        }
+        
+        Object lastSeqValue = request.get("lastSeq");
+        long lastSeq = lastSeqValue instanceof Number ? ((Number) lastSeqValue).longValue() : 0;
+        
+        List<WebSocketMessage> missed = roomReplayBuffer.getMessagesAfter(roomId, lastSeq);
+        if (missed == null) {
+            return new RoomReplay(roomId, true, roomReplayBuffer.getLatestSeq(roomId), List.of());
+        }
+        return new RoomReplay(roomId, false, roomReplayBuffer.getLatestSeq(roomId), missed);
     }
     
     @MessageMapping("/room.join/{roomId}")
-    @SendTo("/topic/room/{roomId}")
-    public WebSocketMessage joinRoom(@DestinationVariable String roomId, 
-                                    @Payload WebSocketMessage message,
-                                    SimpMessageHeaderAccessor headerAccessor,
-                                    Principal principal) {
+    public void joinRoom(@DestinationVariable String roomId, 
+                         @Payload WebSocketMessage message,
+                         SimpMessageHeaderAccessor headerAccessor,
+                         Principal principal) {
+        
+        if (!isMember(roomId, principal)) {
+            return;
+        }
         
         // Add username in web socket session
         headerAccessor.getSessionAttributes().put("username", principal.getName());
         headerAccessor.getSessionAttributes().put("roomId", roomId);
         
-        // Get room details
-        Room room = roomService.getRoomById(roomId);
-        
         // Add message metadata
         message.setType(WebSocketMessage.MessageType.JOIN);
         message.setSender(principal.getName());
         message.setContent(principal.getName() + " joined the room");
         
-        return message;
+        webSocketMetrics.recordRoomMessage(message.getType());
+        roomMessageRouter.publish(roomId, message);
     }
     
     @MessageMapping("/room.leave/{roomId}")
-    @SendTo("/topic/room/{roomId}")
-    public WebSocketMessage leaveRoom(@DestinationVariable String roomId,
-                                     @Payload WebSocketMessage message,
-                                     SimpMessageHeaderAccessor headerAccessor,
-                                     Principal principal) {
+    public void leaveRoom(@DestinationVariable String roomId,
+                          @Payload WebSocketMessage message,
+                          SimpMessageHeaderAccessor headerAccessor,
+                          Principal principal) {
+        
+        if (!isMember(roomId, principal)) {
+            return;
+        }
         
         message.setType(WebSocketMessage.MessageType.LEAVE);
         message.setSender(principal.getName());
         message.setContent(principal.getName() + " left the room");
         
-        return message;
+        webSocketMetrics.recordRoomMessage(message.getType());
+        roomMessageRouter.publish(roomId, message);
     }
     
     @MessageMapping("/room.chat/{roomId}")
-    @SendTo("/topic/room/{roomId}")
-    public WebSocketMessage sendMessage(@DestinationVariable String roomId,
-                                       @Payload WebSocketMessage message,
-                                       Principal principal) {
+    public void sendMessage(@DestinationVariable String roomId,
+                            @Payload WebSocketMessage message,
+                            Principal principal) {
+        
+        if (!isMember(roomId, principal)) {
+            return;
+        }
         
         message.setType(WebSocketMessage.MessageType.CHAT);
         message.setSender(principal.getName());
         
-        return message;
+        webSocketMetrics.recordRoomMessage(message.getType());
+        roomMessageRouter.publish(roomId, message);
     }
     
     @MessageMapping("/room.file/{roomId}")
-    @SendTo("/topic/room/{roomId}")
-    public WebSocketMessage shareFile(@DestinationVariable String roomId,
-                                     @Payload WebSocketMessage message,
-                                     Principal principal) {
+    public void shareFile(@DestinationVariable String roomId,
+                          @Payload WebSocketMessage message,
+                          Principal principal) {
         
-        // Get file information
+        // Only the owner can share a file, and only into a room they are in
         String fileId = message.getContent();
-        File file = fileService.getFilesByOwnerId(principal.getName()).stream()
-            .filter(f -> f.getId().equals(fileId))
-            .findFirst()
-            .orElse(null);
-            
-        if (file != null) {
-            // Add file to room
-            roomService.addFileToRoom(roomId, fileId);
-            
-            message.setType(WebSocketMessage.MessageType.FILE);
-            message.setSender(principal.getName());
-            message.setContent(principal.getName() + " shared a file: " + file.getOriginalFilename());
-            message.setFileId(fileId);
+        if (!accessControlService.canShareFile(accessControlService.resolveUserId(principal), fileId, roomId)) {
+            logger.warn("User {} may not share file {} in room {}", principal.getName(), fileId, roomId);
+            return;
+        }
+        
+        File file = fileService.getFileById(fileId);
+        if (file == null) {
+            return;
         }
         
-        return message;
+        // Add file to room
+        roomService.addFileToRoom(roomId, fileId);
+        
+        message.setType(WebSocketMessage.MessageType.FILE);
+        message.setSender(principal.getName());
+        message.setContent(principal.getName() + " shared a file: " + file.getOriginalFilename());
+        message.setFileId(fileId);
+        
+        webSocketMetrics.recordRoomMessage(message.getType());
+        roomMessageRouter.publish(roomId, message);
+    }
+    
+    // WebRTC signaling for direct file transfers; replies and peer messages arrive on /user/queue/signal
+    @MessageMapping("/room.signal/{roomId}")
+    public void signal(@DestinationVariable String roomId,
+                       @Payload SignalMessage message,
+                       Principal principal) {
+        signalingService.handle(roomId, message, principal);
+    }
+    
+    private boolean isMember(String roomId, Principal principal) {
+        if (principal == null || !accessControlService.isRoomMember(accessControlService.resolveUserId(principal), roomId)) {
+            logger.warn("Rejected room {} message from non-member {}", roomId, principal != null ? principal.getName() : null);
+            return false;
+        }
+        return true;
     }
 }
\ No newline at end of file
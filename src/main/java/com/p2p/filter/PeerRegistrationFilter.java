@@ -2,6 +2,7 @@ package com.p2p.filter;
 
 import com.p2p.model.User;
 import com.p2p.service.PeerRegistrationService;
+import com.p2p.util.RequestTiming;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -34,6 +35,7 @@ public class PeerRegistrationFilter extends OncePerRequestFilter {
             HttpServletResponse response,
             FilterChain filterChain) throws ServletException, IOException {
         
+        long peerStart = System.nanoTime();
         try {
             // Get user from security context
             Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
@@ -59,6 +61,7 @@ public class PeerRegistrationFilter extends OncePerRequestFilter {
             logger.error("Error in peer registration filter", e);
             // We still continue the filter chain even if peer registration fails
         }
+        RequestTiming.record("peer", peerStart);
         
         filterChain.doFilter(request, response);
     }
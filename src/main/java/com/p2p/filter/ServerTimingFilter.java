@@ -0,0 +1,131 @@
+package com.p2p.filter;
+
+import com.p2p.util.RequestTiming;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Times each request phase (JWT auth, peer registration, Mongo, disk, crypto) and
+ * reports it in a Server-Timing header plus a sampled slow-request log.
+ *
+ * Runs first so the timing covers the security filter chain as well. With the
+ * header off and the sample rate at 0 it just passes the request through.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServerTimingFilter.class);
+    private static final String SERVER_TIMING = "Server-Timing";
+    
+    @Value("${server-timing.header.enabled:false}")
+    private boolean headerEnabled;
+    
+    @Value("${server-timing.slow-log.sample-rate:0.0}")
+    private double slowLogSampleRate;
+    
+    @Value("${server-timing.slow-log.threshold-ms:500}")
+    private long slowLogThresholdMs;
+    
+    @Override
+    protected void doFilterInternal(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            FilterChain filterChain) throws ServletException, IOException {
+        
+        boolean sampled = slowLogSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < slowLogSampleRate;
+        if (!headerEnabled && !sampled) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        
+        RequestTiming timing = RequestTiming.begin();
+        TimingResponseWrapper wrapper = new TimingResponseWrapper(response, timing);
+        try {
+            filterChain.doFilter(request, headerEnabled ? wrapper : response);
+        } finally {
+            if (headerEnabled) {
+                wrapper.writeTimingHeader();
+            }
+            RequestTiming.end();
+            
+            if (sampled && timing.getElapsedNanos() / 1_000_000 >= slowLogThresholdMs) {
+                logger.warn("Slow request {} {} -> {}: {}", request.getMethod(), request.getRequestURI(),
+                        response.getStatus(), timing);
+            }
+        }
+    }
+    
+    /**
+     * Adds the Server-Timing header just before the response body starts,
+     * which is the last moment headers can still be set
+     */
+    private static class TimingResponseWrapper extends HttpServletResponseWrapper {
+        
+        private final RequestTiming timing;
+        private boolean headerWritten;
+        
+        TimingResponseWrapper(HttpServletResponse response, RequestTiming timing) {
+            super(response);
+            this.timing = timing;
+        }
+        
+        void writeTimingHeader() {
+            if (!headerWritten && !isCommitted()) {
+                headerWritten = true;
+                setHeader(SERVER_TIMING, timing.toHeaderValue("app"));
+            }
+        }
+        
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            writeTimingHeader();
+            return super.getOutputStream();
+        }
+        
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            writeTimingHeader();
+            return super.getWriter();
+        }
+        
+        @Override
+        public void flushBuffer() throws IOException {
+            writeTimingHeader();
+            super.flushBuffer();
+        }
+        
+        @Override
+        public void sendError(int sc) throws IOException {
+            writeTimingHeader();
+            super.sendError(sc);
+        }
+        
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            writeTimingHeader();
+            super.sendError(sc, msg);
+        }
+        
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            writeTimingHeader();
+            super.sendRedirect(location);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.p2p.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * A room or file change that affects who may access what, so every runtime and node
+ * can drop the access decisions it cached before the change
+ */
+@Document(collection = "access_changes")
+public class AccessChange {
+    
+    public enum Type { MEMBERSHIP, ROOM_FILES, ROOM_DELETED, FILE }
+    
+    @Id
+    private String id;
+    private Type type;
+    private String roomId;
+    private String userId;
+    private String fileId;
+    private String origin; // Instance that made the change, which has already applied it
+    
+    // Only needed for as long as a cached decision can live
+    @Indexed(expireAfterSeconds = 3600)
+    private Date createdAt;
+    
+    public static AccessChange of(Type type, String roomId, String userId, String fileId, String origin) {
+        AccessChange change = new AccessChange();
+        change.setType(type);
+        change.setRoomId(roomId);
+        change.setUserId(userId);
+        change.setFileId(fileId);
+        change.setOrigin(origin);
+        change.setCreatedAt(new Date());
+        return change;
+    }
+    
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    public void setType(Type type) {
+        this.type = type;
+    }
+    
+    public String getRoomId() {
+        return roomId;
+    }
+    
+    public void setRoomId(String roomId) {
+        this.roomId = roomId;
+    }
+    
+    public String getUserId() {
+        return userId;
+    }
+    
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+    
+    public String getFileId() {
+        return fileId;
+    }
+    
+    public void setFileId(String fileId) {
+        this.fileId = fileId;
+    }
+    
+    public String getOrigin() {
+        return origin;
+    }
+    
+    public void setOrigin(String origin) {
+        this.origin = origin;
+    }
+    
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+}
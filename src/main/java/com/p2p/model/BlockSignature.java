@@ -0,0 +1,67 @@
+package com.p2p.model;
+
+/**
+ * Block signature of a stored file, for a delta upload of its next version.
+ *
+ * {@code weak} holds the rsync rolling checksum of each block (4 bytes, big-endian) and
+ * {@code strong} its Merkle leaf hash, SHA-256(0x00 || block) (32 bytes), both packed
+ * and base64 encoded. The last block may be shorter than {@code blockSize}.
+ */
+public class BlockSignature {
+
+    private String fileId;
+    private long length;
+    private int blockSize;
+    private int blockCount;
+    private byte[] weak;
+    private byte[] strong;
+
+    // Getters and Setters
+    public String getFileId() {
+        return fileId;
+    }
+
+    public void setFileId(String fileId) {
+        this.fileId = fileId;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public void setLength(long length) {
+        this.length = length;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    public void setBlockCount(int blockCount) {
+        this.blockCount = blockCount;
+    }
+
+    public byte[] getWeak() {
+        return weak;
+    }
+
+    public void setWeak(byte[] weak) {
+        this.weak = weak;
+    }
+
+    public byte[] getStrong() {
+        return strong;
+    }
+
+    public void setStrong(byte[] strong) {
+        this.strong = strong;
+    }
+}
@@ -0,0 +1,100 @@
+package com.p2p.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * One entry of a room's append-only message log.
+ * Indexes on (roomId, seq) and (roomId, timestamp) are created by ChatLogService.
+ */
+@Document(collection = "chat_log")
+public class ChatLogEntry {
+    
+    @Id
+    private String id;
+    private String roomId;
+    private long seq; // Per-room, increasing in broadcast order
+    private long timestamp;
+    private WebSocketMessage.MessageType type;
+    private String sender;
+    private String content;
+    private String fileId;
+    
+    public ChatLogEntry() {
+    }
+    
+    public ChatLogEntry(String roomId, long seq, WebSocketMessage message) {
+        this.roomId = roomId;
+        this.seq = seq;
+        this.timestamp = message.getTimestamp();
+        this.type = message.getType();
+        this.sender = message.getSender();
+        this.content = message.getContent();
+        this.fileId = message.getFileId();
+    }
+    
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    public String getRoomId() {
+        return roomId;
+    }
+    
+    public void setRoomId(String roomId) {
+        this.roomId = roomId;
+    }
+    
+    public long getSeq() {
+        return seq;
+    }
+    
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+    
+    public long getTimestamp() {
+        return timestamp;
+    }
+    
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+    
+    public WebSocketMessage.MessageType getType() {
+        return type;
+    }
+    
+    public void setType(WebSocketMessage.MessageType type) {
+        this.type = type;
+    }
+    
+    public String getSender() {
+        return sender;
+    }
+    
+    public void setSender(String sender) {
+        this.sender = sender;
+    }
+    
+    public String getContent() {
+        return content;
+    }
+    
+    public void setContent(String content) {
+        this.content = content;
+    }
+    
+    public String getFileId() {
+        return fileId;
+    }
+    
+    public void setFileId(String fileId) {
+        this.fileId = fileId;
+    }
+}
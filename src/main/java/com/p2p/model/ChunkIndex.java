@@ -0,0 +1,46 @@
+package com.p2p.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The chunks a stored file is made of, in order. Kept apart from {@link File} so
+ * listings never load it; reads walk it to stream the file back.
+ */
+@Document(collection = "file_chunks")
+public class ChunkIndex {
+
+    // Same id as the File
+    @Id
+    private String id;
+    private List<String> hashes = new ArrayList<>();
+    private List<Integer> lengths = new ArrayList<>();
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public List<String> getHashes() {
+        return hashes;
+    }
+
+    public void setHashes(List<String> hashes) {
+        this.hashes = hashes;
+    }
+
+    public List<Integer> getLengths() {
+        return lengths;
+    }
+
+    public void setLengths(List<Integer> lengths) {
+        this.lengths = lengths;
+    }
+}
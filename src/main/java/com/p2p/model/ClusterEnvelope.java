@@ -0,0 +1,53 @@
+package com.p2p.model;
+
+/**
+ * A room message relayed between nodes.
+ *
+ * PUBLISH goes from the node the sender is connected to, to the room's owner;
+ * DELIVER goes from the owner to every other node for local broadcast.
+ */
+public class ClusterEnvelope {
+    
+    public enum Type {
+        PUBLISH,
+        DELIVER
+    }
+    
+    private Type type;
+    private String roomId;
+    private WebSocketMessage message;
+    
+    public ClusterEnvelope() {
+    }
+    
+    public ClusterEnvelope(Type type, String roomId, WebSocketMessage message) {
+        this.type = type;
+        this.roomId = roomId;
+        this.message = message;
+    }
+    
+    // Getters and Setters
+    public Type getType() {
+        return type;
+    }
+    
+    public void setType(Type type) {
+        this.type = type;
+    }
+    
+    public String getRoomId() {
+        return roomId;
+    }
+    
+    public void setRoomId(String roomId) {
+        this.roomId = roomId;
+    }
+    
+    public WebSocketMessage getMessage() {
+        return message;
+    }
+    
+    public void setMessage(WebSocketMessage message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,47 @@
+package com.p2p.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * A running server instance, kept alive by heartbeats
+ */
+@Document(collection = "cluster_nodes")
+public class ClusterNode {
+    
+    @Id
+    private String id; // Advertised base URL, e.g. http://localhost:8080
+    private Date startedAt;
+    
+    // Mongo removes nodes that stopped heartbeating long ago (crashed without leaving)
+    @Indexed(expireAfterSeconds = 3600)
+    private Date lastHeartbeat;
+    
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    public Date getStartedAt() {
+        return startedAt;
+    }
+    
+    public void setStartedAt(Date startedAt) {
+        this.startedAt = startedAt;
+    }
+    
+    public Date getLastHeartbeat() {
+        return lastHeartbeat;
+    }
+    
+    public void setLastHeartbeat(Date lastHeartbeat) {
+        this.lastHeartbeat = lastHeartbeat;
+    }
+}
@@ -1,6 +1,8 @@
 package com.p2p.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.Date;
@@ -12,12 +14,32 @@ public class File {
     private String id;
     private String filename;
     private String originalFilename;
+    // Set for files stored before chunking; chunked files are read through their chunk index
     private String filePath;
+    private boolean chunked;
+    private long storedSize;
     private String fileType;
     private long fileSize;
+    @Indexed
     private String ownerId;
     private Date uploadDate;
     private boolean isEncrypted;
+    // Swarm pieces: pieceSize slices of the stored bytes, hashed into FileHashes.
+    // The count is null until the file has been hashed.
+    private int pieceSize;
+    private Integer pieceCount;
+    // Integrity: Merkle root (hex) over blockSize blocks of the stored bytes; the leaves
+    // and weak checksums are in FileHashes. The count is null until the file has been hashed.
+    private int blockSize;
+    private Integer blockCount;
+    private String merkleRoot;
+    // Version chain: every version shares the id of the first one (null for a file that
+    // never got a second version) and is numbered from 1
+    @Indexed
+    private String versionGroupId;
+    private int version = 1;
+    // The version this one was uploaded against (delta base or the version it replaces)
+    private String previousVersionId;
     
     // Getters and Setters
     public String getId() {
@@ -52,6 +74,22 @@ public class File {
         this.filePath = filePath;
     }
     
+    public boolean isChunked() {
+        return chunked;
+    }
+    
+    public void setChunked(boolean chunked) {
+        this.chunked = chunked;
+    }
+    
+    public long getStoredSize() {
+        return storedSize;
+    }
+    
+    public void setStoredSize(long storedSize) {
+        this.storedSize = storedSize;
+    }
+    
     public String getFileType() {
         return fileType;
     }
@@ -92,6 +130,80 @@ public class File {
         isEncrypted = encrypted;
     }
     
+    public int getPieceSize() {
+        return pieceSize;
+    }
+    
+    public void setPieceSize(int pieceSize) {
+        this.pieceSize = pieceSize;
+    }
+    
+    public int getPieceCount() {
+        return pieceCount != null ? pieceCount : 0;
+    }
+    
+    public void setPieceCount(int pieceCount) {
+        this.pieceCount = pieceCount;
+    }
+    
+    @JsonIgnore
+    public boolean hasPieces() {
+        return pieceCount != null;
+    }
+    
+    public int getBlockSize() {
+        return blockSize;
+    }
+    
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+    
+    public String getMerkleRoot() {
+        return merkleRoot;
+    }
+    
+    public void setMerkleRoot(String merkleRoot) {
+        this.merkleRoot = merkleRoot;
+    }
+    
+    public String getVersionGroupId() {
+        return versionGroupId;
+    }
+    
+    public void setVersionGroupId(String versionGroupId) {
+        this.versionGroupId = versionGroupId;
+    }
+    
+    public int getVersion() {
+        return version;
+    }
+    
+    public void setVersion(int version) {
+        this.version = version;
+    }
+    
+    public String getPreviousVersionId() {
+        return previousVersionId;
+    }
+    
+    public void setPreviousVersionId(String previousVersionId) {
+        this.previousVersionId = previousVersionId;
+    }
+    
+    public int getBlockCount() {
+        return blockCount != null ? blockCount : 0;
+    }
+    
+    public void setBlockCount(int blockCount) {
+        this.blockCount = blockCount;
+    }
+    
+    @JsonIgnore
+    public boolean hasBlocks() {
+        return blockCount != null;
+    }
+    
     // Additional methods from diagram
     public void open() {
         // Logic to open file
@@ -0,0 +1,57 @@
+package com.p2p.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.List;
+
+/**
+ * Piece hashes, Merkle leaves and block checksums of a stored file. Kept apart from
+ * {@link File} so listings and metadata lookups never load them.
+ */
+@Document(collection = "file_hashes")
+public class FileHashes {
+
+    // Same id as the File
+    @Id
+    private String id;
+    // SHA-256 (hex) of each swarm piece
+    private List<String> pieceHashes;
+    // Merkle leaf hashes, packed back to back (32 bytes each)
+    private byte[] blockHashes;
+    // rsync weak checksum of each block, packed (4 bytes each)
+    private byte[] blockChecksums;
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public List<String> getPieceHashes() {
+        return pieceHashes;
+    }
+
+    public void setPieceHashes(List<String> pieceHashes) {
+        this.pieceHashes = pieceHashes;
+    }
+
+    public byte[] getBlockHashes() {
+        return blockHashes;
+    }
+
+    public void setBlockHashes(byte[] blockHashes) {
+        this.blockHashes = blockHashes;
+    }
+
+    public byte[] getBlockChecksums() {
+        return blockChecksums;
+    }
+
+    public void setBlockChecksums(byte[] blockChecksums) {
+        this.blockChecksums = blockChecksums;
+    }
+}
@@ -0,0 +1,139 @@
+package com.p2p.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Proof that blocks [from, to) of a stored file belong under its Merkle root
+ * (see {@link com.p2p.util.MerkleTree}). {@code leaves} are the leaf hashes of those
+ * blocks, so once the proof checks out each block can be verified on its own.
+ * Hashes are hex.
+ */
+public class MerkleProof {
+
+    private String fileId;
+    private String root;
+    private int blockSize;
+    private int blockCount;
+    private long length;
+    private int from;
+    private int to;
+    private List<String> leaves = new ArrayList<>();
+    private List<ProofNode> nodes = new ArrayList<>();
+
+    // Getters and Setters
+    public String getFileId() {
+        return fileId;
+    }
+
+    public void setFileId(String fileId) {
+        this.fileId = fileId;
+    }
+
+    public String getRoot() {
+        return root;
+    }
+
+    public void setRoot(String root) {
+        this.root = root;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    public void setBlockCount(int blockCount) {
+        this.blockCount = blockCount;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public void setLength(long length) {
+        this.length = length;
+    }
+
+    public int getFrom() {
+        return from;
+    }
+
+    public void setFrom(int from) {
+        this.from = from;
+    }
+
+    public int getTo() {
+        return to;
+    }
+
+    public void setTo(int to) {
+        this.to = to;
+    }
+
+    public List<String> getLeaves() {
+        return leaves;
+    }
+
+    public void setLeaves(List<String> leaves) {
+        this.leaves = leaves;
+    }
+
+    public List<ProofNode> getNodes() {
+        return nodes;
+    }
+
+    public void setNodes(List<ProofNode> nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * A sibling hash at a given level (0 = leaves) and position
+     */
+    public static class ProofNode {
+
+        private int level;
+        private int index;
+        private String hash;
+
+        public ProofNode() {
+        }
+
+        public ProofNode(int level, int index, String hash) {
+            this.level = level;
+            this.index = index;
+            this.hash = hash;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public void setLevel(int level) {
+            this.level = level;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public void setIndex(int index) {
+            this.index = index;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public void setHash(String hash) {
+            this.hash = hash;
+        }
+    }
+}
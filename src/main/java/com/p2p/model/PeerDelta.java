@@ -0,0 +1,50 @@
+package com.p2p.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Changes to the online peer set between two snapshot versions.
+ * When {@code full} is true the client's version was too old (or absent)
+ * and {@code joined} holds the complete online list instead of a delta.
+ */
+public class PeerDelta {
+
+    private long version;
+    private boolean full;
+    private List<Peer> joined = new ArrayList<>();
+    private List<String> left = new ArrayList<>();
+
+    // Getters and Setters
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public void setFull(boolean full) {
+        this.full = full;
+    }
+
+    public List<Peer> getJoined() {
+        return joined;
+    }
+
+    public void setJoined(List<Peer> joined) {
+        this.joined = joined;
+    }
+
+    public List<String> getLeft() {
+        return left;
+    }
+
+    public void setLeft(List<String> left) {
+        this.left = left;
+    }
+}
@@ -0,0 +1,145 @@
+package com.p2p.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * One accepted file offer between a sender and a receiver. The bytes go peer-to-peer;
+ * the server only tracks the state both sides report.
+ */
+public class PeerTransfer {
+
+    public enum State {
+        ACCEPTED, CONNECTING, TRANSFERRING, COMPLETED, FAILED, CANCELLED;
+
+        public boolean isTerminal() {
+            return this == COMPLETED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    private String transferId;
+    private String offerId;
+    private String roomId;
+    private String senderId;
+    private String receiverId;
+    private String filename;
+    private long fileSize;
+    private State state;
+    private long bytesTransferred;
+    private long createdAt;
+    private long startedAt;
+    private long updatedAt;
+
+    // Set once the outcome has gone into the sender's ranking
+    @JsonIgnore
+    private boolean outcomeRecorded;
+
+    // Getters and Setters
+    public String getTransferId() {
+        return transferId;
+    }
+
+    public void setTransferId(String transferId) {
+        this.transferId = transferId;
+    }
+
+    public String getOfferId() {
+        return offerId;
+    }
+
+    public void setOfferId(String offerId) {
+        this.offerId = offerId;
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public void setRoomId(String roomId) {
+        this.roomId = roomId;
+    }
+
+    public String getSenderId() {
+        return senderId;
+    }
+
+    public void setSenderId(String senderId) {
+        this.senderId = senderId;
+    }
+
+    public String getReceiverId() {
+        return receiverId;
+    }
+
+    public void setReceiverId(String receiverId) {
+        this.receiverId = receiverId;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
+    public long getBytesTransferred() {
+        return bytesTransferred;
+    }
+
+    public void setBytesTransferred(long bytesTransferred) {
+        this.bytesTransferred = bytesTransferred;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    // When bytes started flowing (first TRANSFERRING report), 0 until then
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(long startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public boolean isOutcomeRecorded() {
+        return outcomeRecorded;
+    }
+
+    public void setOutcomeRecorded(boolean outcomeRecorded) {
+        this.outcomeRecorded = outcomeRecorded;
+    }
+
+    public boolean involves(String userId) {
+        return userId != null && (userId.equals(senderId) || userId.equals(receiverId));
+    }
+}
@@ -0,0 +1,81 @@
+package com.p2p.model;
+
+/**
+ * A user appearing in or leaving a room, pushed to /topic/room/{roomId}/presence.
+ * {@code version} increases by one per change in the room, so a client that sees a
+ * gap knows it missed a delta and should re-read the occupancy endpoint.
+ */
+public class PresenceDelta {
+
+    public enum Type {
+        JOINED, LEFT
+    }
+
+    private String roomId;
+    private String username;
+    private Type type;
+    private int occupancy;
+    private long version;
+    private long timestamp;
+
+    public PresenceDelta() {
+    }
+
+    public PresenceDelta(String roomId, String username, Type type, int occupancy, long version) {
+        this.roomId = roomId;
+        this.username = username;
+        this.type = type;
+        this.occupancy = occupancy;
+        this.version = version;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    // Getters and Setters
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public void setRoomId(String roomId) {
+        this.roomId = roomId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public int getOccupancy() {
+        return occupancy;
+    }
+
+    public void setOccupancy(int occupancy) {
+        this.occupancy = occupancy;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+}
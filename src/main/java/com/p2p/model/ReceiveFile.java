@@ -1,10 +1,32 @@
 package com.p2p.model;
 
+import com.p2p.util.MerkleTree;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Receiving side of a transfer. For a live relay: how much has been delivered to this
+ * client and how much it has acknowledged, which is what paces the sender. For a swarm
+ * download: which pieces arrived and matched the file's piece hashes. For ranged fetches:
+ * which blocks matched leaves proven against the file's Merkle root.
+ */
 public class ReceiveFile {
     
     private String clientId;
     private File receivedFile;
     private boolean validated;
+    private long bytesReceived;
+    private long chunksReceived;
+    private long chunksAcked;
+    private long lastAckAt = System.currentTimeMillis();
+    private BitSet verifiedPieces;
+    private byte[][] trustedLeaves;
+    private BitSet verifiedBlocks;
     
     // Getters and Setters
     public String getClientId() {
@@ -37,12 +59,142 @@ public class ReceiveFile {
         return null; // Placeholder
     }
     
+    /**
+     * Valid once every block passed {@link #validateBlock} or every piece passed {@link #validatePiece},
+     * or for a relay once every announced byte was delivered and the client acknowledged every
+     * chunk (content is checked by the client against the sender's SHA-256)
+     */
     public boolean validateFile(File file) {
-        // Logic to validate the integrity of the file
-        this.validated = true; // Placeholder
+        if (file != null && verifiedBlocks != null) {
+            this.validated = verifiedBlocks.cardinality() == trustedLeaves.length;
+        } else if (file != null && verifiedPieces != null) {
+            this.validated = verifiedPieces.cardinality() == file.getPieceCount();
+        } else {
+            // Handed to the socket isn't received: only acknowledged chunks count
+            this.validated = file != null && bytesReceived == file.getFileSize() && chunksAcked == chunksReceived;
+        }
         return this.validated;
     }
     
+    /**
+     * Check a swarm piece against its hash (see {@link FileHashes}); only pieces that match count as received
+     */
+    public boolean validatePiece(File file, int index, String pieceHash, byte[] piece) {
+        if (pieceHash == null || index < 0 || index >= file.getPieceCount()) {
+            return false;
+        }
+        String hash;
+        try {
+            hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(piece));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+        if (!hash.equalsIgnoreCase(pieceHash)) {
+            return false;
+        }
+        if (verifiedPieces == null) {
+            verifiedPieces = new BitSet(file.getPieceCount());
+        }
+        if (!verifiedPieces.get(index)) {
+            verifiedPieces.set(index);
+            bytesReceived += piece.length;
+        }
+        return true;
+    }
+    
+    /**
+     * Trust the leaf hashes in a Merkle proof if they lead to the file's root; blocks in the
+     * proven range can then be checked one at a time with {@link #validateBlock}
+     */
+    public boolean acceptProof(File file, MerkleProof proof) {
+        if (file.getMerkleRoot() == null || !file.getMerkleRoot().equals(proof.getRoot())
+                || proof.getLeaves().size() != proof.getTo() - proof.getFrom()
+                || (trustedLeaves != null && trustedLeaves.length != proof.getBlockCount())) {
+            return false;
+        }
+        HexFormat hex = HexFormat.of();
+        List<byte[]> leaves = new ArrayList<>();
+        for (String leaf : proof.getLeaves()) {
+            leaves.add(hex.parseHex(leaf));
+        }
+        List<MerkleTree.Node> nodes = new ArrayList<>();
+        for (MerkleProof.ProofNode node : proof.getNodes()) {
+            nodes.add(new MerkleTree.Node(node.getLevel(), node.getIndex(), hex.parseHex(node.getHash())));
+        }
+        byte[] root = MerkleTree.rootFromRange(proof.getBlockCount(), proof.getFrom(), leaves, nodes);
+        if (root == null || !hex.formatHex(root).equals(file.getMerkleRoot())) {
+            return false;
+        }
+        
+        if (trustedLeaves == null) {
+            trustedLeaves = new byte[proof.getBlockCount()][];
+            verifiedBlocks = new BitSet(proof.getBlockCount());
+        }
+        for (int i = 0; i < leaves.size(); i++) {
+            trustedLeaves[proof.getFrom() + i] = leaves.get(i);
+        }
+        return true;
+    }
+    
+    /**
+     * Check one block against its proven leaf; a block that fails is the only one to fetch again
+     */
+    public boolean validateBlock(int index, byte[] block) {
+        if (trustedLeaves == null || index < 0 || index >= trustedLeaves.length || trustedLeaves[index] == null) {
+            return false;
+        }
+        if (!MessageDigest.isEqual(trustedLeaves[index], MerkleTree.hashLeaf(block))) {
+            return false;
+        }
+        if (!verifiedBlocks.get(index)) {
+            verifiedBlocks.set(index);
+            bytesReceived += block.length;
+        }
+        return true;
+    }
+    
+    public boolean hasBlock(int index) {
+        return verifiedBlocks != null && verifiedBlocks.get(index);
+    }
+    
+    public boolean hasPiece(int index) {
+        return verifiedPieces != null && verifiedPieces.get(index);
+    }
+    
+    public void delivered(int chunkLength) {
+        bytesReceived += chunkLength;
+        chunksReceived++;
+    }
+    
+    /**
+     * Record a cumulative acknowledgement; returns true if it moved forward
+     */
+    public boolean acknowledge(long chunks) {
+        long acked = Math.min(chunks, chunksReceived);
+        if (acked <= chunksAcked) {
+            return false;
+        }
+        chunksAcked = acked;
+        lastAckAt = System.currentTimeMillis();
+        return true;
+    }
+    
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+    
+    public long getChunksReceived() {
+        return chunksReceived;
+    }
+    
+    public long getChunksAcked() {
+        return chunksAcked;
+    }
+    
+    public long getLastAckAt() {
+        return lastAckAt;
+    }
+    
     public File getFile() {
         if (this.validated) {
             return this.receivedFile;
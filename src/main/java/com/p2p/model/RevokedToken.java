@@ -0,0 +1,56 @@
+package com.p2p.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+@Document(collection = "revoked_tokens")
+public class RevokedToken {
+    
+    @Id
+    private String id; // SHA-256 hash of the token, never the token itself
+    private String username;
+    
+    // Other nodes poll for revocations newer than their last sync
+    @Indexed
+    private Date revokedAt;
+    
+    // Mongo drops the document once the token would have expired anyway
+    @Indexed(expireAfterSeconds = 0)
+    private Date expiresAt;
+    
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    public String getUsername() {
+        return username;
+    }
+    
+    public void setUsername(String username) {
+        this.username = username;
+    }
+    
+    public Date getRevokedAt() {
+        return revokedAt;
+    }
+    
+    public void setRevokedAt(Date revokedAt) {
+        this.revokedAt = revokedAt;
+    }
+    
+    public Date getExpiresAt() {
+        return expiresAt;
+    }
+    
+    public void setExpiresAt(Date expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
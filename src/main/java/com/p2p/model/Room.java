@@ -1,6 +1,7 @@
 package com.p2p.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.ArrayList;
@@ -15,7 +16,9 @@ public class Room {
     private String id;
     private String name;
     private String creatorId;
+    @Indexed
     private List<String> members = new ArrayList<>();
+    @Indexed
     private List<String> files = new ArrayList<>();
     private Date createdAt;
     private String roomLink;
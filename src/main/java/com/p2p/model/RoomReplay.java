@@ -0,0 +1,58 @@
+package com.p2p.model;
+
+import java.util.List;
+
+/**
+ * Answer to a client resuming a room after a reconnect: either the messages it
+ * missed, or resync=true when the gap is no longer buffered
+ */
+public class RoomReplay {
+    
+    private String roomId;
+    private boolean resync;
+    private long latestSeq;
+    private List<WebSocketMessage> messages;
+    
+    public RoomReplay() {
+    }
+    
+    public RoomReplay(String roomId, boolean resync, long latestSeq, List<WebSocketMessage> messages) {
+        this.roomId = roomId;
+        this.resync = resync;
+        this.latestSeq = latestSeq;
+        this.messages = messages;
+    }
+    
+    // Getters and Setters
+    public String getRoomId() {
+        return roomId;
+    }
+    
+    public void setRoomId(String roomId) {
+        this.roomId = roomId;
+    }
+    
+    public boolean isResync() {
+        return resync;
+    }
+    
+    public void setResync(boolean resync) {
+        this.resync = resync;
+    }
+    
+    public long getLatestSeq() {
+        return latestSeq;
+    }
+    
+    public void setLatestSeq(long latestSeq) {
+        this.latestSeq = latestSeq;
+    }
+    
+    public List<WebSocketMessage> getMessages() {
+        return messages;
+    }
+    
+    public void setMessages(List<WebSocketMessage> messages) {
+        this.messages = messages;
+    }
+}
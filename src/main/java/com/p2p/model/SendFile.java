@@ -1,9 +1,30 @@
 package com.p2p.model;
 
+import com.p2p.util.WebSocketMessageCodec;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Sending side of a live relay transfer: the file being streamed (metadata only, never
+ * stored) and a running count and SHA-256 of the bytes the sender has pushed so far.
+ */
 public class SendFile {
     
     private String clientId;
     private File file;
+    private long bytesSent;
+    private long chunksSent;
+    private final MessageDigest digest;
+    
+    public SendFile() {
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+    }
     
     // Getters and Setters
     public String getClientId() {
@@ -31,8 +52,34 @@ public class SendFile {
         return this.file;
     }
     
+    /**
+     * Header frame that tells receivers what is coming: size, name, type and whether it's encrypted
+     */
     public byte[] serialize(File file) {
-        // Logic to serialize file for transfer
-        return null; // Placeholder
+        return WebSocketMessageCodec.encodeFileHeader(file);
+    }
+    
+    /**
+     * Account for one chunk received from the sender
+     */
+    public void update(byte[] chunk) {
+        digest.update(chunk);
+        bytesSent += chunk.length;
+        chunksSent++;
+    }
+    
+    public long getBytesSent() {
+        return bytesSent;
+    }
+    
+    public long getChunksSent() {
+        return chunksSent;
+    }
+    
+    /**
+     * Hex SHA-256 of everything sent; call once, after the last chunk
+     */
+    public String getSha256() {
+        return HexFormat.of().formatHex(digest.digest());
     }
 }
\ No newline at end of file
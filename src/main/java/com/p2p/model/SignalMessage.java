@@ -0,0 +1,134 @@
+package com.p2p.model;
+
+/**
+ * Control message for a peer-to-peer file transfer, sent to /app/room.signal/{roomId}.
+ *
+ * FILE_OFFER goes to the whole room (/topic/room/{roomId}/signal); everything else is
+ * delivered to one user's /user/queue/signal. OFFER, ANSWER and ICE_CANDIDATE carry the
+ * browser's SDP or candidate in {@code payload}, which the server passes on untouched.
+ */
+public class SignalMessage {
+
+    public enum Type {
+        FILE_OFFER, FILE_ACCEPT, OFFER, ANSWER, ICE_CANDIDATE, TRANSFER_STATE, ERROR
+    }
+
+    private Type type;
+    private String roomId;
+    private String offerId;
+    private String transferId;
+    private String fromUserId;
+    private String fromUsername;
+    private Object payload;
+    private FileOffer offer;
+    private PeerTransfer transfer;
+    private PeerTransfer.State state;
+    private long bytesTransferred;
+    private String error;
+
+    public static SignalMessage error(String roomId, String transferId, String error) {
+        SignalMessage message = new SignalMessage();
+        message.setType(Type.ERROR);
+        message.setRoomId(roomId);
+        message.setTransferId(transferId);
+        message.setError(error);
+        return message;
+    }
+
+    // Getters and Setters
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public void setRoomId(String roomId) {
+        this.roomId = roomId;
+    }
+
+    public String getOfferId() {
+        return offerId;
+    }
+
+    public void setOfferId(String offerId) {
+        this.offerId = offerId;
+    }
+
+    public String getTransferId() {
+        return transferId;
+    }
+
+    public void setTransferId(String transferId) {
+        this.transferId = transferId;
+    }
+
+    public String getFromUserId() {
+        return fromUserId;
+    }
+
+    public void setFromUserId(String fromUserId) {
+        this.fromUserId = fromUserId;
+    }
+
+    public String getFromUsername() {
+        return fromUsername;
+    }
+
+    public void setFromUsername(String fromUsername) {
+        this.fromUsername = fromUsername;
+    }
+
+    public Object getPayload() {
+        return payload;
+    }
+
+    public void setPayload(Object payload) {
+        this.payload = payload;
+    }
+
+    public FileOffer getOffer() {
+        return offer;
+    }
+
+    public void setOffer(FileOffer offer) {
+        this.offer = offer;
+    }
+
+    public PeerTransfer getTransfer() {
+        return transfer;
+    }
+
+    public void setTransfer(PeerTransfer transfer) {
+        this.transfer = transfer;
+    }
+
+    public PeerTransfer.State getState() {
+        return state;
+    }
+
+    public void setState(PeerTransfer.State state) {
+        this.state = state;
+    }
+
+    public long getBytesTransferred() {
+        return bytesTransferred;
+    }
+
+    public void setBytesTransferred(long bytesTransferred) {
+        this.bytesTransferred = bytesTransferred;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
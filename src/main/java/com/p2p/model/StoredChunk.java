@@ -0,0 +1,83 @@
+package com.p2p.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * A content-addressed chunk on disk, keyed by its SHA-256, with the number of
+ * stored file versions that use it. Once that reaches zero the chunk is deleted by
+ * a sweep after a grace period; refs is -1 while the sweep deletes it.
+ */
+@Document(collection = "chunks")
+public class StoredChunk {
+
+    @Id
+    private String id;
+    private int size;
+    private long refs;
+    private Date createdAt;
+    // When refs last dropped to zero
+    private Date releasedAt;
+    // Set with refs = -1 by the sweep that is deleting the chunk
+    private String deletedBy;
+    private Date deletingAt;
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public long getRefs() {
+        return refs;
+    }
+
+    public void setRefs(long refs) {
+        this.refs = refs;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Date getReleasedAt() {
+        return releasedAt;
+    }
+
+    public void setReleasedAt(Date releasedAt) {
+        this.releasedAt = releasedAt;
+    }
+
+    public String getDeletedBy() {
+        return deletedBy;
+    }
+
+    public void setDeletedBy(String deletedBy) {
+        this.deletedBy = deletedBy;
+    }
+
+    public Date getDeletingAt() {
+        return deletingAt;
+    }
+
+    public void setDeletingAt(Date deletingAt) {
+        this.deletingAt = deletingAt;
+    }
+}
@@ -0,0 +1,65 @@
+package com.p2p.model;
+
+/**
+ * An online peer in a file's swarm, with the pieces it announced as a bitfield
+ * (base64, piece 0 in the high bit of the first byte).
+ */
+public class SwarmPeer {
+
+    private String userId;
+    private String ipAddress;
+    private int port;
+    private String bitfield;
+    private boolean complete;
+    // Expected ms to fetch a piece from this peer (PeerRankingService); lower is better
+    private double score;
+
+    // Getters and Setters
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getIpAddress() {
+        return ipAddress;
+    }
+
+    public void setIpAddress(String ipAddress) {
+        this.ipAddress = ipAddress;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public String getBitfield() {
+        return bitfield;
+    }
+
+    public void setBitfield(String bitfield) {
+        this.bitfield = bitfield;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public void setScore(double score) {
+        this.score = score;
+    }
+}
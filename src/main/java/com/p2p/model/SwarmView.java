@@ -0,0 +1,87 @@
+package com.p2p.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tracker answer to a swarm announce: how the file is cut into pieces, which online
+ * peers hold which pieces, and how many copies of each piece the swarm has.
+ * {@code fromServer} lists the pieces the caller still needs that too few peers hold;
+ * everything else should be fetched from peers, rarest first.
+ */
+public class SwarmView {
+
+    private String fileId;
+    private long length;
+    private int pieceSize;
+    private List<String> pieceHashes;
+    private int[] availability;
+    private List<Integer> fromServer = new ArrayList<>();
+    private List<SwarmPeer> peers = new ArrayList<>();
+    private long announceIntervalMs;
+
+    // Getters and Setters
+    public String getFileId() {
+        return fileId;
+    }
+
+    public void setFileId(String fileId) {
+        this.fileId = fileId;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public void setLength(long length) {
+        this.length = length;
+    }
+
+    public int getPieceSize() {
+        return pieceSize;
+    }
+
+    public void setPieceSize(int pieceSize) {
+        this.pieceSize = pieceSize;
+    }
+
+    public List<String> getPieceHashes() {
+        return pieceHashes;
+    }
+
+    public void setPieceHashes(List<String> pieceHashes) {
+        this.pieceHashes = pieceHashes;
+    }
+
+    public int[] getAvailability() {
+        return availability;
+    }
+
+    public void setAvailability(int[] availability) {
+        this.availability = availability;
+    }
+
+    public List<Integer> getFromServer() {
+        return fromServer;
+    }
+
+    public void setFromServer(List<Integer> fromServer) {
+        this.fromServer = fromServer;
+    }
+
+    public List<SwarmPeer> getPeers() {
+        return peers;
+    }
+
+    public void setPeers(List<SwarmPeer> peers) {
+        this.peers = peers;
+    }
+
+    public long getAnnounceIntervalMs() {
+        return announceIntervalMs;
+    }
+
+    public void setAnnounceIntervalMs(long announceIntervalMs) {
+        this.announceIntervalMs = announceIntervalMs;
+    }
+}
@@ -1,6 +1,7 @@
 package com.p2p.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -14,7 +15,10 @@ public class User implements UserDetails {
     
     @Id
     private String id;
+    @Indexed(unique = true)
     private String username;
+    // Sparse: accounts without an email don't collide on null
+    @Indexed(unique = true, sparse = true)
     private String email;
     private String password;
     private String role; // ADMIN or USER
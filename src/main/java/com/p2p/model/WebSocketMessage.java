@@ -15,6 +15,7 @@ public class WebSocketMessage {
     private String sender;
     private String fileId;
     private long timestamp = System.currentTimeMillis();
+    private long seq; // Per-room sequence number, assigned by the room's owner node (0 = unsequenced)
     
     // Getters and Setters
     public MessageType getType() {
@@ -56,4 +57,12 @@ public class WebSocketMessage {
     public void setTimestamp(long timestamp) {
         this.timestamp = timestamp;
     }
+    
+    public long getSeq() {
+        return seq;
+    }
+    
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
 }
\ No newline at end of file
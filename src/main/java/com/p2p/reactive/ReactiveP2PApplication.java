@@ -0,0 +1,49 @@
+package com.p2p.reactive;
+
+import com.p2p.model.File;
+import com.p2p.repository.ChunkIndexRepository;
+import com.p2p.repository.RevokedTokenRepository;
+import com.p2p.security.JwtTokenProvider;
+import com.p2p.security.TokenRevocationList;
+import com.p2p.service.ChunkStore;
+import com.p2p.util.Crypto;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
+
+/**
+ * Non-blocking runtime for the file, room and peer APIs (WebFlux on Netty + reactive MongoDB).
+ *
+ * Only scans this package, plus the shared JWT/crypto components and the chunk store
+ * (files are stored the same way by both runtimes). Login, users,
+ * WebSocket rooms and debug endpoints stay on the servlet runtime ({@code P2PApplication});
+ * tokens it issues are accepted here. Settings live in application-reactive.properties.
+ */
+@SpringBootApplication
+@Profile("reactive")
+@EntityScan(basePackageClasses = File.class)
+@EnableMongoRepositories(basePackageClasses = RevokedTokenRepository.class,
+        includeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE,
+                classes = {RevokedTokenRepository.class, ChunkIndexRepository.class}))
+@Import({JwtTokenProvider.class, TokenRevocationList.class, Crypto.class, ChunkStore.class})
+public class ReactiveP2PApplication {
+
+    public static void main(String[] args) {
+        SpringApplication application = new SpringApplication(ReactiveP2PApplication.class);
+        application.setAdditionalProfiles("reactive");
+        application.run(args);
+    }
+    
+    // Tomcat is also on the classpath; pin the reactive runtime to Netty's event loop
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
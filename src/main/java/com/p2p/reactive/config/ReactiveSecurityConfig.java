@@ -0,0 +1,68 @@
+package com.p2p.reactive.config;
+
+import com.p2p.reactive.repository.ReactiveUserRepository;
+import com.p2p.security.JwtTokenProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authentication.AuthenticationWebFilter;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import reactor.core.publisher.Mono;
+
+/**
+ * Stateless JWT security for the reactive runtime.
+ *
+ * Tokens are the same ones the servlet runtime issues (same jwt.secret), and are
+ * checked through the same verified-token cache and revocation list.
+ */
+@Configuration
+@EnableWebFluxSecurity
+@Profile("reactive")
+public class ReactiveSecurityConfig {
+
+    @Bean
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http,
+                                                         JwtTokenProvider jwtTokenProvider,
+                                                         ReactiveUserRepository userRepository) {
+        ReactiveAuthenticationManager jwtAuthenticationManager = authentication -> {
+            String username = jwtTokenProvider.getVerifiedUsername((String) authentication.getCredentials());
+            if (username == null) {
+                return Mono.error(new BadCredentialsException("Invalid token"));
+            }
+            return userRepository.findByUsername(username)
+                    .switchIfEmpty(Mono.error(new BadCredentialsException("User not found")))
+                    .map(user -> new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+        };
+        
+        AuthenticationWebFilter jwtFilter = new AuthenticationWebFilter(jwtAuthenticationManager);
+        jwtFilter.setSecurityContextRepository(NoOpServerSecurityContextRepository.getInstance());
+        jwtFilter.setServerAuthenticationConverter(exchange -> {
+            String authHeader = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+            if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+                return Mono.empty();
+            }
+            String jwt = authHeader.substring(7);
+            return Mono.just(new UsernamePasswordAuthenticationToken(jwt, jwt));
+        });
+        
+        return http.csrf().disable()
+                .httpBasic().disable()
+                .formLogin().disable()
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .authorizeExchange()
+                    // Same public endpoints as the servlet SecurityConfig
+                    .pathMatchers("/actuator/health", "/actuator/prometheus").permitAll()
+                    .anyExchange().authenticated()
+                .and()
+                .addFilterAt(jwtFilter, SecurityWebFiltersOrder.AUTHENTICATION)
+                .build();
+    }
+}
@@ -0,0 +1,84 @@
+package com.p2p.reactive.controller;
+
+import com.p2p.model.File;
+import com.p2p.model.User;
+import com.p2p.reactive.service.ReactiveFileService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Same API as {@link com.p2p.controller.FileController}, served non-blocking
+ */
+@RestController
+@RequestMapping("/api/files")
+@Profile("reactive")
+public class ReactiveFileController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveFileController.class);
+    private ReactiveFileService fileService;
+    
+    @Autowired
+    public ReactiveFileController(ReactiveFileService fileService) {
+        this.fileService = fileService;
+    }
+    
+    @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<File>> uploadFile(
+            @RequestPart("file") Mono<FilePart> file,
+            @RequestParam(value = "encrypt", defaultValue = "false") boolean encrypt,
+            @AuthenticationPrincipal User user) {
+        
+        return file
+                .flatMap(part -> fileService.storeFile(part, user.getId(), encrypt))
+                .map(ResponseEntity::ok)
+                .doOnError(e -> logger.error("Error uploading file", e));
+    }
+    
+    @GetMapping
+    public Flux<File> getMyFiles(@AuthenticationPrincipal User user) {
+        return fileService.getFilesByOwnerId(user.getId());
+    }
+    
+    @GetMapping("/{fileId}")
+    public Mono<Void> downloadFile(@PathVariable String fileId,
+            @RequestParam(value = "decryptionKey", required = false) String decryptionKey,
+            @AuthenticationPrincipal User user,
+            ServerHttpResponse response) {
+        
+        // 404 rather than 403 so file ids can't be probed
+        return fileService.getFileById(fileId)
+                .filterWhen(file -> fileService.canReadFile(file, user.getId()))
+                .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "File not found")))
+                .flatMap(file -> {
+                    response.getHeaders().setContentType(MediaType.parseMediaType(file.getFileType()));
+                    response.getHeaders().set(HttpHeaders.CONTENT_DISPOSITION,
+                            "attachment; filename=\"" + file.getOriginalFilename() + "\"");
+                    
+                    Flux<DataBuffer> body = fileService.readFile(file, decryptionKey, response.bufferFactory());
+                    return response.writeWith(body);
+                });
+    }
+    
+    @DeleteMapping("/{fileId}")
+    public Mono<ResponseEntity<Void>> deleteFile(@PathVariable String fileId, @AuthenticationPrincipal User user) {
+        // Point lookup plus owner check instead of scanning all of the user's files
+        return fileService.getFileById(fileId)
+                .filter(file -> user.getId().equals(file.getOwnerId()))
+                .flatMap(file -> fileService.deleteFile(file).thenReturn(ResponseEntity.ok().<Void>build()))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+}
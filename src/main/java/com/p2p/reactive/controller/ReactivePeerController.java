@@ -0,0 +1,55 @@
+package com.p2p.reactive.controller;
+
+import com.p2p.model.Peer;
+import com.p2p.model.User;
+import com.p2p.reactive.service.ReactivePeerService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Same API as {@link com.p2p.controller.PeerController}, served non-blocking
+ */
+@RestController
+@RequestMapping("/api/peers")
+@Profile("reactive")
+public class ReactivePeerController {
+
+    private ReactivePeerService peerService;
+    
+    @Autowired
+    public ReactivePeerController(ReactivePeerService peerService) {
+        this.peerService = peerService;
+    }
+    
+    @PostMapping("/register")
+    public Mono<Peer> registerPeer(@RequestBody Map<String, Object> request,
+                                   @AuthenticationPrincipal User user) {
+        String ipAddress = (String) request.get("ipAddress");
+        int port = (int) request.get("port");
+        return peerService.registerPeer(user.getId(), ipAddress, port);
+    }
+    
+    @GetMapping("/online")
+    public Flux<Peer> getOnlinePeers() {
+        return peerService.getOnlinePeers();
+    }
+    
+    @PutMapping("/{peerId}/status")
+    public Mono<Void> updateStatus(@PathVariable String peerId,
+                                   @RequestBody Map<String, Boolean> request,
+                                   @AuthenticationPrincipal User user) {
+        return peerService.setPeerStatus(user.getId(), request.get("online"));
+    }
+    
+    @DeleteMapping("/{peerId}")
+    public Mono<Void> deletePeer(@PathVariable String peerId,
+                                 @AuthenticationPrincipal User user) {
+        return peerService.setPeerStatus(user.getId(), false);
+    }
+}
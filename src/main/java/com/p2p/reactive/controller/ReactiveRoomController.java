@@ -0,0 +1,130 @@
+package com.p2p.reactive.controller;
+
+import com.p2p.model.Room;
+import com.p2p.model.User;
+import com.p2p.reactive.service.ReactiveFileService;
+import com.p2p.reactive.service.ReactiveRoomService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Same API as {@link com.p2p.controller.RoomController} (minus the debug endpoints), served non-blocking
+ */
+@RestController
+@RequestMapping("/api/rooms")
+@Profile("reactive")
+public class ReactiveRoomController {
+
+    private ReactiveRoomService roomService;
+    private ReactiveFileService fileService;
+    
+    @Autowired
+    public ReactiveRoomController(ReactiveRoomService roomService, ReactiveFileService fileService) {
+        this.roomService = roomService;
+        this.fileService = fileService;
+    }
+    
+    @PostMapping
+    public Mono<Room> createRoom(@RequestBody Map<String, String> request,
+                                 @AuthenticationPrincipal User user) {
+        return roomService.createRoom(request.get("name"), user.getId());
+    }
+    
+    @GetMapping
+    public Flux<Room> getMyRooms(@AuthenticationPrincipal User user) {
+        return roomService.getRoomsForUser(user.getId());
+    }
+    
+    @GetMapping("/{roomId}")
+    public Mono<ResponseEntity<Room>> getRoom(@PathVariable String roomId,
+                                              @AuthenticationPrincipal User user) {
+        return roomService.getRoomById(roomId)
+                .map(room -> room.getMembers().contains(user.getId())
+                        ? ResponseEntity.ok(room)
+                        : ResponseEntity.status(403).<Room>build());
+    }
+    
+    @GetMapping("/link/{link}")
+    public Mono<Room> getRoomByLink(@PathVariable String link) {
+        return roomService.getRoomByLink(link);
+    }
+    
+    @PostMapping("/join/{link}")
+    public Mono<Room> joinRoomByLink(@PathVariable String link,
+                                     @AuthenticationPrincipal User user) {
+        return roomService.joinRoomByLink(link, user.getId());
+    }
+    
+    // Only the creator adds members; everyone else joins through the room link
+    @PostMapping("/{roomId}/members")
+    public Mono<ResponseEntity<Room>> addMember(@PathVariable String roomId,
+                                                @RequestBody Map<String, String> request,
+                                                @AuthenticationPrincipal User user) {
+        return roomService.getRoomById(roomId)
+                .flatMap(room -> room.getCreatorId().equals(user.getId())
+                        ? roomService.addMemberToRoom(roomId, request.get("userId")).map(ResponseEntity::ok)
+                        : Mono.just(ResponseEntity.status(403).<Room>build()));
+    }
+    
+    // The creator can remove anyone; members can remove themselves
+    @DeleteMapping("/{roomId}/members/{userId}")
+    public Mono<ResponseEntity<Room>> removeMember(@PathVariable String roomId,
+                                                   @PathVariable String userId,
+                                                   @AuthenticationPrincipal User user) {
+        return roomService.getRoomById(roomId)
+                .flatMap(room -> userId.equals(user.getId()) || room.getCreatorId().equals(user.getId())
+                        ? roomService.removeMemberFromRoom(roomId, userId).map(ResponseEntity::ok)
+                        : Mono.just(ResponseEntity.status(403).<Room>build()));
+    }
+    
+    // Only the file's owner may share it, and only into a room they belong to
+    @PostMapping("/{roomId}/files")
+    public Mono<ResponseEntity<Room>> addFile(@PathVariable String roomId,
+                                              @RequestBody Map<String, String> request,
+                                              @AuthenticationPrincipal User user) {
+        String fileId = request.get("fileId");
+        if (fileId == null) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return Mono.zip(roomService.getRoomById(roomId), isOwner(fileId, user))
+                .flatMap(checks -> checks.getT1().getMembers().contains(user.getId()) && checks.getT2()
+                        ? roomService.addFileToRoom(roomId, fileId).map(ResponseEntity::ok)
+                        : Mono.just(ResponseEntity.status(403).<Room>build()));
+    }
+    
+    // The file's owner or the room's creator can take a file out of the room
+    @DeleteMapping("/{roomId}/files/{fileId}")
+    public Mono<ResponseEntity<Room>> removeFile(@PathVariable String roomId,
+                                                 @PathVariable String fileId,
+                                                 @AuthenticationPrincipal User user) {
+        return Mono.zip(roomService.getRoomById(roomId), isOwner(fileId, user))
+                .flatMap(checks -> checks.getT1().getCreatorId().equals(user.getId()) || checks.getT2()
+                        ? roomService.removeFileFromRoom(roomId, fileId).map(ResponseEntity::ok)
+                        : Mono.just(ResponseEntity.status(403).<Room>build()));
+    }
+    
+    @DeleteMapping("/{roomId}")
+    public Mono<ResponseEntity<?>> deleteRoom(@PathVariable String roomId,
+                                              @AuthenticationPrincipal User user) {
+        return roomService.getRoomById(roomId)
+                .flatMap(room -> {
+                    if (!room.getCreatorId().equals(user.getId())) {
+                        return Mono.just(ResponseEntity.status(403).body("Not authorized to delete this room"));
+                    }
+                    return roomService.deleteRoom(roomId).thenReturn(ResponseEntity.ok().build());
+                });
+    }
+    
+    private Mono<Boolean> isOwner(String fileId, User user) {
+        return fileService.getFileById(fileId)
+                .map(file -> user.getId().equals(file.getOwnerId()))
+                .defaultIfEmpty(false);
+    }
+}
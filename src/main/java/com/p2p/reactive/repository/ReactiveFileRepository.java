@@ -0,0 +1,9 @@
+package com.p2p.reactive.repository;
+
+import com.p2p.model.File;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+
+public interface ReactiveFileRepository extends ReactiveMongoRepository<File, String> {
+    Flux<File> findByOwnerId(String ownerId);
+}
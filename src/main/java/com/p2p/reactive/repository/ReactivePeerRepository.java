@@ -0,0 +1,11 @@
+package com.p2p.reactive.repository;
+
+import com.p2p.model.Peer;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReactivePeerRepository extends ReactiveMongoRepository<Peer, String> {
+    Mono<Peer> findByUserId(String userId);
+    Flux<Peer> findByIsOnline(boolean isOnline);
+}
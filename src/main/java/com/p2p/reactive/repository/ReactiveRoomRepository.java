@@ -0,0 +1,21 @@
+package com.p2p.reactive.repository;
+
+import com.p2p.model.Room;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveRoomRepository extends ReactiveMongoRepository<Room, String> {
+    Flux<Room> findByCreatorId(String creatorId);
+    
+    // Same explicit query as RoomRepository
+    @Query("{ 'members' : ?0 }")
+    Flux<Room> findByMembersContains(String userId);
+    
+    Mono<Room> findByRoomLink(String roomLink);
+    
+    // Same access check as RoomRepository
+    @Query(value = "{ 'files' : ?0, 'members' : ?1 }", exists = true)
+    Mono<Boolean> existsByFileAndMember(String fileId, String userId);
+}
@@ -0,0 +1,218 @@
+package com.p2p.reactive.service;
+
+import com.p2p.model.AccessChange;
+import com.p2p.model.File;
+import com.p2p.model.FileHashes;
+import com.p2p.reactive.repository.ReactiveFileRepository;
+import com.p2p.reactive.repository.ReactiveRoomRepository;
+import com.p2p.service.ChunkStore;
+import com.p2p.util.Crypto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking counterpart of {@link com.p2p.service.FileService}.
+ *
+ * Uploads and downloads are streamed as DataBuffers between the socket and the same
+ * {@link ChunkStore} the servlet runtime uses (optionally through an AES cipher), so no
+ * file is ever held in memory and no event loop thread waits on the disk: chunk reads,
+ * writes and refcount updates run on boundedElastic. Piece hashes and the Merkle tree
+ * are not computed here; the servlet runtime builds them from the chunks on first use.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveFileService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveFileService.class);
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private ReactiveFileRepository fileRepository;
+    private ReactiveRoomRepository roomRepository;
+    private ReactiveMongoTemplate mongoTemplate;
+    private ChunkStore chunkStore;
+    private Crypto crypto;
+
+    @Autowired
+    public ReactiveFileService(ReactiveFileRepository fileRepository, ReactiveRoomRepository roomRepository,
+                               ReactiveMongoTemplate mongoTemplate, ChunkStore chunkStore, Crypto crypto) {
+        this.fileRepository = fileRepository;
+        this.roomRepository = roomRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.chunkStore = chunkStore;
+        this.crypto = crypto;
+    }
+
+    public Mono<File> storeFile(FilePart filePart, String ownerId, boolean encrypt) {
+        // Generate a unique filename
+        String originalFilename = filePart.filename();
+        int dot = originalFilename.lastIndexOf(".");
+        String fileExtension = dot >= 0 ? originalFilename.substring(dot) : "";
+        String newFilename = UUID.randomUUID().toString() + fileExtension;
+
+        AtomicLong size = new AtomicLong();
+        Flux<DataBuffer> content = filePart.content()
+                .doOnNext(buffer -> size.addAndGet(buffer.readableByteCount()));
+
+        if (encrypt) {
+            try {
+                SecretKey key = crypto.generateAESKey();
+                content = transform(content, crypto.createAESCipher(Cipher.ENCRYPT_MODE, key));
+
+                // Same handling as the servlet upload: key is only logged for now
+                logger.info("Encryption key for file {}: {}", newFilename, crypto.keyToString(key));
+            } catch (Exception e) {
+                return Mono.error(new RuntimeException("Error encrypting file", e));
+            }
+        }
+
+        // One chunk output per upload; chunks go back to the store if anything fails before the index is saved
+        ChunkStore.ChunkedOutputStream output = chunkStore.newOutput();
+        AtomicLong stored = new AtomicLong();
+        Flux<DataBuffer> upload = content;
+        return upload
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(buffer -> {
+                    try {
+                        byte[] bytes = new byte[buffer.readableByteCount()];
+                        buffer.read(bytes);
+                        output.write(bytes, 0, bytes.length);
+                        stored.addAndGet(bytes.length);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                })
+                .then(Mono.fromCallable(() -> {
+                    output.close();
+                    return output;
+                }).subscribeOn(Schedulers.boundedElastic()))
+                .then(Mono.defer(() -> {
+                    File file = new File();
+                    file.setFilename(newFilename);
+                    file.setOriginalFilename(originalFilename);
+                    file.setChunked(true);
+                    file.setStoredSize(stored.get());
+                    file.setFileType(filePart.headers().getContentType() != null
+                            ? filePart.headers().getContentType().toString()
+                            : "application/octet-stream");
+                    file.setFileSize(size.get());
+                    file.setOwnerId(ownerId);
+                    file.setUploadDate(new Date());
+                    file.setEncrypted(encrypt);
+                    return fileRepository.save(file);
+                }))
+                .flatMap(saved -> Mono.fromCallable(() -> {
+                    output.save(saved.getId());
+                    return saved;
+                }).subscribeOn(Schedulers.boundedElastic())
+                        .onErrorResume(e -> fileRepository.delete(saved).then(Mono.error(e))))
+                .doOnError(e -> Schedulers.boundedElastic().schedule(output::abort))
+                .doOnCancel(() -> Schedulers.boundedElastic().schedule(output::abort))
+                .doOnNext(saved -> logger.debug("Streamed upload {} ({} bytes)", saved.getId(), size.get()));
+    }
+
+    /**
+     * Stream a stored file, decrypting on the fly if a key is given
+     */
+    public Flux<DataBuffer> readFile(File file, String decryptionKey, DataBufferFactory bufferFactory) {
+        Flux<DataBuffer> content;
+        if (file.isChunked()) {
+            // Loading the chunk index and reading chunk files both block
+            content = Mono.fromCallable(() -> chunkStore.open(file))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flatMapMany(stored -> DataBufferUtils.readInputStream(() -> stored.openAt(0), bufferFactory, READ_BUFFER_SIZE)
+                            .subscribeOn(Schedulers.boundedElastic()));
+        } else {
+            content = DataBufferUtils.read(Paths.get(file.getFilePath()), bufferFactory, READ_BUFFER_SIZE);
+        }
+
+        if (decryptionKey != null && !decryptionKey.isEmpty()) {
+            try {
+                SecretKey key = crypto.stringToSecretKey(decryptionKey);
+                content = transform(content, crypto.createAESCipher(Cipher.DECRYPT_MODE, key));
+            } catch (Exception e) {
+                return Flux.error(new RuntimeException("Error decrypting file", e));
+            }
+        }
+
+        return content;
+    }
+
+    public Mono<File> getFileById(String fileId) {
+        return fileRepository.findById(fileId);
+    }
+
+    /**
+     * Owners can always read their files; anyone else needs a room that has both the file and them
+     */
+    public Mono<Boolean> canReadFile(File file, String userId) {
+        if (userId.equals(file.getOwnerId())) {
+            return Mono.just(true);
+        }
+        return roomRepository.existsByFileAndMember(file.getId(), userId);
+    }
+
+    public Flux<File> getFilesByOwnerId(String ownerId) {
+        return fileRepository.findByOwnerId(ownerId);
+    }
+
+    public Mono<Void> deleteFile(File file) {
+        // Chunks still used by other versions stay
+        Mono<Void> content = file.isChunked()
+                ? Mono.fromRunnable(() -> chunkStore.release(file.getId()))
+                : Mono.fromCallable(() -> Files.deleteIfExists(Paths.get(file.getFilePath())))
+                        .doOnNext(deleted -> {
+                            if (!deleted) {
+                                logger.warn("File not found on disk: {}", file.getFilePath());
+                            }
+                        })
+                        .then();
+        return content
+                .subscribeOn(Schedulers.boundedElastic())
+                .then(fileRepository.delete(file))
+                .then(mongoTemplate.remove(new Query(Criteria.where("_id").is(file.getId())), FileHashes.class))
+                .then(mongoTemplate.insert(AccessChange.of(AccessChange.Type.FILE, null, null, file.getId(), ReactiveRoomService.ORIGIN))
+                        .doOnError(e -> logger.error("Error logging access change for file {}", file.getId(), e))
+                        .onErrorResume(e -> Mono.empty())
+                        .then());
+    }
+
+    // Run each buffer through the cipher in order, then append the final block
+    private Flux<DataBuffer> transform(Flux<DataBuffer> content, Cipher cipher) {
+        return content
+                .map(buffer -> {
+                    byte[] input = new byte[buffer.readableByteCount()];
+                    buffer.read(input);
+                    DataBufferUtils.release(buffer);
+                    byte[] output = cipher.update(input);
+                    return (DataBuffer) DefaultDataBufferFactory.sharedInstance.wrap(output != null ? output : new byte[0]);
+                })
+                .concatWith(Mono.fromCallable(cipher::doFinal)
+                        .map(DefaultDataBufferFactory.sharedInstance::wrap));
+    }
+}
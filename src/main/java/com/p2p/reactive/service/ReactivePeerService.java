@@ -0,0 +1,53 @@
+package com.p2p.reactive.service;
+
+import com.p2p.model.Peer;
+import com.p2p.reactive.repository.ReactivePeerRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Date;
+
+/**
+ * Non-blocking counterpart of {@link com.p2p.service.SimplePeerService}
+ */
+@Service
+@Profile("reactive")
+public class ReactivePeerService {
+
+    private ReactivePeerRepository peerRepository;
+    
+    @Autowired
+    public ReactivePeerService(ReactivePeerRepository peerRepository) {
+        this.peerRepository = peerRepository;
+    }
+    
+    public Mono<Peer> registerPeer(String userId, String ipAddress, int port) {
+        return peerRepository.findByUserId(userId)
+                .defaultIfEmpty(new Peer())
+                .flatMap(peer -> {
+                    peer.setUserId(userId);
+                    peer.setIpAddress(ipAddress);
+                    peer.setPort(port);
+                    peer.setOnline(true);
+                    peer.setLastSeen(new Date());
+                    return peerRepository.save(peer);
+                });
+    }
+    
+    public Flux<Peer> getOnlinePeers() {
+        return peerRepository.findByIsOnline(true);
+    }
+    
+    public Mono<Void> setPeerStatus(String userId, boolean isOnline) {
+        return peerRepository.findByUserId(userId)
+                .flatMap(peer -> {
+                    peer.setOnline(isOnline);
+                    peer.setLastSeen(new Date());
+                    return peerRepository.save(peer);
+                })
+                .then();
+    }
+}
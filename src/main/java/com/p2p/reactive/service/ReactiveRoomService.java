@@ -0,0 +1,128 @@
+package com.p2p.reactive.service;
+
+import com.p2p.model.AccessChange;
+import com.p2p.model.Room;
+import com.p2p.reactive.repository.ReactiveRoomRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Non-blocking counterpart of {@link com.p2p.service.RoomService}.
+ *
+ * Membership and room file changes are logged to {@code access_changes} so the servlet
+ * nodes drop access decisions they cached before the change.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveRoomService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveRoomService.class);
+    
+    static final String ORIGIN = "reactive";
+    
+    private ReactiveRoomRepository roomRepository;
+    private ReactiveMongoTemplate mongoTemplate;
+    
+    @Autowired
+    public ReactiveRoomService(ReactiveRoomRepository roomRepository, ReactiveMongoTemplate mongoTemplate) {
+        this.roomRepository = roomRepository;
+        this.mongoTemplate = mongoTemplate;
+    }
+    
+    public Mono<Room> createRoom(String name, String creatorId) {
+        Room room = new Room();
+        room.setName(name);
+        room.setCreatorId(creatorId);
+        room.getMembers().add(creatorId); // Add creator as a member
+        room.setCreatedAt(new Date());
+        room.setRoomLink(UUID.randomUUID().toString());
+        
+        logger.debug("Creating room: {} with creator: {}", name, creatorId);
+        return roomRepository.save(room)
+                .flatMap(saved -> logChange(saved, AccessChange.Type.MEMBERSHIP, creatorId, null));
+    }
+    
+    public Mono<Room> getRoomById(String roomId) {
+        return roomRepository.findById(roomId)
+                .switchIfEmpty(Mono.error(new RuntimeException("Room not found")));
+    }
+    
+    public Mono<Room> getRoomByLink(String link) {
+        return roomRepository.findByRoomLink(link)
+                .switchIfEmpty(Mono.error(new RuntimeException("Room not found")));
+    }
+    
+    public Flux<Room> getRoomsForUser(String userId) {
+        return roomRepository.findByMembersContains(userId);
+    }
+    
+    public Mono<Room> joinRoomByLink(String link, String userId) {
+        return getRoomByLink(link)
+                .flatMap(room -> {
+                    if (room.getMembers().contains(userId)) {
+                        return Mono.just(room);
+                    }
+                    room.getMembers().add(userId);
+                    return roomRepository.save(room)
+                            .flatMap(saved -> logChange(saved, AccessChange.Type.MEMBERSHIP, userId, null));
+                });
+    }
+    
+    public Mono<Room> addMemberToRoom(String roomId, String userId) {
+        return getRoomById(roomId).flatMap(room -> {
+            room.addMember(userId);
+            return roomRepository.save(room)
+                    .flatMap(saved -> logChange(saved, AccessChange.Type.MEMBERSHIP, userId, null));
+        });
+    }
+    
+    public Mono<Room> removeMemberFromRoom(String roomId, String userId) {
+        return getRoomById(roomId).flatMap(room -> {
+            room.removeMember(userId);
+            return roomRepository.save(room)
+                    .flatMap(saved -> logChange(saved, AccessChange.Type.MEMBERSHIP, userId, null));
+        });
+    }
+    
+    public Mono<Room> addFileToRoom(String roomId, String fileId) {
+        return getRoomById(roomId).flatMap(room -> {
+            room.addFile(fileId);
+            return roomRepository.save(room)
+                    .flatMap(saved -> logChange(saved, AccessChange.Type.ROOM_FILES, null, fileId));
+        });
+    }
+    
+    public Mono<Room> removeFileFromRoom(String roomId, String fileId) {
+        return getRoomById(roomId).flatMap(room -> {
+            room.removeFile(fileId);
+            return roomRepository.save(room)
+                    .flatMap(saved -> logChange(saved, AccessChange.Type.ROOM_FILES, null, fileId));
+        });
+    }
+    
+    public Mono<Void> deleteRoom(String roomId) {
+        return roomRepository.deleteById(roomId)
+                .then(logChange(roomId, AccessChange.Type.ROOM_DELETED, null, null));
+    }
+    
+    private Mono<Room> logChange(Room room, AccessChange.Type type, String userId, String fileId) {
+        return logChange(room.getId(), type, userId, fileId).thenReturn(room);
+    }
+    
+    // Failing to log only delays the servlet nodes until their cached decisions expire
+    private Mono<Void> logChange(String roomId, AccessChange.Type type, String userId, String fileId) {
+        return mongoTemplate.insert(AccessChange.of(type, roomId, userId, fileId, ORIGIN))
+                .doOnError(e -> logger.error("Error logging access change {}", type, e))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+}
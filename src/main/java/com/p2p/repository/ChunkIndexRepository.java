@@ -0,0 +1,7 @@
+package com.p2p.repository;
+
+import com.p2p.model.ChunkIndex;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface ChunkIndexRepository extends MongoRepository<ChunkIndex, String> {
+}
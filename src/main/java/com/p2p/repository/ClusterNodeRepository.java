@@ -0,0 +1,11 @@
+package com.p2p.repository;
+
+import com.p2p.model.ClusterNode;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.Date;
+import java.util.List;
+
+public interface ClusterNodeRepository extends MongoRepository<ClusterNode, String> {
+    List<ClusterNode> findByLastHeartbeatAfter(Date date);
+}
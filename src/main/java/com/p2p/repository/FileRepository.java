@@ -3,8 +3,17 @@ package com.p2p.repository;
 import com.p2p.model.File;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
+import java.util.Date;
 import java.util.List;
 
 public interface FileRepository extends MongoRepository<File, String> {
     List<File> findByOwnerId(String ownerId);
+    
+    boolean existsByIdAndOwnerId(String id, String ownerId);
+    
+    List<File> findByVersionGroupIdOrderByVersionDesc(String versionGroupId);
+    
+    File findFirstByVersionGroupIdOrderByVersionDesc(String versionGroupId);
+    
+    List<File> findByVersionGroupIdIsNotNullAndUploadDateBefore(Date uploadDate);
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+package com.p2p.repository;
+
+import com.p2p.model.RevokedToken;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.Date;
+import java.util.List;
+
+public interface RevokedTokenRepository extends MongoRepository<RevokedToken, String> {
+    List<RevokedToken> findByExpiresAtAfter(Date date);
+    
+    List<RevokedToken> findByRevokedAtAfter(Date date);
+}
@@ -17,4 +17,11 @@ public interface RoomRepository extends MongoRepository<Room, String> {
     List<Room> findByMembersContains(String userId);
     
     Optional<Room> findByRoomLink(String roomLink);
+    
+    // Point lookups for access checks: only ask whether a matching room exists
+    @Query(value = "{ '_id' : ?0, 'members' : ?1 }", exists = true)
+    boolean existsByIdAndMember(String roomId, String userId);
+    
+    @Query(value = "{ 'files' : ?0, 'members' : ?1 }", exists = true)
+    boolean existsByFileAndMember(String fileId, String userId);
 }
\ No newline at end of file
@@ -2,11 +2,17 @@ package com.p2p.repository;
 
 import com.p2p.model.User;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface UserRepository extends MongoRepository<User, String> {
     Optional<User> findByUsername(String username);
     boolean existsByUsername(String username);
     boolean existsByEmail(String email);
+    
+    // Cursor over just the unique fields, used to warm the availability filters
+    @Query(value = "{}", fields = "{ 'username' : 1, 'email' : 1 }")
+    Stream<User> streamUsernamesAndEmails();
 }
\ No newline at end of file
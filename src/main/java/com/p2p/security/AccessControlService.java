@@ -0,0 +1,293 @@
+package com.p2p.security;
+
+import com.p2p.model.AccessChange;
+import com.p2p.model.User;
+import com.p2p.repository.FileRepository;
+import com.p2p.repository.RoomRepository;
+import com.p2p.service.UserService;
+import com.p2p.util.ExpiringCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.security.Principal;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single place that decides who may touch which room or file.
+ *
+ * Every check is one indexed existence query ({@code files.ownerId}, {@code rooms.members},
+ * {@code rooms.files}) and the answer, allowed or not, is cached for a short time.
+ * Services that change ownership or membership call the {@code on...Changed} hooks so
+ * a cached decision never outlives the data it was based on on this node. The hooks also
+ * log the change to {@code access_changes}, which every node polls (and the reactive
+ * runtime writes to), so other instances drop their decisions within a poll interval.
+ */
+@Component
+public class AccessControlService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccessControlService.class);
+
+    public enum Action { ROOM_MEMBER, READ_FILE, OWN_FILE }
+
+    private RoomRepository roomRepository;
+    private FileRepository fileRepository;
+    private UserService userService;
+
+    @Value("${authz.cache.ttl-ms:30000}")
+    private long cacheTtlMs;
+
+    @Value("${authz.cache.max-entries:50000}")
+    private int cacheMaxEntries;
+
+    @Value("${authz.sync-ms:2000}")
+    private long syncMs;
+
+    // Re-read this far back, for clock skew between instances
+    @Value("${authz.sync-overlap-ms:5000}")
+    private long syncOverlapMs;
+
+    private MongoTemplate mongoTemplate;
+    private final String instanceId = UUID.randomUUID().toString();
+    private volatile long syncedUntil = System.currentTimeMillis();
+    private ScheduledExecutorService syncer;
+
+    private ExpiringCache<String, Decision> decisions;
+    // Bumped before every invalidation so a lookup that raced with a change is not kept
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder denied = new LongAdder();
+    private final LongAdder remoteChanges = new LongAdder();
+
+    @Autowired
+    public AccessControlService(RoomRepository roomRepository, FileRepository fileRepository,
+                                @Lazy UserService userService, MongoTemplate mongoTemplate) {
+        this.roomRepository = roomRepository;
+        this.fileRepository = fileRepository;
+        this.userService = userService;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        decisions = new ExpiringCache<>(cacheMaxEntries);
+        syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "authz-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::sync, syncMs, syncMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        syncer.shutdownNow();
+    }
+
+    public boolean isRoomMember(String userId, String roomId) {
+        return decide(Action.ROOM_MEMBER, userId, roomId,
+                () -> roomRepository.existsByIdAndMember(roomId, userId));
+    }
+
+    /**
+     * Owners can always read their files; anyone else needs a room that has both the file and them
+     */
+    public boolean canReadFile(String userId, String fileId) {
+        return decide(Action.READ_FILE, userId, fileId,
+                () -> fileRepository.existsByIdAndOwnerId(fileId, userId)
+                        || roomRepository.existsByFileAndMember(fileId, userId));
+    }
+
+    /**
+     * Only the owner may share a file, and only into a room they belong to
+     */
+    public boolean canShareFile(String userId, String fileId, String roomId) {
+        return isOwner(userId, fileId) && isRoomMember(userId, roomId);
+    }
+
+    public boolean canDeleteFile(String userId, String fileId) {
+        return isOwner(userId, fileId);
+    }
+
+    /**
+     * Resolve the user id behind a STOMP or HTTP principal, which only carries the username
+     */
+    public String resolveUserId(Principal principal) {
+        if (principal == null) {
+            return null;
+        }
+        if (principal instanceof Authentication
+                && ((Authentication) principal).getPrincipal() instanceof User) {
+            return ((User) ((Authentication) principal).getPrincipal()).getId();
+        }
+        return userService.loadCachedUserByUsername(principal.getName()).getId();
+    }
+
+    /**
+     * A user joined or left a room: their membership and any file access through the room changed
+     */
+    public void onMembershipChanged(String roomId, String userId) {
+        apply(publish(AccessChange.Type.MEMBERSHIP, roomId, userId, null));
+    }
+
+    /**
+     * A file was added to or removed from a room, so who can read it changed
+     */
+    public void onRoomFilesChanged(String fileId) {
+        apply(publish(AccessChange.Type.ROOM_FILES, null, null, fileId));
+    }
+
+    /**
+     * A room is gone: drop its membership decisions and every read decision that may have relied on it
+     */
+    public void onRoomDeleted(String roomId) {
+        apply(publish(AccessChange.Type.ROOM_DELETED, roomId, null, null));
+    }
+
+    /**
+     * A file was deleted or changed owner
+     */
+    public void onFileChanged(String fileId) {
+        apply(publish(AccessChange.Type.FILE, null, null, fileId));
+    }
+
+    private void apply(AccessChange change) {
+        generation.incrementAndGet();
+        switch (change.getType()) {
+            case MEMBERSHIP:
+                decisions.invalidateIf(decision -> change.getUserId().equals(decision.userId)
+                        && (decision.action == Action.READ_FILE || change.getRoomId().equals(decision.resourceId)));
+                break;
+            case ROOM_FILES:
+                decisions.invalidateIf(decision -> decision.action == Action.READ_FILE
+                        && change.getFileId().equals(decision.resourceId));
+                break;
+            case ROOM_DELETED:
+                decisions.invalidateIf(decision -> decision.action == Action.READ_FILE
+                        || change.getRoomId().equals(decision.resourceId));
+                break;
+            case FILE:
+                decisions.invalidateIf(decision -> change.getFileId().equals(decision.resourceId));
+                break;
+        }
+    }
+
+    // Failing to log only delays other instances until their cached decisions expire
+    private AccessChange publish(AccessChange.Type type, String roomId, String userId, String fileId) {
+        AccessChange change = AccessChange.of(type, roomId, userId, fileId, instanceId);
+        try {
+            mongoTemplate.insert(change);
+        } catch (Exception e) {
+            logger.error("Error logging access change {}", type, e);
+        }
+        return change;
+    }
+
+    // Changes logged by other instances since the last poll; applying one twice is harmless
+    private void sync() {
+        try {
+            Query query = new Query(Criteria.where("createdAt").gt(new Date(syncedUntil - syncOverlapMs)))
+                    .with(Sort.by(Sort.Direction.ASC, "createdAt"));
+            for (AccessChange change : mongoTemplate.find(query, AccessChange.class)) {
+                syncedUntil = Math.max(syncedUntil, change.getCreatedAt().getTime());
+                if (!instanceId.equals(change.getOrigin()) && isComplete(change)) {
+                    apply(change);
+                    remoteChanges.increment();
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error syncing access changes", e);
+        }
+    }
+
+    private boolean isComplete(AccessChange change) {
+        switch (change.getType()) {
+            case MEMBERSHIP:
+                return change.getRoomId() != null && change.getUserId() != null;
+            case ROOM_DELETED:
+                return change.getRoomId() != null;
+            default:
+                return change.getFileId() != null;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("cachedDecisions", decisions.size());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("denied", denied.sum());
+        stats.put("remoteChanges", remoteChanges.sum());
+        return stats;
+    }
+
+    private boolean isOwner(String userId, String fileId) {
+        return decide(Action.OWN_FILE, userId, fileId,
+                () -> fileRepository.existsByIdAndOwnerId(fileId, userId));
+    }
+
+    private boolean decide(Action action, String userId, String resourceId, DecisionLookup lookup) {
+        if (userId == null || resourceId == null) {
+            return false;
+        }
+
+        String key = action.ordinal() + ":" + userId + ":" + resourceId;
+        Decision decision = decisions.get(key);
+        if (decision != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            long generationBefore = generation.get();
+            decision = new Decision(action, userId, resourceId, lookup.allowed());
+            decisions.put(key, decision, System.currentTimeMillis() + cacheTtlMs);
+            if (generation.get() != generationBefore) {
+                decisions.invalidate(key);
+            }
+        }
+
+        if (!decision.allowed) {
+            denied.increment();
+            logger.debug("Denied {} on {} for user {}", action, resourceId, userId);
+        }
+        return decision.allowed;
+    }
+
+    @FunctionalInterface
+    private interface DecisionLookup {
+        boolean allowed();
+    }
+
+    private static class Decision {
+        private final Action action;
+        private final String userId;
+        private final String resourceId;
+        private final boolean allowed;
+
+        private Decision(Action action, String userId, String resourceId, boolean allowed) {
+            this.action = action;
+            this.userId = userId;
+            this.resourceId = resourceId;
+            this.allowed = allowed;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.p2p.security;
 
 import com.p2p.service.UserService;
+import com.p2p.util.RequestTiming;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -43,13 +44,13 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         
         // Extract JWT from header
         String jwt = authHeader.substring(7);
+        long authStart = System.nanoTime();
         
-        // Validate JWT
-        if (jwtTokenProvider.validateToken(jwt)) {
-            String username = jwtTokenProvider.getUsernameFromToken(jwt);
-            
-            // Load user details from username
-            UserDetails userDetails = userService.loadUserByUsername(username);
+        // Validate JWT (parsed once, then served from the verified-token cache until expiry)
+        String username = jwtTokenProvider.getVerifiedUsername(jwt);
+        if (username != null) {
+            // Load user details from the short-lived principal cache
+            UserDetails userDetails = userService.loadCachedUserByUsername(username);
             
             // Create authentication token
             UsernamePasswordAuthenticationToken authentication = 
@@ -60,6 +61,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             // Set authentication in context
             SecurityContextHolder.getContext().setAuthentication(authentication);
         }
+        RequestTiming.record("auth", authStart);
         
         filterChain.doFilter(request, response);
     }
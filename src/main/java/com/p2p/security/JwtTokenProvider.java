@@ -1,10 +1,13 @@
 package com.p2p.security;
 
+import com.p2p.util.ExpiringCache;
 import io.jsonwebtoken.*;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -19,6 +22,24 @@ public class JwtTokenProvider {
     @Value("${jwt.expiration}")
     private Long expiration;
     
+    @Value("${jwt.verified-cache.max-entries:10000}")
+    private int verifiedCacheMaxEntries;
+    
+    // Token -> username, kept until the token's own expiry
+    private ExpiringCache<String, String> verifiedTokens;
+    
+    private TokenRevocationList tokenRevocationList;
+    
+    @Autowired
+    public JwtTokenProvider(TokenRevocationList tokenRevocationList) {
+        this.tokenRevocationList = tokenRevocationList;
+    }
+    
+    @PostConstruct
+    public void init() {
+        verifiedTokens = new ExpiringCache<>(verifiedCacheMaxEntries);
+    }
+    
     public String generateToken(UserDetails userDetails) {
         Map<String, Object> claims = new HashMap<>();
         return createToken(claims, userDetails.getUsername());
@@ -38,11 +59,54 @@ public class JwtTokenProvider {
     }
     
     public boolean validateToken(String token) {
+        return parseClaims(token) != null;
+    }
+    
+    /**
+     * Verify a token and return its subject, parsing it at most once until it expires.
+     * Returns null if the token is invalid, expired or revoked.
+     */
+    public String getVerifiedUsername(String token) {
+        if (tokenRevocationList.isRevoked(token)) {
+            return null;
+        }
+        
+        String username = verifiedTokens.get(token);
+        if (username != null) {
+            return username;
+        }
+        
+        Claims claims = parseClaims(token);
+        if (claims == null || claims.getSubject() == null) {
+            return null;
+        }
+        
+        long expiresAt = claims.getExpiration() != null
+                ? claims.getExpiration().getTime()
+                : System.currentTimeMillis() + expiration;
+        verifiedTokens.put(token, claims.getSubject(), expiresAt);
+        return claims.getSubject();
+    }
+    
+    /**
+     * Revoke a token before its natural expiry. Returns false if it was not a valid token.
+     */
+    public boolean revokeToken(String token) {
+        Claims claims = parseClaims(token);
+        if (claims == null) {
+            return false;
+        }
+        
+        tokenRevocationList.revoke(token, claims.getSubject(), claims.getExpiration());
+        verifiedTokens.invalidate(token);
+        return true;
+    }
+    
+    private Claims parseClaims(String token) {
         try {
-            Jwts.parser().setSigningKey(secret).parseClaimsJws(token);
-            return true;
+            return Jwts.parser().setSigningKey(secret).parseClaimsJws(token).getBody();
         } catch (SignatureException | MalformedJwtException | ExpiredJwtException | UnsupportedJwtException | IllegalArgumentException e) {
-            return false;
+            return null;
         }
     }
     
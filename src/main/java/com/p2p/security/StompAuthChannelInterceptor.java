@@ -0,0 +1,108 @@
+package com.p2p.security;
+
+import com.p2p.service.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+/**
+ * Authenticates STOMP sessions from the JWT in the CONNECT frame's Authorization header.
+ *
+ * SockJS can't send headers on the HTTP handshake, so the token travels in the CONNECT
+ * frame instead. The resulting principal is the same User-backed token the HTTP filter
+ * builds, and Spring attaches it to every later frame and session event.
+ *
+ * Later frames are authorized too: subscribing to a room topic needs room membership, and
+ * clients may only SEND to /app destinations, so broker topics and user queues are only
+ * ever written by the server.
+ */
+@Component
+public class StompAuthChannelInterceptor implements ChannelInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(StompAuthChannelInterceptor.class);
+    private static final String ROOM_TOPIC_PREFIX = "/topic/room/";
+    private static final String APP_PREFIX = "/app/";
+
+    private JwtTokenProvider jwtTokenProvider;
+    private UserService userService;
+    private AccessControlService accessControlService;
+
+    @Autowired
+    public StompAuthChannelInterceptor(JwtTokenProvider jwtTokenProvider, @Lazy UserService userService,
+                                       @Lazy AccessControlService accessControlService) {
+        this.jwtTokenProvider = jwtTokenProvider;
+        this.userService = userService;
+        this.accessControlService = accessControlService;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+        switch (accessor.getCommand()) {
+            case CONNECT:
+                return accessor.getUser() != null ? message : authenticate(message, accessor);
+            case SUBSCRIBE:
+                checkSubscribe(accessor);
+                return message;
+            case SEND:
+                checkSend(accessor);
+                return message;
+            default:
+                return message;
+        }
+    }
+
+    // Room topics (messages, /bin, /presence, /signal, /relay) are for room members only
+    private void checkSubscribe(StompHeaderAccessor accessor) {
+        String destination = accessor.getDestination();
+        if (destination == null || !destination.startsWith(ROOM_TOPIC_PREFIX)) {
+            return;
+        }
+        String rest = destination.substring(ROOM_TOPIC_PREFIX.length());
+        int slash = rest.indexOf('/');
+        String roomId = slash >= 0 ? rest.substring(0, slash) : rest;
+        String userId = accessControlService.resolveUserId(accessor.getUser());
+        if (userId == null || roomId.isEmpty() || !accessControlService.isRoomMember(userId, roomId)) {
+            logger.debug("Rejected subscription to {} (session {})", destination, accessor.getSessionId());
+            throw new MessagingException("Not a member of this room");
+        }
+    }
+
+    // Clients go through the @MessageMapping handlers, which check membership and stamp sender and seq
+    private void checkSend(StompHeaderAccessor accessor) {
+        String destination = accessor.getDestination();
+        if (destination == null || !destination.startsWith(APP_PREFIX)) {
+            logger.debug("Rejected SEND to {} (session {})", destination, accessor.getSessionId());
+            throw new MessagingException("Messages must be sent to /app destinations");
+        }
+    }
+
+    private Message<?> authenticate(Message<?> message, StompHeaderAccessor accessor) {
+        String authHeader = accessor.getFirstNativeHeader("Authorization");
+        String username = authHeader != null && authHeader.startsWith("Bearer ")
+                ? jwtTokenProvider.getVerifiedUsername(authHeader.substring(7))
+                : null;
+        if (username == null) {
+            logger.debug("Rejected STOMP connect without a valid token (session {})", accessor.getSessionId());
+            throw new MessagingException("Invalid or missing token");
+        }
+
+        UserDetails userDetails = userService.loadCachedUserByUsername(username);
+        accessor.setUser(new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities()));
+        return message;
+    }
+}
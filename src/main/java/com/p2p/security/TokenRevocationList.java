@@ -0,0 +1,276 @@
+package com.p2p.security;
+
+import com.p2p.model.RevokedToken;
+import com.p2p.repository.RevokedTokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokens revoked before their natural expiry, keyed by token hash.
+ *
+ * Checks hash the token with a per-thread digest and probe an immutable open-addressed
+ * table of 256-bit hashes, so they allocate nothing; with nothing revoked they don't
+ * even hash. The table is rebuilt on each change, which is rare. Revocations made on
+ * other nodes (or the reactive runtime) are picked up by polling {@code revoked_tokens}
+ * by {@code revokedAt}. Entries are only kept until the token would have expired anyway,
+ * both here and in Mongo (TTL index).
+ */
+@Component
+public class TokenRevocationList {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationList.class);
+
+    private static final int HASH_BYTES = 32;
+    private static final int HASH_LONGS = HASH_BYTES / 8;
+
+    private static final ThreadLocal<Hasher> HASHERS = ThreadLocal.withInitial(Hasher::new);
+
+    private RevokedTokenRepository revokedTokenRepository;
+
+    @Value("${jwt.revocation.sync-ms:5000}")
+    private long syncMs;
+
+    // Re-read this far behind the newest revocation seen, for clock skew between nodes
+    @Value("${jwt.revocation.sync-overlap-ms:30000}")
+    private long syncOverlapMs;
+
+    // Token hash (Base64, as stored in Mongo) -> expiry (epoch millis)
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+    private volatile HashTable table = HashTable.EMPTY;
+
+    // Newest revokedAt read from Mongo
+    private volatile long syncedUntil;
+    private ScheduledExecutorService syncer;
+
+    @Autowired
+    public TokenRevocationList(RevokedTokenRepository revokedTokenRepository) {
+        this.revokedTokenRepository = revokedTokenRepository;
+    }
+
+    @PostConstruct
+    public void load() {
+        syncedUntil = System.currentTimeMillis();
+        try {
+            merge(revokedTokenRepository.findByExpiresAtAfter(new Date()));
+            logger.info("Loaded {} revoked tokens", revoked.size());
+        } catch (Exception e) {
+            logger.error("Error loading revoked tokens", e);
+        }
+
+        syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "revocation-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::sync, syncMs, syncMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (syncer != null) {
+            syncer.shutdownNow();
+        }
+    }
+
+    public boolean isRevoked(String token) {
+        HashTable current = table;
+        if (current.size == 0) {
+            return false;
+        }
+        long[] hash = HASHERS.get().hash(token);
+        return current.expiry(hash) > System.currentTimeMillis();
+    }
+
+    public void revoke(String token, String username, Date expiresAt) {
+        long now = System.currentTimeMillis();
+        if (expiresAt.getTime() <= now) {
+            return; // Already expired, nothing to do
+        }
+
+        String tokenHash = Base64.getEncoder().encodeToString(HASHERS.get().digest(token));
+        put(tokenHash, expiresAt.getTime());
+
+        RevokedToken revokedToken = new RevokedToken();
+        revokedToken.setId(tokenHash);
+        revokedToken.setUsername(username);
+        revokedToken.setRevokedAt(new Date(now));
+        revokedToken.setExpiresAt(expiresAt);
+        revokedTokenRepository.save(revokedToken);
+        logger.info("Revoked token for user {} until {}", username, expiresAt);
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+
+    // Revocations written since the last poll, by any node
+    private void sync() {
+        try {
+            List<RevokedToken> recent = revokedTokenRepository.findByRevokedAtAfter(new Date(syncedUntil - syncOverlapMs));
+            int before = revoked.size();
+            merge(recent);
+            if (revoked.size() != before) {
+                logger.debug("Synced {} revoked tokens from other nodes", revoked.size() - before);
+            }
+            pruneExpired();
+        } catch (Exception e) {
+            logger.error("Error syncing revoked tokens", e);
+        }
+    }
+
+    private synchronized void merge(List<RevokedToken> tokens) {
+        boolean changed = false;
+        for (RevokedToken token : tokens) {
+            if (token.getRevokedAt() != null) {
+                syncedUntil = Math.max(syncedUntil, token.getRevokedAt().getTime());
+            }
+            if (token.getExpiresAt() != null && !revoked.containsKey(token.getId())) {
+                revoked.put(token.getId(), token.getExpiresAt().getTime());
+                changed = true;
+            }
+        }
+        if (changed) {
+            rebuild();
+        }
+    }
+
+    private synchronized void pruneExpired() {
+        long now = System.currentTimeMillis();
+        if (revoked.values().stream().anyMatch(expiry -> expiry <= now)) {
+            rebuild();
+        }
+    }
+
+    private synchronized void put(String tokenHash, long expiresAt) {
+        revoked.put(tokenHash, expiresAt);
+        rebuild();
+    }
+
+    // Drops expired entries and swaps in a fresh table
+    private void rebuild() {
+        long now = System.currentTimeMillis();
+        revoked.values().removeIf(expiry -> expiry <= now);
+        HashTable next = new HashTable(revoked.size());
+        revoked.forEach((tokenHash, expiry) -> next.put(Base64.getDecoder().decode(tokenHash), expiry));
+        table = next;
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    // Per-thread SHA-256 with reusable buffers
+    private static final class Hasher {
+        private final MessageDigest digest;
+        private final byte[] out = new byte[HASH_BYTES];
+        private final long[] words = new long[HASH_LONGS];
+        private byte[] in = new byte[1024];
+
+        private Hasher() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+
+        private long[] hash(String token) {
+            digestInto(token);
+            for (int i = 0; i < HASH_LONGS; i++) {
+                words[i] = readLong(out, i * 8);
+            }
+            return words;
+        }
+
+        private byte[] digest(String token) {
+            digestInto(token);
+            return out.clone();
+        }
+
+        // JWTs are ASCII (base64url and dots), so chars map straight to bytes
+        private void digestInto(String token) {
+            int length = token.length();
+            if (in.length < length) {
+                in = new byte[Math.max(length, in.length * 2)];
+            }
+            for (int i = 0; i < length; i++) {
+                char c = token.charAt(i);
+                in[i] = c < 0x80 ? (byte) c : (byte) '?';
+            }
+            digest.reset();
+            digest.update(in, 0, length);
+            try {
+                digest.digest(out, 0, HASH_BYTES);
+            } catch (DigestException e) {
+                throw new IllegalStateException("Error hashing token", e);
+            }
+        }
+    }
+
+    // Open-addressed set of 256-bit hashes with linear probing; never modified once published
+    private static final class HashTable {
+        private static final HashTable EMPTY = new HashTable(0);
+
+        private final long[] keys;
+        private final long[] expiries;
+        private final int mask;
+        private int size;
+
+        private HashTable(int entries) {
+            int capacity = Integer.highestOneBit(Math.max(2, entries) * 2 - 1) << 1;
+            keys = new long[capacity * HASH_LONGS];
+            expiries = new long[capacity];
+            mask = capacity - 1;
+        }
+
+        private void put(byte[] hash, long expiry) {
+            if (hash.length != HASH_BYTES) {
+                return;
+            }
+            int slot = (int) readLong(hash, 0) & mask;
+            while (expiries[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            for (int i = 0; i < HASH_LONGS; i++) {
+                keys[slot * HASH_LONGS + i] = readLong(hash, i * 8);
+            }
+            expiries[slot] = expiry;
+            size++;
+        }
+
+        // Expiry of the hash, or 0 if absent
+        private long expiry(long[] hash) {
+            int slot = (int) hash[0] & mask;
+            while (expiries[slot] != 0) {
+                int base = slot * HASH_LONGS;
+                if (keys[base] == hash[0] && keys[base + 1] == hash[1]
+                        && keys[base + 2] == hash[2] && keys[base + 3] == hash[3]) {
+                    return expiries[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return 0;
+        }
+    }
+}
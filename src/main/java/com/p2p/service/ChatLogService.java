@@ -0,0 +1,290 @@
+package com.p2p.service;
+
+import com.p2p.model.ChatLogEntry;
+import com.p2p.model.WebSocketMessage;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.CompoundIndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Append-only per-room message log.
+ *
+ * {@link #append} assigns the room's next sequence number and queues the entry; a
+ * single writer thread group-commits queued entries with one unordered bulk insert
+ * per batch, lingering a few milliseconds to fill it. Broadcasting never waits on
+ * the log writes. The log can be a capped collection so it stays bounded without deletes.
+ *
+ * Sequence numbers come from a per-room counter in Mongo, reserved a block at a time
+ * with an atomic increment, so two nodes never hand out the same number even while
+ * ownership of a room moves between them. Dropping a block only leaves a gap.
+ */
+@Service
+public class ChatLogService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatLogService.class);
+    private static final String COLLECTION = "chat_log";
+    private static final String SEQ_COLLECTION = "chat_seq";
+
+    private MongoTemplate mongoTemplate;
+
+    @Value("${chat.log.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.log.capped-size-mb:0}")
+    private long cappedSizeMb;
+
+    @Value("${chat.log.queue-capacity:100000}")
+    private int queueCapacity;
+
+    @Value("${chat.log.batch-size:500}")
+    private int batchSize;
+
+    @Value("${chat.log.linger-ms:5}")
+    private long lingerMs;
+
+    @Value("${chat.log.history.max-limit:200}")
+    private int maxHistoryLimit;
+
+    @Value("${chat.log.seq-block-size:100}")
+    private int seqBlockSize;
+
+    private BlockingQueue<ChatLogEntry> queue;
+    private Thread writer;
+    private volatile boolean running;
+
+    // Room id -> block of sequence numbers reserved by this node
+    private final Map<String, SeqBlock> sequences = new ConcurrentHashMap<>();
+
+    // Rooms whose counter has been checked against the log since startup
+    private final Set<String> seededRooms = ConcurrentHashMap.newKeySet();
+
+    // Metrics
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder seqReservations = new LongAdder();
+
+    @Autowired
+    public ChatLogService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        
+        try {
+            if (!mongoTemplate.collectionExists(COLLECTION)) {
+                if (cappedSizeMb > 0) {
+                    mongoTemplate.createCollection(COLLECTION, CollectionOptions.empty().capped().size(cappedSizeMb * 1024 * 1024));
+                } else {
+                    mongoTemplate.createCollection(COLLECTION);
+                }
+            }
+            IndexOperations indexOps = mongoTemplate.indexOps(COLLECTION);
+            indexOps.ensureIndex(new CompoundIndexDefinition(new Document("roomId", 1).append("seq", 1)).unique());
+            indexOps.ensureIndex(new CompoundIndexDefinition(new Document("roomId", 1).append("timestamp", 1)));
+        } catch (Exception e) {
+            logger.error("Error preparing chat log collection", e);
+        }
+        
+        queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        running = true;
+        writer = new Thread(this::writeLoop, "chat-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        // Let the writer flush what is queued
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * Assign the room's next sequence number and queue the message for persistence.
+     * Callers must serialise appends per room (see RoomMessageRouter) so that
+     * sequence order matches broadcast order.
+     */
+    public long append(String roomId, WebSocketMessage message) {
+        long seq = nextSeq(roomId);
+        if (enabled) {
+            appended.increment();
+            if (!queue.offer(new ChatLogEntry(roomId, seq, message))) {
+                dropped.increment();
+                logger.warn("Chat log queue full, message {} of room {} not persisted", seq, roomId);
+            }
+        }
+        return seq;
+    }
+
+    /**
+     * Drop reserved blocks, e.g. after rooms moved to another owner, so this node
+     * reserves fresh numbers above anything handed out elsewhere when it owns a room again
+     */
+    public void resetSequences() {
+        sequences.clear();
+    }
+
+    /**
+     * Up to {@code limit} entries before sequence {@code before} (latest if null),
+     * optionally not older than {@code sinceTime}, oldest first
+     */
+    public List<ChatLogEntry> getHistory(String roomId, Long before, Long sinceTime, int limit) {
+        Criteria criteria = Criteria.where("roomId").is(roomId);
+        if (before != null) {
+            criteria = criteria.and("seq").lt(before);
+        }
+        if (sinceTime != null) {
+            criteria = criteria.and("timestamp").gte(sinceTime);
+        }
+        
+        Query query = new Query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "seq"))
+                .limit(Math.max(1, Math.min(limit, maxHistoryLimit)));
+        List<ChatLogEntry> entries = mongoTemplate.find(query, ChatLogEntry.class, COLLECTION);
+        Collections.reverse(entries);
+        return entries;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("queued", queue != null ? queue.size() : 0);
+        stats.put("appended", appended.sum());
+        stats.put("written", written.sum());
+        stats.put("batches", batches.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("seqReservations", seqReservations.sum());
+        return stats;
+    }
+
+    // Callers hold the room's lock stripe, so blocks of one room are never used concurrently
+    private long nextSeq(String roomId) {
+        SeqBlock block = sequences.get(roomId);
+        if (block == null || block.next > block.last) {
+            block = reserveBlock(roomId);
+            sequences.put(roomId, block);
+        }
+        return block.next++;
+    }
+
+    private SeqBlock reserveBlock(String roomId) {
+        int size = Math.max(1, seqBlockSize);
+        try {
+            Query query = new Query(Criteria.where("_id").is(roomId));
+            if (seededRooms.add(roomId)) {
+                // Rooms logged before the counter existed start above their last entry
+                mongoTemplate.upsert(query, new Update().max("seq", loadLastSeq(roomId)), SEQ_COLLECTION);
+            }
+            Document counter = mongoTemplate.findAndModify(query, new Update().inc("seq", size),
+                    FindAndModifyOptions.options().upsert(true).returnNew(true), Document.class, SEQ_COLLECTION);
+            seqReservations.increment();
+            long last = ((Number) counter.get("seq")).longValue();
+            return new SeqBlock(last - size + 1, last);
+        } catch (Exception e) {
+            seededRooms.remove(roomId);
+            throw new RuntimeException("Error reserving sequence numbers for room " + roomId, e);
+        }
+    }
+
+    private long loadLastSeq(String roomId) {
+        Query query = new Query(Criteria.where("roomId").is(roomId))
+                .with(Sort.by(Sort.Direction.DESC, "seq"))
+                .limit(1);
+        query.fields().include("seq");
+        ChatLogEntry last = mongoTemplate.findOne(query, ChatLogEntry.class, COLLECTION);
+        return last != null ? last.getSeq() : 0;
+    }
+
+    private void writeLoop() {
+        List<ChatLogEntry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                ChatLogEntry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                
+                // Linger briefly so a burst goes out as one insert
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    ChatLogEntry next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<ChatLogEntry> batch) {
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ChatLogEntry.class, COLLECTION)
+                    .insert(batch)
+                    .execute();
+            written.add(batch.size());
+            batches.increment();
+        } catch (Exception e) {
+            logger.error("Error writing {} chat log entries", batch.size(), e);
+        }
+    }
+
+    private static class SeqBlock {
+        private long next;
+        private final long last;
+
+        private SeqBlock(long next, long last) {
+            this.next = next;
+            this.last = last;
+        }
+    }
+}
@@ -0,0 +1,550 @@
+package com.p2p.service;
+
+import com.p2p.model.ChunkIndex;
+import com.p2p.model.File;
+import com.p2p.model.StoredChunk;
+import com.p2p.repository.ChunkIndexRepository;
+import com.p2p.util.ContentDefinedChunker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deduplicated storage for uploaded files.
+ *
+ * Files are cut into content-defined chunks (see {@link ContentDefinedChunker}) and every
+ * distinct chunk is stored once under uploads/chunks, named by its SHA-256. Each file
+ * version keeps a {@link ChunkIndex}; versions of an evolving file share their unchanged
+ * chunks, so keeping many versions costs about the sum of the edits. Chunks are reference
+ * counted in Mongo.
+ *
+ * Several processes (cluster nodes, the reactive runtime) share the chunk directory, so
+ * a chunk is never deleted where its count drops to zero: a sweep deletes zero-ref chunks
+ * once they have stayed unused for {@code chunks.delete-grace-ms}. The sweep first sets
+ * refs to -1 with a compare-and-set; {@link #put} can't take a reference on such a chunk
+ * and waits until the file and record are gone before writing it again, so a new upload
+ * can never lose its chunk to a concurrent delete.
+ *
+ * Files stored before chunking (a plain file at {@code filePath}) are read through the
+ * same {@link Content} interface.
+ */
+@Service
+public class ChunkStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkStore.class);
+    private static final String CHUNK_DIR = "chunks";
+    private static final int SWEEP_BATCH = 1000;
+    // How long put waits for a sweep to finish deleting a chunk it wants back
+    private static final int PUT_RETRIES = 100;
+    private static final long PUT_RETRY_MS = 50;
+
+    private MongoTemplate mongoTemplate;
+    private ChunkIndexRepository chunkIndexRepository;
+
+    @Value("${file.upload.dir}")
+    private String uploadDir;
+
+    @Value("${chunks.min-size:16384}")
+    private int minChunkSize;
+
+    @Value("${chunks.average-size:65536}")
+    private int averageChunkSize;
+
+    @Value("${chunks.max-size:262144}")
+    private int maxChunkSize;
+
+    @Value("${chunks.delete-grace-ms:600000}")
+    private long deleteGraceMs;
+
+    @Value("${chunks.sweep-ms:60000}")
+    private long sweepMs;
+
+    // Marks this process's deletions, so a sweep only finishes deletions it claimed
+    private final String sweeperId = UUID.randomUUID().toString();
+    private ScheduledExecutorService sweeper;
+
+    // Refcount changes and chunk file writes/deletes for one hash happen under the same stripe
+    private final Object[] locks = new Object[64];
+
+    private final LongAdder chunksWritten = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder chunksShared = new LongAdder();
+    private final LongAdder bytesShared = new LongAdder();
+    private final LongAdder chunksDeleted = new LongAdder();
+
+    @Autowired
+    public ChunkStore(MongoTemplate mongoTemplate, ChunkIndexRepository chunkIndexRepository) {
+        this.mongoTemplate = mongoTemplate;
+        this.chunkIndexRepository = chunkIndexRepository;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chunk-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepMs, sweepMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * Stream to write a new file version into; call {@link ChunkedOutputStream#save} once it is complete
+     */
+    public ChunkedOutputStream newOutput() {
+        return new ChunkedOutputStream();
+    }
+
+    /**
+     * Open a stored file for reading, whichever way it was stored
+     */
+    public Content open(File file) throws IOException {
+        if (!file.isChunked()) {
+            return new FlatContent(Paths.get(file.getFilePath()));
+        }
+        ChunkIndex index = chunkIndexRepository.findById(file.getId())
+                .orElseThrow(() -> new NoSuchFileException("Chunk index for " + file.getId()));
+        return new ChunkedContent(index);
+    }
+
+    /**
+     * Size of the stored bytes, without loading the chunk index
+     */
+    public long storedLength(File file) throws IOException {
+        return file.isChunked() ? file.getStoredSize() : Files.size(Paths.get(file.getFilePath()));
+    }
+
+    /**
+     * The file as a Spring resource, for downloads (including Range requests)
+     */
+    public Resource asResource(File file) throws IOException {
+        if (!file.isChunked()) {
+            return new FileSystemResource(file.getFilePath());
+        }
+        return new ContentResource(open(file), file.getOriginalFilename());
+    }
+
+    /**
+     * Delete a file version's chunk index and drop its references; chunks nobody else uses are deleted
+     */
+    public void release(String fileId) {
+        ChunkIndex index = chunkIndexRepository.findById(fileId).orElse(null);
+        if (index == null) {
+            return;
+        }
+        chunkIndexRepository.deleteById(fileId);
+        releaseChunks(index.getHashes());
+        logger.debug("Released {} chunks of file {}", index.getHashes().size(), fileId);
+    }
+
+    // Drops references only; unused chunks are deleted later by the sweep
+    private void releaseChunks(List<String> hashes) {
+        for (String hash : hashes) {
+            synchronized (lockFor(hash)) {
+                mongoTemplate.updateFirst(
+                        Query.query(Criteria.where("_id").is(hash).and("refs").gt(0)),
+                        new Update().inc("refs", -1),
+                        StoredChunk.class);
+                // Only stamps the chunk if that was the last reference and nobody took a new one since
+                mongoTemplate.updateFirst(
+                        Query.query(Criteria.where("_id").is(hash).and("refs").is(0)),
+                        new Update().set("releasedAt", new Date()),
+                        StoredChunk.class);
+            }
+        }
+    }
+
+    // Delete chunks unused for the grace period, and finish deletions a crashed sweep left behind
+    private void sweep() {
+        try {
+            Date cutoff = new Date(System.currentTimeMillis() - deleteGraceMs);
+            Query unused = Query.query(new Criteria().orOperator(
+                    Criteria.where("refs").is(0).and("releasedAt").lte(cutoff),
+                    Criteria.where("refs").is(-1).and("deletingAt").lte(cutoff)));
+            unused.fields().include("_id");
+            unused.limit(SWEEP_BATCH);
+            for (StoredChunk candidate : mongoTemplate.find(unused, StoredChunk.class)) {
+                delete(candidate.getId(), cutoff);
+            }
+        } catch (Exception e) {
+            logger.error("Error sweeping unused chunks", e);
+        }
+    }
+
+    private void delete(String hash, Date cutoff) {
+        synchronized (lockFor(hash)) {
+            // Claim it: from here no put can take a reference until the record is removed
+            StoredChunk claimed = mongoTemplate.findAndModify(
+                    Query.query(new Criteria().andOperator(
+                            Criteria.where("_id").is(hash),
+                            new Criteria().orOperator(
+                                    Criteria.where("refs").is(0).and("releasedAt").lte(cutoff),
+                                    Criteria.where("refs").is(-1).and("deletingAt").lte(cutoff)))),
+                    new Update().set("refs", -1).set("deletedBy", sweeperId).set("deletingAt", new Date()),
+                    StoredChunk.class);
+            if (claimed == null) {
+                return; // Taken again or claimed by another sweep
+            }
+            try {
+                Files.deleteIfExists(chunkPath(hash));
+            } catch (IOException e) {
+                logger.warn("Could not delete chunk {}", hash, e);
+                return; // Left claimed; retried once the claim is stale
+            }
+            long removed = mongoTemplate.remove(
+                    Query.query(Criteria.where("_id").is(hash).and("refs").is(-1).and("deletedBy").is(sweeperId)),
+                    StoredChunk.class).getDeletedCount();
+            if (removed == 1) {
+                chunksDeleted.increment();
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("chunksWritten", chunksWritten.sum());
+        stats.put("bytesWritten", bytesWritten.sum());
+        stats.put("chunksShared", chunksShared.sum());
+        stats.put("bytesShared", bytesShared.sum());
+        stats.put("chunksDeleted", chunksDeleted.sum());
+        return stats;
+    }
+
+    // Take a reference on a chunk, writing it to disk if this is the first one
+    private String put(byte[] data, int length) throws IOException {
+        String hash = sha256(data, length);
+        Path path = chunkPath(hash);
+        synchronized (lockFor(hash)) {
+            StoredChunk chunk = acquire(hash, length);
+            if (chunk.getRefs() > 1 && Files.exists(path)) {
+                chunksShared.increment();
+                bytesShared.add(length);
+                return hash;
+            }
+            // Written to a temporary name first so a reader never sees half a chunk
+            Files.createDirectories(path.getParent());
+            Path temp = path.resolveSibling(hash + "." + UUID.randomUUID() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                out.write(data, 0, length);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            chunksWritten.increment();
+            bytesWritten.add(length);
+        }
+        return hash;
+    }
+
+    // Take a reference; a chunk being deleted (refs -1) can't match, so the upsert collides
+    // with its record until the sweep has removed it
+    private StoredChunk acquire(String hash, int length) throws IOException {
+        for (int attempt = 0; attempt < PUT_RETRIES; attempt++) {
+            try {
+                return mongoTemplate.findAndModify(
+                        Query.query(Criteria.where("_id").is(hash).and("refs").gte(0)),
+                        new Update().inc("refs", 1).unset("releasedAt")
+                                .setOnInsert("size", length).setOnInsert("createdAt", new Date()),
+                        FindAndModifyOptions.options().upsert(true).returnNew(true),
+                        StoredChunk.class);
+            } catch (DuplicateKeyException e) {
+                try {
+                    Thread.sleep(PUT_RETRY_MS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for chunk " + hash, interrupted);
+                }
+            }
+        }
+        throw new IOException("Chunk " + hash + " is still being deleted");
+    }
+
+    private Path chunkPath(String hash) {
+        return Paths.get(uploadDir, CHUNK_DIR, hash.substring(0, 2), hash);
+    }
+
+    private Object lockFor(String hash) {
+        return locks[Math.floorMod(hash.hashCode(), locks.length)];
+    }
+
+    private static String sha256(byte[] data, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data, 0, length);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Chunks and stores everything written to it. Nothing is visible until {@link #save};
+     * {@link #abort} gives the chunks back if the upload fails.
+     */
+    public class ChunkedOutputStream extends OutputStream {
+
+        private final ChunkIndex index = new ChunkIndex();
+        private final ContentDefinedChunker chunker =
+                new ContentDefinedChunker(minChunkSize, averageChunkSize, maxChunkSize, this::store);
+        private boolean finished;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int count) throws IOException {
+            chunker.update(data, offset, count);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                finished = true;
+                chunker.finish();
+            }
+        }
+
+        /**
+         * Save the chunk index under the file's id once the file has one
+         */
+        public void save(String fileId) {
+            index.setId(fileId);
+            chunkIndexRepository.save(index);
+        }
+
+        public void abort() {
+            releaseChunks(index.getHashes());
+            index.getHashes().clear();
+            index.getLengths().clear();
+        }
+
+        private void store(byte[] data, int length) throws IOException {
+            index.getHashes().add(put(data, length));
+            index.getLengths().add(length);
+        }
+    }
+
+    /**
+     * Read access to a stored file
+     */
+    public interface Content {
+        long length();
+
+        /**
+         * Stream the file from the given byte offset
+         */
+        InputStream openAt(long offset) throws IOException;
+    }
+
+    private static class FlatContent implements Content {
+        private final Path path;
+        private final long length;
+
+        private FlatContent(Path path) throws IOException {
+            this.path = path;
+            this.length = Files.size(path);
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public InputStream openAt(long offset) throws IOException {
+            FileChannel channel = FileChannel.open(path);
+            channel.position(offset);
+            return Channels.newInputStream(channel);
+        }
+    }
+
+    private class ChunkedContent implements Content {
+        private final List<String> hashes;
+        private final long[] offsets;
+
+        private ChunkedContent(ChunkIndex index) {
+            this.hashes = index.getHashes();
+            this.offsets = new long[hashes.size() + 1];
+            for (int i = 0; i < hashes.size(); i++) {
+                offsets[i + 1] = offsets[i] + index.getLengths().get(i);
+            }
+        }
+
+        @Override
+        public long length() {
+            return offsets[offsets.length - 1];
+        }
+
+        @Override
+        public InputStream openAt(long offset) {
+            return new ChunkedInputStream(this, offset);
+        }
+
+        // Chunk holding the given byte offset
+        private int chunkAt(long offset) {
+            int found = Arrays.binarySearch(offsets, offset);
+            return found >= 0 ? found : -found - 2;
+        }
+    }
+
+    // Reads chunk after chunk; skip() jumps straight to the right chunk, which keeps Range requests cheap
+    private class ChunkedInputStream extends InputStream {
+        private final ChunkedContent content;
+        private long position;
+        private int chunk = -1;
+        private InputStream current;
+
+        private ChunkedInputStream(ChunkedContent content, long offset) {
+            this.content = content;
+            this.position = Math.min(Math.max(0, offset), content.length());
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+            while (position < content.length()) {
+                if (current == null) {
+                    chunk = content.chunkAt(position);
+                    FileChannel channel = FileChannel.open(chunkPath(content.hashes.get(chunk)));
+                    channel.position(position - content.offsets[chunk]);
+                    current = Channels.newInputStream(channel);
+                }
+                int limit = (int) Math.min(count, content.offsets[chunk + 1] - position);
+                int read = current.read(buffer, offset, limit);
+                if (read > 0) {
+                    position += read;
+                    if (position == content.offsets[chunk + 1]) {
+                        closeCurrent();
+                    }
+                    return read;
+                }
+                throw new IOException("Chunk " + content.hashes.get(chunk) + " is shorter than its index says");
+            }
+            return -1;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long target = Math.min(content.length(), position + Math.max(0, n));
+            long skipped = target - position;
+            if (skipped > 0) {
+                closeCurrent();
+                position = target;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, content.length() - position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeCurrent();
+        }
+
+        private void closeCurrent() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+    }
+
+    private static class ContentResource extends AbstractResource {
+        private final Content content;
+        private final String filename;
+
+        private ContentResource(Content content, String filename) {
+            this.content = content;
+            this.filename = filename;
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public long contentLength() {
+            return content.length();
+        }
+
+        @Override
+        public long lastModified() {
+            return 0;
+        }
+
+        @Override
+        public String getFilename() {
+            return filename;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Chunked file [" + filename + "]";
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return content.openAt(0);
+        }
+    }
+}
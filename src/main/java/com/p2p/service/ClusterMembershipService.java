@@ -0,0 +1,163 @@
+package com.p2p.service;
+
+import com.p2p.model.ClusterNode;
+import com.p2p.repository.ClusterNodeRepository;
+import com.p2p.util.ConsistentHashRing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cluster membership and room ownership.
+ *
+ * Each node heartbeats into the shared cluster_nodes collection and reads back the
+ * live members; all nodes build the same consistent-hash ring from that set, so they
+ * agree on the owner of every room. When a node joins, leaves or stops heartbeating
+ * the ring is rebuilt and the affected rooms move to their new owners.
+ * With clustering disabled the ring only contains this node.
+ */
+@Service
+public class ClusterMembershipService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterMembershipService.class);
+    // Shipped as the default in earlier versions
+    private static final String SAMPLE_SECRET = "p2pClusterSecretChangeMe";
+
+    private ClusterNodeRepository clusterNodeRepository;
+
+    @Value("${cluster.enabled:false}")
+    private boolean enabled;
+
+    @Value("${cluster.secret:}")
+    private String secret;
+
+    @Value("${cluster.advertised-address:http://localhost:${server.port:8080}}")
+    private String selfId;
+
+    @Value("${cluster.heartbeat-interval-ms:2000}")
+    private long heartbeatIntervalMs;
+
+    @Value("${cluster.node-timeout-ms:6000}")
+    private long nodeTimeoutMs;
+
+    @Value("${cluster.virtual-nodes:128}")
+    private int virtualNodes;
+
+    private final Date startedAt = new Date();
+    private volatile ConsistentHashRing ring;
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public ClusterMembershipService(ClusterNodeRepository clusterNodeRepository) {
+        this.clusterNodeRepository = clusterNodeRepository;
+    }
+
+    @PostConstruct
+    public void init() {
+        ring = new ConsistentHashRing(Collections.singleton(selfId), virtualNodes);
+        if (!enabled) {
+            return;
+        }
+        // Anyone holding the secret can inject room messages, so never run with the old sample value
+        if (secret == null || secret.isBlank() || secret.equals(SAMPLE_SECRET)) {
+            throw new RuntimeException("cluster.enabled needs cluster.secret set to a private value");
+        }
+        
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::heartbeat, 0, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Cluster node {} started, heartbeat every {} ms", selfId, heartbeatIntervalMs);
+    }
+
+    @PreDestroy
+    public void leave() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        try {
+            // Leave right away instead of waiting for the timeout
+            clusterNodeRepository.deleteById(selfId);
+            logger.info("Cluster node {} left", selfId);
+        } catch (Exception e) {
+            logger.warn("Error leaving cluster: {}", e.getMessage());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getSelfId() {
+        return selfId;
+    }
+
+    public boolean isSelf(String nodeId) {
+        return selfId.equals(nodeId);
+    }
+
+    public ConsistentHashRing getRing() {
+        return ring;
+    }
+
+    public String getOwner(String roomId) {
+        return ring.nodeFor(roomId);
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", enabled);
+        status.put("self", selfId);
+        status.put("members", ring.getNodes());
+        return status;
+    }
+
+    private void heartbeat() {
+        try {
+            long now = System.currentTimeMillis();
+            ClusterNode self = new ClusterNode();
+            self.setId(selfId);
+            self.setStartedAt(startedAt);
+            self.setLastHeartbeat(new Date(now));
+            clusterNodeRepository.save(self);
+            
+            Set<String> members = new TreeSet<>();
+            members.add(selfId);
+            for (ClusterNode node : clusterNodeRepository.findByLastHeartbeatAfter(new Date(now - nodeTimeoutMs))) {
+                members.add(node.getId());
+            }
+            
+            ConsistentHashRing current = ring;
+            if (!members.equals(current.getNodes())) {
+                Set<String> joined = new TreeSet<>(members);
+                joined.removeAll(current.getNodes());
+                Set<String> left = new TreeSet<>(current.getNodes());
+                left.removeAll(members);
+                
+                ring = new ConsistentHashRing(members, virtualNodes);
+                logger.info("Cluster membership changed (joined: {}, left: {}), rooms rebalanced over {} nodes",
+                        joined, left, members.size());
+            }
+        } catch (Exception e) {
+            // Keep the last known ring until the store is reachable again
+            logger.warn("Cluster heartbeat failed: {}", e.getMessage());
+        }
+    }
+}
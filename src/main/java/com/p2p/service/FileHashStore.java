@@ -0,0 +1,86 @@
+package com.p2p.service;
+
+import com.p2p.model.FileHashes;
+import com.p2p.repository.FileHashesRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * The per-file hash lists ({@link FileHashes}), read field by field so a piece download
+ * or a proof doesn't pull in the rest. The counts and sizes stay on the File.
+ */
+@Service
+public class FileHashStore {
+
+    private MongoTemplate mongoTemplate;
+    private FileHashesRepository fileHashesRepository;
+
+    @Autowired
+    public FileHashStore(MongoTemplate mongoTemplate, FileHashesRepository fileHashesRepository) {
+        this.mongoTemplate = mongoTemplate;
+        this.fileHashesRepository = fileHashesRepository;
+    }
+
+    public void save(String fileId, FileHashes hashes) {
+        hashes.setId(fileId);
+        fileHashesRepository.save(hashes);
+    }
+
+    // Partial writes, so backfilling pieces and blocks for the same file can't undo each other
+    public void savePieces(String fileId, List<String> pieceHashes) {
+        mongoTemplate.upsert(byId(fileId), new Update().set("pieceHashes", pieceHashes), FileHashes.class);
+    }
+
+    public void saveBlocks(String fileId, byte[] blockHashes, byte[] blockChecksums) {
+        mongoTemplate.upsert(byId(fileId), new Update()
+                .set("blockHashes", blockHashes)
+                .set("blockChecksums", blockChecksums), FileHashes.class);
+    }
+
+    public List<String> getPieceHashes(String fileId) {
+        Query query = byId(fileId);
+        query.fields().include("pieceHashes");
+        return find(query, fileId).getPieceHashes();
+    }
+
+    public String getPieceHash(String fileId, int index) {
+        Query query = byId(fileId);
+        query.fields().slice("pieceHashes", index, 1).exclude("blockHashes").exclude("blockChecksums");
+        List<String> hashes = find(query, fileId).getPieceHashes();
+        if (hashes == null || hashes.isEmpty()) {
+            throw new RuntimeException("No hash for piece " + index + " of file " + fileId);
+        }
+        return hashes.get(0);
+    }
+
+    /**
+     * Leaf hashes and weak checksums, without the piece hashes
+     */
+    public FileHashes getBlocks(String fileId) {
+        Query query = byId(fileId);
+        query.fields().include("blockHashes").include("blockChecksums");
+        return find(query, fileId);
+    }
+
+    public void delete(String fileId) {
+        fileHashesRepository.deleteById(fileId);
+    }
+
+    private FileHashes find(Query query, String fileId) {
+        FileHashes hashes = mongoTemplate.findOne(query, FileHashes.class);
+        if (hashes == null) {
+            throw new RuntimeException("Hashes missing for file " + fileId);
+        }
+        return hashes;
+    }
+
+    private static Query byId(String fileId) {
+        return new Query(Criteria.where("_id").is(fileId));
+    }
+}
@@ -0,0 +1,175 @@
+package com.p2p.service;
+
+import com.p2p.model.BlockSignature;
+import com.p2p.model.File;
+import com.p2p.model.FileHashes;
+import com.p2p.model.MerkleProof;
+import com.p2p.repository.FileRepository;
+import com.p2p.util.BlockHasher;
+import com.p2p.util.ExpiringCache;
+import com.p2p.util.MerkleTree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Merkle integrity metadata for stored files.
+ *
+ * Uploads are hashed block by block as they are written (see {@link #newBlockHasher});
+ * the root and block size are kept on the {@link File} and the leaf hashes in its
+ * {@link FileHashes}. Range proofs are cut
+ * from a tree rebuilt from those leaves, so serving one never reads the file itself.
+ * Clients fetching ranges in parallel or from several sources check each block against
+ * its proven leaf and re-fetch only the blocks that fail.
+ */
+@Service
+public class FileIntegrityService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileIntegrityService.class);
+
+    private FileRepository fileRepository;
+    private ChunkStore chunkStore;
+    private FileHashStore fileHashStore;
+
+    @Value("${integrity.block-size:65536}")
+    private int blockSize;
+
+    @Value("${integrity.max-blocks:16384}")
+    private int maxBlocks;
+
+    @Value("${integrity.max-proof-blocks:4096}")
+    private int maxProofBlocks;
+
+    @Value("${integrity.tree-cache.ttl-ms:600000}")
+    private long treeCacheTtlMs;
+
+    @Value("${integrity.tree-cache.max-entries:256}")
+    private int treeCacheMaxEntries;
+
+    // Trees keyed by file id and root, so a re-hashed file never gets a stale tree
+    private ExpiringCache<String, MerkleTree> trees;
+
+    @Autowired
+    public FileIntegrityService(FileRepository fileRepository, ChunkStore chunkStore, FileHashStore fileHashStore) {
+        this.fileRepository = fileRepository;
+        this.chunkStore = chunkStore;
+        this.fileHashStore = fileHashStore;
+    }
+
+    @PostConstruct
+    public void init() {
+        trees = new ExpiringCache<>(treeCacheMaxEntries);
+    }
+
+    /**
+     * Hasher to feed the stored bytes of an upload through as they are written
+     */
+    public BlockHasher newBlockHasher(long length) {
+        long size = Math.max(1, blockSize);
+        // Grow the block size in powers of two so big files stay under max-blocks
+        while (length / size >= maxBlocks && size < (1 << 30)) {
+            size *= 2;
+        }
+        return new BlockHasher((int) size, MerkleTree.LEAF_PREFIX, true);
+    }
+
+    /**
+     * Set the Merkle root on the file and the leaves and weak checksums on its hashes,
+     * from a finished hasher
+     */
+    public void setMerkle(File file, FileHashes hashes, BlockHasher hasher) {
+        List<byte[]> leaves = hasher.finish();
+        MerkleTree tree = new MerkleTree(leaves);
+        file.setBlockSize(hasher.getBlockSize());
+        file.setBlockCount(leaves.size());
+        hashes.setBlockHashes(MerkleTree.pack(leaves));
+        hashes.setBlockChecksums(hasher.finishWeakSums());
+        file.setMerkleRoot(HexFormat.of().formatHex(tree.root()));
+    }
+
+    /**
+     * Make sure the file has a Merkle root and block checksums, hashing it from disk once
+     * if it was uploaded before they existed
+     */
+    public File ensureMerkle(File file) throws IOException {
+        if (file.getMerkleRoot() != null && file.hasBlocks()) {
+            return file;
+        }
+        BlockHasher hasher = newBlockHasher(chunkStore.storedLength(file));
+        try (InputStream in = chunkStore.open(file).openAt(0)) {
+            byte[] buffer = new byte[hasher.getBlockSize()];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                hasher.update(buffer, 0, read);
+            }
+        }
+        FileHashes hashes = new FileHashes();
+        setMerkle(file, hashes, hasher);
+        // Hashes first, so the file never claims leaves that aren't stored
+        fileHashStore.saveBlocks(file.getId(), hashes.getBlockHashes(), hashes.getBlockChecksums());
+        logger.debug("Computed Merkle root for existing file {}", file.getId());
+        return fileRepository.save(file);
+    }
+
+    /**
+     * Block signature (weak checksums and leaf hashes) for a delta upload against the file
+     */
+    public BlockSignature getSignature(File file) throws IOException {
+        file = ensureMerkle(file);
+        BlockSignature signature = new BlockSignature();
+        signature.setFileId(file.getId());
+        signature.setLength(chunkStore.storedLength(file));
+        signature.setBlockSize(file.getBlockSize());
+        signature.setBlockCount(file.getBlockCount());
+        FileHashes hashes = fileHashStore.getBlocks(file.getId());
+        signature.setWeak(hashes.getBlockChecksums());
+        signature.setStrong(hashes.getBlockHashes());
+        return signature;
+    }
+
+    /**
+     * Proof for blocks [from, to) of the file
+     */
+    public MerkleProof proveRange(File file, int from, int to) throws IOException {
+        file = ensureMerkle(file);
+        if (from < 0 || to > file.getBlockCount() || from >= to || to - from > maxProofBlocks) {
+            throw new RuntimeException("Invalid block range");
+        }
+
+        String key = file.getId() + ":" + file.getMerkleRoot();
+        MerkleTree tree = trees.get(key);
+        if (tree == null) {
+            tree = MerkleTree.fromPackedLeaves(fileHashStore.getBlocks(file.getId()).getBlockHashes());
+            trees.put(key, tree, System.currentTimeMillis() + treeCacheTtlMs);
+        }
+
+        HexFormat hex = HexFormat.of();
+        MerkleProof proof = new MerkleProof();
+        proof.setFileId(file.getId());
+        proof.setRoot(file.getMerkleRoot());
+        proof.setBlockSize(file.getBlockSize());
+        proof.setBlockCount(file.getBlockCount());
+        proof.setLength(chunkStore.storedLength(file));
+        proof.setFrom(from);
+        proof.setTo(to);
+        for (int i = from; i < to; i++) {
+            proof.getLeaves().add(hex.formatHex(tree.leaf(i)));
+        }
+        for (MerkleTree.Node node : tree.proveRange(from, to)) {
+            proof.getNodes().add(new MerkleProof.ProofNode(node.getLevel(), node.getIndex(), hex.formatHex(node.getHash())));
+        }
+        return proof;
+    }
+
+    public void onFileDeleted(File file) {
+        trees.invalidate(file.getId() + ":" + file.getMerkleRoot());
+    }
+}
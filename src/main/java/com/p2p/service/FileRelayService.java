@@ -0,0 +1,587 @@
+package com.p2p.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.p2p.model.File;
+import com.p2p.model.ReceiveFile;
+import com.p2p.model.SendFile;
+import com.p2p.model.User;
+import com.p2p.security.AccessControlService;
+import com.p2p.security.JwtTokenProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live file relay: a sender streams a file over /ws-relay and the server fans each chunk
+ * out to the receivers that joined, without writing anything to disk or Mongo.
+ *
+ * Flow control is credit based. The sender may have at most {@code relay.window-chunks}
+ * chunks that some receiver hasn't acknowledged yet; credits come back only as the slowest
+ * receiver acknowledges, so server memory per relay is bounded by the window and a
+ * receiver that stops acknowledging is dropped after {@code relay.stall-timeout-ms}.
+ *
+ * Control frames are JSON text ({"action": "open" | "join" | "start" | "ack" | "end" | "cancel"});
+ * file data is binary. The first frame of every connection must be "open" or "join" with a JWT,
+ * within {@code relay.auth-timeout-ms}. After "end" the relay completes once every receiver has
+ * acknowledged every chunk, so "complete" means received rather than handed to the socket.
+ */
+@Service
+public class FileRelayService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileRelayService.class);
+    private static final String ROOM_TOPIC_PREFIX = "/topic/room/";
+    private static final String RELAY_TOPIC_SUFFIX = "/relay";
+    private static final int CONTROL_BUFFER_BYTES = 64 * 1024;
+
+    private JwtTokenProvider jwtTokenProvider;
+    private UserService userService;
+    private AccessControlService accessControlService;
+    private SimpMessagingTemplate messagingTemplate;
+    private ObjectMapper objectMapper;
+
+    @Value("${relay.auth-timeout-ms:10000}")
+    private long authTimeoutMs;
+
+    @Value("${relay.chunk-size:16384}")
+    private int chunkSize;
+
+    @Value("${relay.window-chunks:32}")
+    private int windowChunks;
+
+    @Value("${relay.max-receivers:64}")
+    private int maxReceivers;
+
+    @Value("${relay.max-relays:256}")
+    private int maxRelays;
+
+    @Value("${relay.stall-timeout-ms:15000}")
+    private long stallTimeoutMs;
+
+    @Value("${relay.join-timeout-ms:300000}")
+    private long joinTimeoutMs;
+
+    @Value("${relay.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    // Session id -> thread-safe wrapper, and the relay the session belongs to once it opened or joined
+    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Relay> relaysBySession = new ConcurrentHashMap<>();
+    private final Map<String, Relay> relays = new ConcurrentHashMap<>();
+    // Session id -> connect time, until its first open or join succeeds
+    private final Map<String, Long> unauthenticated = new ConcurrentHashMap<>();
+
+    private final LongAdder bytesRelayed = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder aborted = new LongAdder();
+
+    private ScheduledExecutorService sweeper;
+
+    @Autowired
+    public FileRelayService(JwtTokenProvider jwtTokenProvider, @Lazy UserService userService,
+                            AccessControlService accessControlService, SimpMessagingTemplate messagingTemplate,
+                            ObjectMapper objectMapper) {
+        this.jwtTokenProvider = jwtTokenProvider;
+        this.userService = userService;
+        this.accessControlService = accessControlService;
+        this.messagingTemplate = messagingTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void init() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "relay-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+        relays.values().forEach(relay -> abort(relay, "Server shutting down"));
+    }
+
+    public int getMaxMessageSize() {
+        return Math.max(chunkSize, CONTROL_BUFFER_BYTES);
+    }
+
+    public void onConnected(WebSocketSession session) {
+        // Receivers buffer at most one window of chunks, so the limit is only hit by a broken peer
+        int bufferLimit = windowChunks * chunkSize + CONTROL_BUFFER_BYTES;
+        sessions.put(session.getId(), new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMs, bufferLimit));
+        unauthenticated.put(session.getId(), System.currentTimeMillis());
+    }
+
+    public void onClosed(WebSocketSession session) {
+        sessions.remove(session.getId());
+        unauthenticated.remove(session.getId());
+        Relay relay = relaysBySession.remove(session.getId());
+        if (relay == null) {
+            return;
+        }
+        if (session.getId().equals(relay.sender.getClientId())) {
+            abort(relay, "Sender disconnected");
+        } else {
+            removeReceiver(relay, session.getId(), null);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void onText(WebSocketSession session, String payload) {
+        WebSocketSession out = sessions.get(session.getId());
+        if (out == null) {
+            return;
+        }
+        Map<String, Object> request;
+        try {
+            request = objectMapper.readValue(payload, Map.class);
+        } catch (IOException e) {
+            fail(out, "Malformed control message");
+            return;
+        }
+
+        String action = String.valueOf(request.get("action"));
+        Relay relay = relaysBySession.get(session.getId());
+        if (relay == null) {
+            if ("open".equals(action)) {
+                open(out, request);
+            } else if ("join".equals(action)) {
+                join(out, request);
+            } else {
+                fail(out, "First message must be open or join");
+            }
+            return;
+        }
+
+        boolean isSender = session.getId().equals(relay.sender.getClientId());
+        if (isSender && "start".equals(action)) {
+            start(relay);
+        } else if (isSender && "end".equals(action)) {
+            end(relay);
+        } else if (isSender && "cancel".equals(action)) {
+            abort(relay, "Cancelled by sender");
+        } else if (!isSender && "ack".equals(action) && request.get("chunks") instanceof Number) {
+            acknowledge(relay, session.getId(), ((Number) request.get("chunks")).longValue());
+        } else {
+            send(out, Map.of("event", "error", "message", "Unexpected action " + action));
+        }
+    }
+
+    public void onBinary(WebSocketSession session, byte[] chunk) {
+        Relay relay = relaysBySession.get(session.getId());
+        if (relay == null || !session.getId().equals(relay.sender.getClientId())) {
+            WebSocketSession out = sessions.get(session.getId());
+            if (out != null) {
+                fail(out, "Only the sender of a started relay may send data");
+            }
+            return;
+        }
+
+        List<Receiver> targets;
+        synchronized (relay) {
+            String error = null;
+            if (!relay.started || relay.ending || relay.finished) {
+                error = "Relay is not accepting data";
+            } else if (chunk.length == 0 || chunk.length > chunkSize) {
+                error = "Chunks must be 1.." + chunkSize + " bytes";
+            } else if (relay.sender.getChunksSent() - relay.minAcked >= windowChunks) {
+                error = "Chunk sent without credit";
+            } else if (relay.sender.getBytesSent() + chunk.length > relay.file.getFileSize()) {
+                error = "More data than the announced file size";
+            }
+            if (error != null) {
+                abortLocked(relay, error);
+                return;
+            }
+
+            relay.sender.update(chunk);
+            targets = new ArrayList<>(relay.receivers.values());
+            for (Receiver receiver : targets) {
+                receiver.state.delivered(chunk.length);
+            }
+        }
+
+        // Chunks and "end" only ever come from the sender's connection, one at a time, so they stay in order
+        BinaryMessage message = new BinaryMessage(chunk);
+        for (Receiver receiver : targets) {
+            try {
+                receiver.session.sendMessage(message);
+            } catch (Exception e) {
+                removeReceiver(relay, receiver.session.getId(), "Send failed");
+            }
+        }
+        bytesRelayed.add((long) chunk.length * targets.size());
+    }
+
+    public Map<String, Object> getStats() {
+        int receivers = 0;
+        for (Relay relay : relays.values()) {
+            synchronized (relay) {
+                receivers += relay.receivers.size();
+            }
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("activeRelays", relays.size());
+        stats.put("activeReceivers", receivers);
+        stats.put("unauthenticatedSessions", unauthenticated.size());
+        stats.put("bytesRelayed", bytesRelayed.sum());
+        stats.put("completed", completed.sum());
+        stats.put("aborted", aborted.sum());
+        return stats;
+    }
+
+    private void open(WebSocketSession session, Map<String, Object> request) {
+        User user = authenticate(request);
+        String roomId = request.get("roomId") instanceof String ? (String) request.get("roomId") : null;
+        if (user == null || !accessControlService.isRoomMember(user.getId(), roomId)) {
+            fail(session, "Not allowed to send in this room");
+            return;
+        }
+        if (!(request.get("fileSize") instanceof Number) || !(request.get("filename") instanceof String)) {
+            fail(session, "open needs filename and fileSize");
+            return;
+        }
+        if (relays.size() >= maxRelays) {
+            fail(session, "Too many active relays, try again later");
+            return;
+        }
+
+        // Metadata only: this File is never saved
+        File file = new File();
+        file.setOriginalFilename((String) request.get("filename"));
+        file.setFileSize(Math.max(0, ((Number) request.get("fileSize")).longValue()));
+        file.setFileType(request.get("fileType") instanceof String ? (String) request.get("fileType") : "application/octet-stream");
+        file.setEncrypted(Boolean.TRUE.equals(request.get("encrypted")));
+        file.setOwnerId(user.getId());
+
+        SendFile sender = new SendFile();
+        sender.setClientId(session.getId());
+        sender.setFile(file);
+
+        Relay relay = new Relay(UUID.randomUUID().toString(), roomId, user.getUsername(), file, sender, session);
+        relays.put(relay.relayId, relay);
+        relaysBySession.put(session.getId(), relay);
+        unauthenticated.remove(session.getId());
+
+        Map<String, Object> opened = new LinkedHashMap<>();
+        opened.put("event", "opened");
+        opened.put("relayId", relay.relayId);
+        opened.put("chunkSize", chunkSize);
+        opened.put("window", windowChunks);
+        send(session, opened);
+
+        Map<String, Object> announcement = new LinkedHashMap<>();
+        announcement.put("relayId", relay.relayId);
+        announcement.put("sender", relay.senderUsername);
+        announcement.put("filename", file.getOriginalFilename());
+        announcement.put("fileSize", file.getFileSize());
+        announcement.put("fileType", file.getFileType());
+        messagingTemplate.convertAndSend(ROOM_TOPIC_PREFIX + roomId + RELAY_TOPIC_SUFFIX, announcement);
+        logger.debug("Relay {} opened by {} for {} ({} bytes)", relay.relayId, relay.senderUsername,
+                file.getOriginalFilename(), file.getFileSize());
+    }
+
+    private void join(WebSocketSession session, Map<String, Object> request) {
+        User user = authenticate(request);
+        Relay relay = request.get("relayId") instanceof String ? relays.get(request.get("relayId")) : null;
+        if (user == null || relay == null || !accessControlService.isRoomMember(user.getId(), relay.roomId)) {
+            fail(session, "Relay not found");
+            return;
+        }
+
+        int receiverCount;
+        synchronized (relay) {
+            if (relay.started || relay.finished) {
+                fail(session, "Relay already started");
+                return;
+            }
+            if (relay.receivers.size() >= maxReceivers) {
+                fail(session, "Relay is full");
+                return;
+            }
+            ReceiveFile state = new ReceiveFile();
+            state.setClientId(session.getId());
+            state.setReceivedFile(relay.file);
+            relay.receivers.put(session.getId(), new Receiver(session, state));
+            relaysBySession.put(session.getId(), relay);
+            unauthenticated.remove(session.getId());
+            receiverCount = relay.receivers.size();
+
+            // Header first, under the lock, so it always precedes the first chunk
+            try {
+                session.sendMessage(new BinaryMessage(relay.sender.serialize(relay.file)));
+            } catch (Exception e) {
+                relay.receivers.remove(session.getId());
+                relaysBySession.remove(session.getId());
+                return;
+            }
+        }
+        send(relay.senderSession, Map.of("event", "receiver-joined", "receivers", receiverCount));
+    }
+
+    private void start(Relay relay) {
+        synchronized (relay) {
+            if (relay.started) {
+                return;
+            }
+            if (relay.receivers.isEmpty()) {
+                send(relay.senderSession, Map.of("event", "error", "message", "No receivers have joined"));
+                return;
+            }
+            relay.started = true;
+            send(relay.senderSession, Map.of("event", "credit", "chunks", windowChunks,
+                    "receivers", relay.receivers.size()));
+        }
+    }
+
+    private void acknowledge(Relay relay, String sessionId, long chunks) {
+        synchronized (relay) {
+            Receiver receiver = relay.receivers.get(sessionId);
+            if (receiver == null || !receiver.state.acknowledge(chunks)) {
+                return;
+            }
+            grantCredits(relay);
+        }
+        finishIfAcked(relay);
+    }
+
+    private void end(Relay relay) {
+        synchronized (relay) {
+            if (!relay.started || relay.ending || relay.finished) {
+                return;
+            }
+            if (relay.sender.getBytesSent() != relay.file.getFileSize()) {
+                abortLocked(relay, "Sent " + relay.sender.getBytesSent() + " of " + relay.file.getFileSize() + " bytes");
+                return;
+            }
+            relay.ending = true;
+        }
+        finishIfAcked(relay);
+    }
+
+    // Completes an ended relay once every remaining receiver acknowledged every chunk;
+    // receivers that stop acknowledging are dropped by the stall sweep
+    private void finishIfAcked(Relay relay) {
+        List<Receiver> targets;
+        String sha256;
+        synchronized (relay) {
+            if (!relay.ending || relay.finished) {
+                return;
+            }
+            for (Receiver receiver : relay.receivers.values()) {
+                if (receiver.state.getChunksAcked() < relay.sender.getChunksSent()) {
+                    return;
+                }
+            }
+            relay.finished = true;
+            sha256 = relay.sender.getSha256();
+            targets = new ArrayList<>(relay.receivers.values());
+        }
+
+        int validated = 0;
+        for (Receiver receiver : targets) {
+            boolean valid = receiver.state.validateFile(relay.file);
+            if (valid) {
+                validated++;
+            }
+            Map<String, Object> end = new LinkedHashMap<>();
+            end.put("event", "end");
+            end.put("bytes", receiver.state.getBytesReceived());
+            end.put("sha256", sha256);
+            end.put("complete", valid);
+            send(receiver.session, end);
+        }
+        send(relay.senderSession, Map.of("event", "done", "receivers", targets.size(), "validated", validated));
+        release(relay);
+        completed.increment();
+        logger.debug("Relay {} finished: {} bytes to {} receivers", relay.relayId, relay.file.getFileSize(), validated);
+    }
+
+    private void removeReceiver(Relay relay, String sessionId, String reason) {
+        Receiver removed;
+        synchronized (relay) {
+            removed = relay.receivers.remove(sessionId);
+            relaysBySession.remove(sessionId);
+            if (removed == null || relay.finished) {
+                return;
+            }
+            if (relay.started && relay.receivers.isEmpty()) {
+                abortLocked(relay, "All receivers left");
+            } else {
+                grantCredits(relay);
+                send(relay.senderSession, Map.of("event", "receiver-left", "receivers", relay.receivers.size()));
+            }
+        }
+        if (reason != null) {
+            fail(removed.session, reason);
+        }
+        // The receiver being waited on may have been the last one behind
+        finishIfAcked(relay);
+    }
+
+    // Called with the relay locked: hand back the credits freed by the slowest receiver catching up
+    private void grantCredits(Relay relay) {
+        if (!relay.started || relay.ending || relay.finished) {
+            return;
+        }
+        long min = relay.sender.getChunksSent();
+        for (Receiver receiver : relay.receivers.values()) {
+            min = Math.min(min, receiver.state.getChunksAcked());
+        }
+        if (min > relay.minAcked) {
+            long freed = min - relay.minAcked;
+            relay.minAcked = min;
+            send(relay.senderSession, Map.of("event", "credit", "chunks", freed));
+        }
+    }
+
+    private void abort(Relay relay, String reason) {
+        synchronized (relay) {
+            abortLocked(relay, reason);
+        }
+    }
+
+    private void abortLocked(Relay relay, String reason) {
+        if (relay.finished) {
+            return;
+        }
+        relay.finished = true;
+        aborted.increment();
+        logger.debug("Relay {} aborted: {}", relay.relayId, reason);
+        // Unregister first: closing a session may call back into onClosed on this thread
+        List<Receiver> receivers = new ArrayList<>(relay.receivers.values());
+        release(relay);
+        for (Receiver receiver : receivers) {
+            fail(receiver.session, reason);
+        }
+        fail(relay.senderSession, reason);
+    }
+
+    private void release(Relay relay) {
+        relays.remove(relay.relayId);
+        relaysBySession.remove(relay.sender.getClientId());
+        for (String sessionId : relay.receivers.keySet()) {
+            relaysBySession.remove(sessionId);
+        }
+    }
+
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Long> entry : unauthenticated.entrySet()) {
+            if (now - entry.getValue() > authTimeoutMs && unauthenticated.remove(entry.getKey(), entry.getValue())) {
+                WebSocketSession session = sessions.get(entry.getKey());
+                if (session != null) {
+                    fail(session, "No open or join within " + authTimeoutMs + " ms");
+                }
+            }
+        }
+        for (Relay relay : relays.values()) {
+            List<String> stalled = new ArrayList<>();
+            synchronized (relay) {
+                if (!relay.started && now - relay.openedAt > joinTimeoutMs) {
+                    abortLocked(relay, "Relay was never started");
+                    continue;
+                }
+                for (Receiver receiver : relay.receivers.values()) {
+                    if (receiver.state.getChunksAcked() < relay.sender.getChunksSent()
+                            && now - receiver.state.getLastAckAt() > stallTimeoutMs) {
+                        stalled.add(receiver.session.getId());
+                    }
+                }
+            }
+            for (String sessionId : stalled) {
+                removeReceiver(relay, sessionId, "Receiver too slow");
+            }
+        }
+    }
+
+    private User authenticate(Map<String, Object> request) {
+        Object token = request.get("token");
+        String username = token instanceof String ? jwtTokenProvider.getVerifiedUsername((String) token) : null;
+        return username != null ? userService.loadCachedUserByUsername(username) : null;
+    }
+
+    private void send(WebSocketSession session, Map<String, Object> event) {
+        if (session == null || !session.isOpen()) {
+            return;
+        }
+        try {
+            session.sendMessage(new TextMessage(objectMapper.writeValueAsString(event)));
+        } catch (Exception e) {
+            logger.debug("Error sending relay event to {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    // Report an error and close; the close callback does the relay bookkeeping
+    private void fail(WebSocketSession session, String message) {
+        send(session, Map.of("event", "error", "message", message));
+        try {
+            session.close(CloseStatus.POLICY_VIOLATION.withReason(message.length() > 100 ? message.substring(0, 100) : message));
+        } catch (IOException e) {
+            logger.debug("Error closing relay session {}", session.getId());
+        }
+    }
+
+    private static class Relay {
+        private final String relayId;
+        private final String roomId;
+        private final String senderUsername;
+        private final File file;
+        private final SendFile sender;
+        private final long openedAt = System.currentTimeMillis();
+        private final WebSocketSession senderSession;
+        // Guarded by the relay's monitor
+        private final Map<String, Receiver> receivers = new LinkedHashMap<>();
+        private boolean started;
+        // "end" received; finished once the receivers caught up
+        private boolean ending;
+        private boolean finished;
+        private long minAcked;
+
+        private Relay(String relayId, String roomId, String senderUsername, File file, SendFile sender,
+                      WebSocketSession senderSession) {
+            this.relayId = relayId;
+            this.roomId = roomId;
+            this.senderUsername = senderUsername;
+            this.file = file;
+            this.sender = sender;
+            this.senderSession = senderSession;
+        }
+    }
+
+    private static class Receiver {
+        private final WebSocketSession session;
+        private final ReceiveFile state;
+
+        private Receiver(WebSocketSession session, ReceiveFile state) {
+            this.session = session;
+            this.state = state;
+        }
+    }
+}
@@ -1,63 +1,135 @@
 package com.p2p.service;
 
+import com.p2p.model.BlockSignature;
 import com.p2p.model.File;
+import com.p2p.model.FileHashes;
 import com.p2p.repository.FileRepository;
+import com.p2p.security.AccessControlService;
+import com.p2p.util.HashingFileWriter;
 import com.p2p.util.Crypto;
+import com.p2p.util.RequestTiming;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.crypto.SecretKey;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class FileService {
 
     private static final Logger logger = LoggerFactory.getLogger(FileService.class);
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    
+    // Delta upload ops, see storeDelta
+    private static final int DELTA_END = 0x00;
+    private static final int DELTA_COPY = 0x01;
+    private static final int DELTA_LITERAL = 0x02;
     
     private FileRepository fileRepository;
     private Crypto crypto;
+    private AccessControlService accessControlService;
+    private SwarmTracker swarmTracker;
+    private FileIntegrityService fileIntegrityService;
+    private ChunkStore chunkStore;
+    private FileHashStore fileHashStore;
+    
+    private Timer uploadTimer;
+    private DistributionSummary uploadBytes;
+    private DistributionSummary deltaSavedBytes;
     
     @Value("${file.upload.dir}")
     private String uploadDir;
     
+    @Value("${spring.servlet.multipart.max-file-size:100MB}")
+    private DataSize maxFileSize;
+    
+    // Version retention: keep the newest keep-last versions of a file, and drop versions older
+    // than keep-days (0 = no age limit). The latest version is always kept.
+    @Value("${versions.keep-last:50}")
+    private int keepLastVersions;
+    
+    @Value("${versions.keep-days:0}")
+    private int keepVersionDays;
+    
     @Autowired
-    public FileService(FileRepository fileRepository, Crypto crypto) {
+    public FileService(FileRepository fileRepository, Crypto crypto, MeterRegistry meterRegistry,
+                       AccessControlService accessControlService, SwarmTracker swarmTracker,
+                       FileIntegrityService fileIntegrityService, ChunkStore chunkStore,
+                       FileHashStore fileHashStore) {
         this.fileRepository = fileRepository;
         this.crypto = crypto;
+        this.accessControlService = accessControlService;
+        this.swarmTracker = swarmTracker;
+        this.fileIntegrityService = fileIntegrityService;
+        this.chunkStore = chunkStore;
+        this.fileHashStore = fileHashStore;
+        this.uploadTimer = Timer.builder("p2p.file.upload")
+                .description("Time to store an uploaded file")
+                .register(meterRegistry);
+        this.uploadBytes = DistributionSummary.builder("p2p.file.upload.bytes")
+                .description("Size of uploaded files")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.deltaSavedBytes = DistributionSummary.builder("p2p.file.upload.delta.saved.bytes")
+                .description("Bytes of a delta upload copied from the previous version instead of sent")
+                .baseUnit("bytes")
+                .register(meterRegistry);
     }
     
     public File storeFile(MultipartFile multipartFile, String ownerId, boolean encrypt) throws IOException {
-        // Create the directory if it doesn't exist
-        Path uploadPath = Paths.get(uploadDir);
-        if (!Files.exists(uploadPath)) {
-            Files.createDirectories(uploadPath);
-            logger.info("Created upload directory at: {}", uploadPath.toAbsolutePath());
+        return storeFile(multipartFile, ownerId, encrypt, null);
+    }
+    
+    /**
+     * Store an upload, as the next version of {@code previous} if one is given
+     */
+    public File storeFile(MultipartFile multipartFile, String ownerId, boolean encrypt, File previous) throws IOException {
+        long start = System.nanoTime();
+        try {
+            File savedFile = doStoreFile(multipartFile, ownerId, encrypt, previous);
+            uploadBytes.record(multipartFile.getSize());
+            return savedFile;
+        } finally {
+            uploadTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
+    }
+    
+    private File doStoreFile(MultipartFile multipartFile, String ownerId, boolean encrypt, File previous) throws IOException {
+        // Create the directory if it doesn't exist
+        uploadDirectory();
         
         // Generate a unique filename
         String originalFilename = multipartFile.getOriginalFilename();
         String fileExtension = originalFilename.substring(originalFilename.lastIndexOf("."));
         String newFilename = UUID.randomUUID().toString() + fileExtension;
         
-        // Set the file path
-        Path filePath = uploadPath.resolve(newFilename);
-        logger.debug("Saving file to: {}", filePath.toAbsolutePath());
-        
-        // Get file bytes
-        byte[] fileBytes = multipartFile.getBytes();
+        // Plain uploads stream from the request to disk; encryption needs the whole file in memory
+        InputStream source;
+        long storedLength;
         
         // Encrypt the file if requested
         if (encrypt) {
+            byte[] fileBytes = multipartFile.getBytes();
             try {
                 SecretKey key = crypto.generateAESKey();
                 fileBytes = crypto.encryptAES(fileBytes, key);
@@ -70,42 +142,278 @@ public class FileService {
                 logger.error("Error encrypting file", e);
                 throw new RuntimeException("Error encrypting file", e);
             }
+            source = new ByteArrayInputStream(fileBytes);
+            storedLength = fileBytes.length;
+        } else {
+            source = multipartFile.getInputStream();
+            storedLength = multipartFile.getSize();
         }
         
-        // Save the file to the filesystem
-        Files.write(filePath, fileBytes);
-        logger.debug("File written to disk, size: {} bytes", fileBytes.length);
+        // Save the file as chunks, hashing swarm pieces and Merkle blocks on the way
+        ChunkStore.ChunkedOutputStream output = chunkStore.newOutput();
+        HashingFileWriter writer = newWriter(output, storedLength);
+        long diskStart = System.nanoTime();
+        try (InputStream in = source; writer) {
+            byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                writer.write(buffer, 0, read);
+            }
+        } catch (IOException | RuntimeException e) {
+            output.abort();
+            throw e;
+        }
+        RequestTiming.record("disk", diskStart);
+        logger.debug("File written to disk, size: {} bytes", writer.getLength());
         
         // Create and save file metadata
         File file = new File();
         file.setFilename(newFilename);
         file.setOriginalFilename(originalFilename);
-        file.setFilePath(filePath.toString());
+        file.setChunked(true);
+        file.setStoredSize(writer.getLength());
         file.setFileType(multipartFile.getContentType());
         file.setFileSize(multipartFile.getSize());
         file.setOwnerId(ownerId);
         file.setUploadDate(new Date());
         file.setEncrypted(encrypt);
+        // Both cover the bytes as stored, which is what peers and the download endpoints hand out
+        FileHashes hashes = new FileHashes();
+        swarmTracker.setPieces(file, hashes, writer.getPieces());
+        fileIntegrityService.setMerkle(file, hashes, writer.getBlocks());
         
-        File savedFile = fileRepository.save(file);
+        File savedFile = save(file, hashes, output, previous);
         logger.debug("File metadata saved to database with ID: {}", savedFile.getId());
         
         return savedFile;
     }
     
-    public java.io.File getFile(String fileId) {
-        File fileMetadata = fileRepository.findById(fileId)
-                .orElseThrow(() -> {
-                    logger.error("File metadata not found for ID: {}", fileId);
-                    return new RuntimeException("File not found");
-                });
+    /**
+     * Store a new version of a file from a delta against it (see {@link #getSignature}).
+     *
+     * The delta is a stream of ops: 0x01 varint(firstBlock) varint(blockCount) copies blocks
+     * of the previous version, 0x02 varint(length) bytes is literal data, 0x00 ends it. The new
+     * version is rebuilt straight into the chunk store while the request streams in, so only
+     * the literals cross the network. {@code length} and the optional {@code sha256} (hex) describe the
+     * rebuilt file and are checked before it is kept.
+     */
+    public File storeDelta(File previous, InputStream delta, String originalFilename, String contentType,
+                           long length, String sha256, String ownerId) throws IOException {
+        if (previous.isEncrypted()) {
+            throw new RuntimeException("Delta uploads need an unencrypted previous version");
+        }
+        if (length < 0 || length > maxFileSize.toBytes()) {
+            throw new RuntimeException("Invalid length");
+        }
+        long start = System.nanoTime();
+        previous = fileIntegrityService.ensureMerkle(previous);
+        
+        String name = originalFilename != null && !originalFilename.isEmpty() ? originalFilename : previous.getOriginalFilename();
+        String newFilename = UUID.randomUUID().toString() + (name.contains(".") ? name.substring(name.lastIndexOf(".")) : "");
+        uploadDirectory();
+        
+        ChunkStore.Content base = chunkStore.open(previous);
+        ChunkStore.ChunkedOutputStream output = chunkStore.newOutput();
+        HashingFileWriter writer = newWriter(output, length);
+        long literalBytes = 0;
+        try (writer; InputStream in = new BufferedInputStream(delta)) {
+            byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+            long blockSize = previous.getBlockSize();
+            int op;
+            while ((op = in.read()) != DELTA_END) {
+                if (op == DELTA_COPY) {
+                    long first = readVarint(in);
+                    long count = readVarint(in);
+                    // Written so no client-supplied sum can overflow; offsets then stay within the base
+                    long blockCount = previous.getBlockCount();
+                    if (count <= 0 || first < 0 || first >= blockCount || count > blockCount - first) {
+                        throw new RuntimeException("Block reference out of range");
+                    }
+                    long offset = first * blockSize;
+                    long remaining = Math.min(base.length(), (first + count) * blockSize) - offset;
+                    checkRoom(writer, remaining, length);
+                    try (InputStream blocks = base.openAt(offset)) {
+                        while (remaining > 0) {
+                            int n = blocks.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                            if (n < 0) {
+                                throw new IOException("Previous version is shorter than its metadata");
+                            }
+                            writer.write(buffer, 0, n);
+                            remaining -= n;
+                        }
+                    }
+                } else if (op == DELTA_LITERAL) {
+                    long remaining = readVarint(in);
+                    checkRoom(writer, remaining, length);
+                    literalBytes += remaining;
+                    while (remaining > 0) {
+                        int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (n < 0) {
+                            throw new RuntimeException("Delta ended early");
+                        }
+                        writer.write(buffer, 0, n);
+                        remaining -= n;
+                    }
+                } else {
+                    throw new RuntimeException(op < 0 ? "Delta ended early" : "Unknown delta op " + op);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            output.abort();
+            throw e;
+        }
         
-        java.io.File file = new java.io.File(fileMetadata.getFilePath());
-        if (!file.exists()) {
-            logger.error("Physical file not found at: {}", fileMetadata.getFilePath());
+        if (writer.getLength() != length || (sha256 != null && !sha256.equalsIgnoreCase(writer.getSha256()))) {
+            output.abort();
+            throw new RuntimeException("Rebuilt file does not match the expected length or hash");
         }
         
-        return file;
+        File file = new File();
+        file.setFilename(newFilename);
+        file.setOriginalFilename(name);
+        file.setChunked(true);
+        file.setStoredSize(length);
+        file.setFileType(contentType != null && !contentType.isEmpty() ? contentType : previous.getFileType());
+        file.setFileSize(length);
+        file.setOwnerId(ownerId);
+        file.setUploadDate(new Date());
+        file.setEncrypted(false);
+        FileHashes hashes = new FileHashes();
+        swarmTracker.setPieces(file, hashes, writer.getPieces());
+        fileIntegrityService.setMerkle(file, hashes, writer.getBlocks());
+        
+        File savedFile = save(file, hashes, output, previous);
+        uploadBytes.record(literalBytes);
+        deltaSavedBytes.record(length - literalBytes);
+        uploadTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        logger.debug("Rebuilt {} from {}: {} of {} bytes sent as literals",
+                savedFile.getId(), previous.getId(), literalBytes, length);
+        return savedFile;
+    }
+    
+    // Save the metadata, then the hashes and chunk index under the new id; the chunks go back if any fails
+    private File save(File file, FileHashes hashes, ChunkStore.ChunkedOutputStream output, File previous) {
+        File savedFile;
+        try {
+            if (previous != null) {
+                addToChain(file, previous);
+            }
+            savedFile = fileRepository.save(file);
+        } catch (RuntimeException e) {
+            output.abort();
+            throw e;
+        }
+        try {
+            fileHashStore.save(savedFile.getId(), hashes);
+            output.save(savedFile.getId());
+        } catch (RuntimeException e) {
+            output.abort();
+            fileHashStore.delete(savedFile.getId());
+            fileRepository.delete(savedFile);
+            throw e;
+        }
+        if (previous != null) {
+            applyRetention(file.getVersionGroupId());
+        }
+        return savedFile;
+    }
+    
+    // Make the file the newest version of previous's chain, starting the chain if needed
+    private void addToChain(File file, File previous) {
+        if (previous.getVersionGroupId() == null) {
+            previous.setVersionGroupId(previous.getId());
+            previous.setVersion(1);
+            fileRepository.save(previous);
+        }
+        File latest = fileRepository.findFirstByVersionGroupIdOrderByVersionDesc(previous.getVersionGroupId());
+        file.setVersionGroupId(previous.getVersionGroupId());
+        file.setVersion((latest != null ? latest.getVersion() : previous.getVersion()) + 1);
+        file.setPreviousVersionId(previous.getId());
+    }
+    
+    /**
+     * All versions of a file, newest first (just the file itself if it has never been replaced)
+     */
+    public List<File> getVersions(File file) {
+        if (file.getVersionGroupId() == null) {
+            return List.of(file);
+        }
+        return fileRepository.findByVersionGroupIdOrderByVersionDesc(file.getVersionGroupId());
+    }
+    
+    // Drop versions beyond the retention policy; their chunks go unless a kept version shares them
+    private void applyRetention(String versionGroupId) {
+        List<File> versions = fileRepository.findByVersionGroupIdOrderByVersionDesc(versionGroupId);
+        Date cutoff = keepVersionDays > 0
+                ? new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(keepVersionDays)) : null;
+        for (int i = 1; i < versions.size(); i++) {
+            File version = versions.get(i);
+            boolean tooMany = keepLastVersions > 0 && i >= keepLastVersions;
+            boolean tooOld = cutoff != null && version.getUploadDate() != null && version.getUploadDate().before(cutoff);
+            if (tooMany || tooOld) {
+                logger.debug("Retention: deleting version {} of {}", version.getVersion(), versionGroupId);
+                deleteFile(version.getId());
+            }
+        }
+    }
+    
+    // Age-based retention also applies to chains that stopped getting new versions
+    @Scheduled(fixedRateString = "${versions.retention-sweep-ms:3600000}")
+    public void sweepExpiredVersions() {
+        if (keepVersionDays <= 0) {
+            return;
+        }
+        Date cutoff = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(keepVersionDays));
+        fileRepository.findByVersionGroupIdIsNotNullAndUploadDateBefore(cutoff).stream()
+                .map(File::getVersionGroupId)
+                .distinct()
+                .forEach(this::applyRetention);
+    }
+    
+    public BlockSignature getSignature(File file) throws IOException {
+        return fileIntegrityService.getSignature(file);
+    }
+    
+    private Path uploadDirectory() throws IOException {
+        Path uploadPath = Paths.get(uploadDir);
+        if (!Files.exists(uploadPath)) {
+            Files.createDirectories(uploadPath);
+            logger.info("Created upload directory at: {}", uploadPath.toAbsolutePath());
+        }
+        return uploadPath;
+    }
+    
+    private HashingFileWriter newWriter(ChunkStore.ChunkedOutputStream output, long length) {
+        return new HashingFileWriter(output, swarmTracker.newPieceHasher(length),
+                fileIntegrityService.newBlockHasher(length));
+    }
+    
+    private static void checkRoom(HashingFileWriter writer, long count, long length) {
+        if (count < 0 || writer.getLength() + count > length) {
+            throw new RuntimeException("Delta is longer than the declared length");
+        }
+    }
+    
+    private static long readVarint(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 63; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new RuntimeException("Delta ended early");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new RuntimeException("Varint too long");
+    }
+    
+    /**
+     * The stored bytes of a file, streamed from its chunks (or from disk for files stored before chunking)
+     */
+    public Resource getContent(File file) throws IOException {
+        return chunkStore.asResource(file);
     }
     
     public File getFileById(String fileId) {
@@ -121,21 +429,29 @@ public class FileService {
         File file = fileRepository.findById(fileId)
                 .orElseThrow(() -> new RuntimeException("File not found"));
         
-        // Delete from filesystem
-        try {
-            boolean deleted = Files.deleteIfExists(Paths.get(file.getFilePath()));
-            if (deleted) {
-                logger.debug("Deleted file from disk: {}", file.getFilePath());
-            } else {
-                logger.warn("File not found on disk: {}", file.getFilePath());
+        // Delete from filesystem; chunks still used by other versions stay
+        if (file.isChunked()) {
+            chunkStore.release(fileId);
+        } else {
+            try {
+                boolean deleted = Files.deleteIfExists(Paths.get(file.getFilePath()));
+                if (deleted) {
+                    logger.debug("Deleted file from disk: {}", file.getFilePath());
+                } else {
+                    logger.warn("File not found on disk: {}", file.getFilePath());
+                }
+            } catch (IOException e) {
+                logger.error("Error deleting file from disk", e);
+                throw new RuntimeException("Error deleting file", e);
             }
-        } catch (IOException e) {
-            logger.error("Error deleting file from disk", e);
-            throw new RuntimeException("Error deleting file", e);
         }
         
         // Delete metadata
         fileRepository.delete(file);
+        fileHashStore.delete(fileId);
+        accessControlService.onFileChanged(fileId);
+        swarmTracker.onFileDeleted(fileId);
+        fileIntegrityService.onFileDeleted(file);
         logger.debug("Deleted file metadata for ID: {}", fileId);
     }
     
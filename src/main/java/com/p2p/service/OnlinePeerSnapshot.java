@@ -0,0 +1,248 @@
+package com.p2p.service;
+
+import com.p2p.model.Peer;
+import com.p2p.model.PeerDelta;
+import com.p2p.repository.PeerRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory, versioned view of the online peer set.
+ *
+ * Every join or leave bumps the version and is recorded in a bounded change log,
+ * so clients polling with their last version only pay for the churn since then.
+ * Heartbeats that don't change a peer's address are absorbed without a new version.
+ *
+ * Registrations on this node apply at once. Peers registered or timed out by other
+ * nodes are picked up by reconciling with the online peers in Mongo every
+ * {@code peers.snapshot.sync-ms}, so each node converges on the same set.
+ */
+@Service
+public class OnlinePeerSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(OnlinePeerSnapshot.class);
+
+    private PeerRepository peerRepository;
+
+    @Value("${peers.snapshot.change-log-size:1024}")
+    private int changeLogSize;
+
+    @Value("${peers.snapshot.sync-ms:5000}")
+    private long syncMs;
+
+    // Local changes this recent are newer than a read from Mongo may show, so a sync leaves them alone
+    @Value("${peers.snapshot.sync-overlap-ms:5000}")
+    private long syncOverlapMs;
+
+    private final Map<String, Peer> onlinePeers = new HashMap<>();
+    private Change[] changeLog;
+    private long version;
+
+    // Full list for the current version, rebuilt lazily on the first read after a change
+    private List<Peer> cachedList = Collections.emptyList();
+    private long cachedVersion = -1;
+
+    // User id -> when this node last changed that peer
+    private final Map<String, Long> localChanges = new HashMap<>();
+    private ScheduledExecutorService syncer;
+
+    @Autowired
+    public OnlinePeerSnapshot(PeerRepository peerRepository) {
+        this.peerRepository = peerRepository;
+    }
+
+    @PostConstruct
+    public synchronized void warmUp() {
+        changeLog = new Change[Math.max(1, changeLogSize)];
+        try {
+            for (Peer peer : peerRepository.findByIsOnline(true)) {
+                onlinePeers.put(peer.getUserId(), peer);
+            }
+            logger.info("Online peer snapshot warmed with {} peers", onlinePeers.size());
+        } catch (Exception e) {
+            logger.error("Error warming online peer snapshot", e);
+        }
+
+        syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "peer-snapshot-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::sync, syncMs, syncMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (syncer != null) {
+            syncer.shutdownNow();
+        }
+    }
+
+    /**
+     * Record that a peer is online, recording a join if it is new or its address changed
+     */
+    public synchronized void peerOnline(Peer peer) {
+        if (peer == null || peer.getUserId() == null) {
+            return;
+        }
+
+        localChanges.put(peer.getUserId(), System.currentTimeMillis());
+        apply(peer);
+    }
+
+    /**
+     * Record that a peer went offline
+     */
+    public synchronized void peerOffline(String userId) {
+        if (userId != null) {
+            localChanges.put(userId, System.currentTimeMillis());
+            remove(userId);
+        }
+    }
+
+    private void apply(Peer peer) {
+        Peer previous = onlinePeers.put(peer.getUserId(), peer);
+        if (previous == null
+                || previous.getPort() != peer.getPort()
+                || !Objects.equals(previous.getIpAddress(), peer.getIpAddress())) {
+            record(peer.getUserId(), peer);
+        }
+    }
+
+    private void remove(String userId) {
+        if (onlinePeers.remove(userId) != null) {
+            record(userId, null);
+        }
+    }
+
+    // Joins and leaves made by other nodes (or missed here), from the online peers in Mongo
+    private void sync() {
+        try {
+            long readAt = System.currentTimeMillis();
+            List<Peer> online = peerRepository.findByIsOnline(true);
+            reconcile(online, readAt);
+        } catch (Exception e) {
+            logger.error("Error syncing online peer snapshot", e);
+        }
+    }
+
+    private synchronized void reconcile(List<Peer> online, long readAt) {
+        long recent = readAt - syncOverlapMs;
+        localChanges.values().removeIf(changedAt -> changedAt < recent);
+
+        Map<String, Peer> current = new HashMap<>();
+        for (Peer peer : online) {
+            if (peer.getUserId() != null && !localChanges.containsKey(peer.getUserId())) {
+                current.put(peer.getUserId(), peer);
+            }
+        }
+        for (String userId : new ArrayList<>(onlinePeers.keySet())) {
+            if (!current.containsKey(userId) && !localChanges.containsKey(userId)) {
+                remove(userId);
+            }
+        }
+        current.values().forEach(this::apply);
+    }
+
+    public void peerStatusChanged(Peer peer) {
+        if (peer == null) {
+            return;
+        }
+        if (peer.isOnline()) {
+            peerOnline(peer);
+        } else {
+            peerOffline(peer.getUserId());
+        }
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * The online peer registered by this user, or null
+     */
+    public synchronized Peer getOnlinePeer(String userId) {
+        return userId != null ? onlinePeers.get(userId) : null;
+    }
+
+    /**
+     * Get the full online list for the current version
+     */
+    public synchronized List<Peer> getOnlinePeers() {
+        if (cachedVersion != version) {
+            cachedList = Collections.unmodifiableList(new ArrayList<>(onlinePeers.values()));
+            cachedVersion = version;
+        }
+        return cachedList;
+    }
+
+    /**
+     * Get the joins and leaves since the given version, or the full list if
+     * that version has already been evicted from the change log
+     */
+    public PeerDelta getChangesSince(Long sinceVersion) {
+        PeerDelta delta = new PeerDelta();
+
+        synchronized (this) {
+            delta.setVersion(version);
+
+            long oldestRetained = Math.max(0, version - changeLog.length);
+            if (sinceVersion == null || sinceVersion < oldestRetained || sinceVersion > version) {
+                delta.setFull(true);
+                delta.setJoined(new ArrayList<>(onlinePeers.values()));
+                return delta;
+            }
+
+            // Latest change per user wins; replay the log oldest first
+            Map<String, Peer> latest = new LinkedHashMap<>();
+            for (long v = sinceVersion + 1; v <= version; v++) {
+                Change change = changeLog[(int) ((v - 1) % changeLog.length)];
+                latest.remove(change.userId);
+                latest.put(change.userId, change.peer);
+            }
+
+            for (Map.Entry<String, Peer> entry : latest.entrySet()) {
+                if (entry.getValue() != null) {
+                    delta.getJoined().add(entry.getValue());
+                } else {
+                    delta.getLeft().add(entry.getKey());
+                }
+            }
+        }
+
+        return delta;
+    }
+
+    private void record(String userId, Peer peer) {
+        version++;
+        changeLog[(int) ((version - 1) % changeLog.length)] = new Change(userId, peer);
+        logger.debug("Online peer snapshot v{}: {} {}", version, userId, peer != null ? "joined" : "left");
+    }
+
+    private static class Change {
+        private final String userId;
+        private final Peer peer;
+
+        private Change(String userId, Peer peer) {
+            this.userId = userId;
+            this.peer = peer;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.p2p.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs password verification (BCrypt) on its own bounded pool so a burst of
+ * logins can't exhaust the servlet threads that serve everything else.
+ * Callers get a future completed from the pool, so no request thread waits on it.
+ * When the queue is full or a login waits too long it is rejected straight away.
+ * Queue wait and hash time are published as p2p.login.queue.wait / p2p.login.hash.
+ */
+@Service
+public class PasswordVerificationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordVerificationService.class);
+
+    private AuthenticationManager authenticationManager;
+
+    @Value("${login.pool.threads:0}")
+    private int threads;
+
+    @Value("${login.pool.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${login.pool.timeout-ms:5000}")
+    private long timeoutMs;
+
+    @Value("${login.pool.retry-after-seconds:2}")
+    private int retryAfterSeconds;
+
+    private ThreadPoolExecutor executor;
+    private MeterRegistry meterRegistry;
+
+    // Metrics
+    private Timer queueWaitTimer;
+    private Timer hashTimer;
+    private Counter rejected;
+    private Counter timedOut;
+
+    @Autowired
+    public PasswordVerificationService(AuthenticationManager authenticationManager, MeterRegistry meterRegistry) {
+        this.authenticationManager = authenticationManager;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "login-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        queueWaitTimer = Timer.builder("p2p.login.queue.wait")
+                .description("Time logins wait for a login pool thread")
+                .register(meterRegistry);
+        hashTimer = Timer.builder("p2p.login.hash")
+                .description("Time to verify a password")
+                .register(meterRegistry);
+        rejected = Counter.builder("p2p.login.rejected")
+                .description("Logins shed because the login pool was saturated")
+                .register(meterRegistry);
+        timedOut = Counter.builder("p2p.login.timed.out")
+                .description("Logins that waited longer than login.pool.timeout-ms")
+                .register(meterRegistry);
+        Gauge.builder("p2p.login.queued", executor, pool -> pool.getQueue().size())
+                .description("Logins waiting for a login pool thread")
+                .register(meterRegistry);
+        logger.info("Login pool started with {} threads, queue capacity {}", poolSize, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Authenticate a username/password on the login pool. The future fails with
+     * {@link LoginRejectedException} if the pool is saturated or the login waited too long,
+     * and otherwise with whatever the AuthenticationManager threw.
+     */
+    public CompletableFuture<Authentication> authenticate(String username, String password) {
+        long submittedAt = System.nanoTime();
+        CompletableFuture<Authentication> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                long startedAt = System.nanoTime();
+                queueWaitTimer.record(startedAt - submittedAt, TimeUnit.NANOSECONDS);
+                // Nobody is waiting for a login that sat in the queue past its timeout
+                if (startedAt - submittedAt > TimeUnit.MILLISECONDS.toNanos(timeoutMs)) {
+                    timedOut.increment();
+                    logger.warn("Login timed out after {} ms in the queue", timeoutMs);
+                    result.completeExceptionally(new LoginRejectedException(retryAfterSeconds));
+                    return;
+                }
+                try {
+                    result.complete(authenticationManager.authenticate(
+                            new UsernamePasswordAuthenticationToken(username, password)));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    hashTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            logger.warn("Login rejected, pool saturated (queued: {})", executor.getQueue().size());
+            result.completeExceptionally(new LoginRejectedException(retryAfterSeconds));
+        }
+        return result;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("poolSize", executor.getCorePoolSize());
+        stats.put("active", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("completed", hashTimer.count());
+        stats.put("rejected", (long) rejected.count());
+        stats.put("timedOut", (long) timedOut.count());
+        stats.put("avgQueueWaitMs", queueWaitTimer.mean(TimeUnit.MILLISECONDS));
+        stats.put("maxQueueWaitMs", queueWaitTimer.max(TimeUnit.MILLISECONDS));
+        stats.put("avgHashMs", hashTimer.mean(TimeUnit.MILLISECONDS));
+        stats.put("maxHashMs", hashTimer.max(TimeUnit.MILLISECONDS));
+        return stats;
+    }
+
+    /**
+     * Thrown when a login is shed because the login pool is saturated
+     */
+    public static class LoginRejectedException extends RuntimeException {
+
+        private final int retryAfterSeconds;
+
+        public LoginRejectedException(int retryAfterSeconds) {
+            super("Too many concurrent logins, try again shortly");
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+}
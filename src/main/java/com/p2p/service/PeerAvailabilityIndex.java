@@ -0,0 +1,298 @@
+package com.p2p.service;
+
+import com.p2p.model.Peer;
+import com.p2p.model.PeerDelta;
+import com.p2p.model.SwarmPeer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Which online peers can serve which file.
+ *
+ * Peers holding a complete copy announce it (directly or through a swarm announce) and
+ * withdraw it when they stop serving. Each file keeps its holders in an array, so picking
+ * K of them samples a few times K from a random starting point, however many holders there
+ * are, and returns the best K by {@link PeerRankingService}. A reverse index per user lets
+ * a peer's entries be dropped together when its presence expires in
+ * {@link OnlinePeerSnapshot} or it stops re-announcing. A user's announces and
+ * withdrawals run under that user's entry in the reverse index, so a withdrawal can
+ * never miss a file announced at the same time.
+ */
+@Service
+public class PeerAvailabilityIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(PeerAvailabilityIndex.class);
+
+    // Holders sampled per peer asked for, before ranking
+    private static final int CANDIDATES_PER_PEER = 4;
+
+    private OnlinePeerSnapshot onlinePeerSnapshot;
+    private PeerRankingService peerRankingService;
+
+    @Value("${availability.announce-ttl-ms:900000}")
+    private long announceTtlMs;
+
+    @Value("${availability.max-peers:50}")
+    private int maxPeers;
+
+    private final Map<String, Holders> byFile = new ConcurrentHashMap<>();
+    private final Map<String, UserEntries> byUser = new ConcurrentHashMap<>();
+
+    // Last snapshot version whose leaves were applied; null until the first sync
+    private Long syncedVersion;
+
+    private final LongAdder announces = new LongAdder();
+    private final LongAdder withdrawals = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    @Autowired
+    public PeerAvailabilityIndex(OnlinePeerSnapshot onlinePeerSnapshot, PeerRankingService peerRankingService) {
+        this.onlinePeerSnapshot = onlinePeerSnapshot;
+        this.peerRankingService = peerRankingService;
+    }
+
+    /**
+     * Record that a user can serve the file; {@code listenPort} overrides its registered port if positive
+     */
+    public void announce(String fileId, String userId, int listenPort) {
+        byUser.compute(userId, (id, entries) -> {
+            UserEntries current = entries != null ? entries : new UserEntries();
+            current.files.add(fileId);
+            current.lastAnnounce = System.currentTimeMillis();
+            byFile.compute(fileId, (file, holders) -> {
+                Holders updated = holders != null ? holders : new Holders();
+                updated.put(userId, listenPort);
+                return updated;
+            });
+            return current;
+        });
+        announces.increment();
+    }
+
+    public void withdraw(String fileId, String userId) {
+        boolean[] removed = new boolean[1];
+        byUser.compute(userId, (id, entries) -> {
+            if (entries != null) {
+                entries.files.remove(fileId);
+            }
+            removed[0] = removeHolder(fileId, userId);
+            return entries;
+        });
+        if (removed[0]) {
+            withdrawals.increment();
+        }
+    }
+
+    /**
+     * Drop everything a user announced
+     */
+    public void withdrawAll(String userId) {
+        withdrawAllIf(userId, Long.MAX_VALUE);
+    }
+
+    // Drops the user's entries if it last announced before the cutoff
+    private boolean withdrawAllIf(String userId, long announcedBefore) {
+        boolean[] withdrawn = new boolean[1];
+        byUser.computeIfPresent(userId, (id, entries) -> {
+            if (entries.lastAnnounce >= announcedBefore) {
+                return entries;
+            }
+            for (String fileId : entries.files) {
+                removeHolder(fileId, userId);
+            }
+            withdrawals.add(entries.files.size());
+            logger.debug("Withdrew {} files held by {}", entries.files.size(), userId);
+            withdrawn[0] = true;
+            return null;
+        });
+        return withdrawn[0];
+    }
+
+    public void onFileDeleted(String fileId) {
+        Holders holders = byFile.get(fileId);
+        if (holders == null) {
+            return;
+        }
+        for (String userId : holders.userIds()) {
+            byUser.computeIfPresent(userId, (id, entries) -> {
+                entries.files.remove(fileId);
+                removeHolder(fileId, userId);
+                return entries;
+            });
+        }
+        byFile.remove(fileId);
+    }
+
+    /**
+     * Up to {@code k} online holders of the file other than the requester, best ranked first.
+     * Candidates are sampled from a random starting point so load spreads across holders;
+     * holders found offline are dropped.
+     */
+    public List<SwarmPeer> findPeers(String fileId, String requesterId, int k) {
+        lookups.increment();
+        List<SwarmPeer> peers = new ArrayList<>();
+        Holders holders = byFile.get(fileId);
+        if (holders == null || k <= 0) {
+            return peers;
+        }
+        int wanted = Math.min(k, maxPeers);
+        int sample = wanted * CANDIDATES_PER_PEER;
+        List<String> offline = new ArrayList<>();
+        synchronized (holders) {
+            int size = holders.users.size();
+            int start = size > 0 ? ThreadLocalRandom.current().nextInt(size) : 0;
+            for (int i = 0; i < size && peers.size() < sample; i++) {
+                int slot = (start + i) % size;
+                String userId = holders.users.get(slot);
+                if (userId.equals(requesterId)) {
+                    continue;
+                }
+                Peer peer = onlinePeerSnapshot.getOnlinePeer(userId);
+                if (peer == null) {
+                    offline.add(userId);
+                    continue;
+                }
+                SwarmPeer swarmPeer = new SwarmPeer();
+                swarmPeer.setUserId(userId);
+                swarmPeer.setIpAddress(peer.getIpAddress());
+                swarmPeer.setPort(holders.ports.get(slot) > 0 ? holders.ports.get(slot) : peer.getPort());
+                swarmPeer.setComplete(true);
+                swarmPeer.setScore(peerRankingService.score(userId));
+                peers.add(swarmPeer);
+            }
+        }
+        for (String userId : offline) {
+            withdrawAll(userId);
+        }
+        peers.sort(Comparator.comparingDouble(SwarmPeer::getScore));
+        List<SwarmPeer> best = peers.size() > wanted ? new ArrayList<>(peers.subList(0, wanted)) : peers;
+        peerRankingService.expectReports(requesterId, best);
+        return best;
+    }
+
+    /**
+     * Number of peers that announced the file (scrape)
+     */
+    public int getHolderCount(String fileId) {
+        Holders holders = byFile.get(fileId);
+        if (holders == null) {
+            return 0;
+        }
+        synchronized (holders) {
+            return holders.users.size();
+        }
+    }
+
+    /**
+     * Apply presence changes since the last sync and expire users that stopped re-announcing
+     */
+    @Scheduled(fixedDelayString = "${availability.sync-ms:5000}")
+    public void syncPresence() {
+        PeerDelta delta = onlinePeerSnapshot.getChangesSince(syncedVersion);
+        if (delta.isFull()) {
+            // Too far behind for the change log: check every user against the current set
+            for (String userId : byUser.keySet()) {
+                if (onlinePeerSnapshot.getOnlinePeer(userId) == null) {
+                    withdrawAll(userId);
+                }
+            }
+        } else {
+            for (String userId : delta.getLeft()) {
+                withdrawAll(userId);
+            }
+        }
+        syncedVersion = delta.getVersion();
+
+        long cutoff = System.currentTimeMillis() - announceTtlMs;
+        for (Map.Entry<String, UserEntries> entry : byUser.entrySet()) {
+            // Re-checked under the user's entry, in case it just announced again
+            if (entry.getValue().lastAnnounce < cutoff && withdrawAllIf(entry.getKey(), cutoff)) {
+                expired.increment();
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("files", byFile.size());
+        stats.put("users", byUser.size());
+        stats.put("announces", announces.sum());
+        stats.put("withdrawals", withdrawals.sum());
+        stats.put("lookups", lookups.sum());
+        stats.put("expiredUsers", expired.sum());
+        return stats;
+    }
+
+    // Removes the holder, dropping the file's entry once nobody holds it. Lock order is
+    // always the byUser entry first, then the byFile entry.
+    private boolean removeHolder(String fileId, String userId) {
+        boolean[] removed = new boolean[1];
+        byFile.computeIfPresent(fileId, (id, holders) -> {
+            removed[0] = holders.remove(userId);
+            return holders.isEmpty() ? null : holders;
+        });
+        return removed[0];
+    }
+
+    // Holders of one file as parallel arrays with swap-remove, so add, remove and random picks are O(1)
+    private static class Holders {
+        private final List<String> users = new ArrayList<>();
+        private final List<Integer> ports = new ArrayList<>();
+        private final Map<String, Integer> slots = new HashMap<>();
+
+        private synchronized void put(String userId, int listenPort) {
+            Integer slot = slots.get(userId);
+            if (slot != null) {
+                ports.set(slot, listenPort);
+                return;
+            }
+            slots.put(userId, users.size());
+            users.add(userId);
+            ports.add(listenPort);
+        }
+
+        private synchronized boolean remove(String userId) {
+            Integer slot = slots.remove(userId);
+            if (slot == null) {
+                return false;
+            }
+            int last = users.size() - 1;
+            if (slot != last) {
+                users.set(slot, users.get(last));
+                ports.set(slot, ports.get(last));
+                slots.put(users.get(slot), slot);
+            }
+            users.remove(last);
+            ports.remove(last);
+            return true;
+        }
+
+        private synchronized boolean isEmpty() {
+            return users.isEmpty();
+        }
+
+        private synchronized List<String> userIds() {
+            return new ArrayList<>(users);
+        }
+    }
+
+    private static class UserEntries {
+        private final Set<String> files = ConcurrentHashMap.newKeySet();
+        private volatile long lastAnnounce;
+    }
+}
@@ -0,0 +1,299 @@
+package com.p2p.service;
+
+import com.p2p.model.SwarmPeer;
+import com.p2p.util.ExpiringCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ranks transfer sources (peers by user id, or {@link #SERVER}) by how fast and reliable
+ * they have been.
+ *
+ * Transfer outcomes reported by clients and seen by the server are folded into per-source
+ * moving averages of throughput, RTT and success rate. Each source's estimate is an
+ * immutable snapshot swapped in with compare-and-set, so reports and lookups never block.
+ * Estimates drift back to the prior as they age, so a source that was slow or failing
+ * long ago gets another chance; a run of recent failures sends it to the bottom.
+ *
+ * Clients may only report on peers the tracker recently handed them, at a bounded
+ * rate, so nobody can talk a peer up or down without having fetched from it.
+ */
+@Service
+public class PeerRankingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PeerRankingService.class);
+
+    public static final String SERVER = "server";
+
+    // Transfers smaller than this say more about latency than throughput
+    private static final long MIN_THROUGHPUT_SAMPLE_BYTES = 16 * 1024;
+    private static final double FAILING_PENALTY = 1000;
+
+    @Value("${ranking.alpha:0.25}")
+    private double alpha;
+
+    @Value("${ranking.half-life-ms:600000}")
+    private long halfLifeMs;
+
+    @Value("${ranking.reference-bytes:262144}")
+    private long referenceBytes;
+
+    @Value("${ranking.prior.throughput-bps:1000000}")
+    private double priorThroughput;
+
+    @Value("${ranking.prior.rtt-ms:100}")
+    private double priorRttMs;
+
+    @Value("${ranking.prior.success-rate:0.9}")
+    private double priorSuccessRate;
+
+    @Value("${ranking.failure-streak:3}")
+    private int failureStreak;
+
+    @Value("${ranking.max-sources:100000}")
+    private int maxSources;
+
+    @Value("${ranking.report-window-ms:600000}")
+    private long reportWindowMs;
+
+    @Value("${ranking.reports-per-minute:120}")
+    private int reportsPerMinute;
+
+    @Value("${ranking.max-expected-reports:200000}")
+    private int maxExpectedReports;
+
+    private final Map<String, AtomicReference<Estimate>> estimates = new ConcurrentHashMap<>();
+
+    // "receiver source" pairs the tracker handed out, and per-reporter counts for the current minute
+    private ExpiringCache<String, Boolean> expectedReports;
+    private ExpiringCache<String, AtomicInteger> reportCounts;
+    private volatile long lastPrune = System.currentTimeMillis();
+
+    private final LongAdder reports = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder rejectedReports = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        expectedReports = new ExpiringCache<>(maxExpectedReports);
+        reportCounts = new ExpiringCache<>(maxExpectedReports);
+    }
+
+    /**
+     * Allow the receiver to report on these peers for a while, e.g. after returning them from a lookup
+     */
+    public void expectReports(String receiverId, List<SwarmPeer> peers) {
+        long expiresAt = System.currentTimeMillis() + reportWindowMs;
+        for (SwarmPeer peer : peers) {
+            expectedReports.put(receiverId + " " + peer.getUserId(), Boolean.TRUE, expiresAt);
+        }
+    }
+
+    /**
+     * Whether {@code source} was handed to the reporter recently
+     */
+    public boolean isExpectedReport(String reporterId, String source) {
+        if (expectedReports.get(reporterId + " " + source) == null) {
+            rejectedReports.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Count one report against the reporter's per-minute budget
+     */
+    public boolean tryAcquireReport(String reporterId) {
+        AtomicInteger count = reportCounts.get(reporterId);
+        if (count == null) {
+            count = new AtomicInteger();
+            reportCounts.put(reporterId, count, System.currentTimeMillis() + 60000);
+        }
+        if (count.incrementAndGet() > reportsPerMinute) {
+            rejectedReports.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Fold in one transfer from {@code source}; {@code rttMs} is ignored unless positive
+     */
+    public void recordTransfer(String source, long bytes, long durationMs, long rttMs, boolean success) {
+        if (source == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        pruneIfDue(now);
+        AtomicReference<Estimate> ref = estimates.get(source);
+        if (ref == null) {
+            if (estimates.size() >= maxSources) {
+                dropped.increment();
+                return;
+            }
+            ref = estimates.computeIfAbsent(source, id -> new AtomicReference<>(prior(now)));
+        }
+
+        double throughput = success && bytes >= MIN_THROUGHPUT_SAMPLE_BYTES
+                ? bytes * 1000.0 / Math.max(1, durationMs) : Double.NaN;
+        double rtt = rttMs > 0 ? rttMs : Double.NaN;
+        Estimate previous;
+        Estimate next;
+        do {
+            previous = ref.get();
+            next = previous.update(this, now, throughput, rtt, success);
+        } while (!ref.compareAndSet(previous, next));
+
+        reports.increment();
+        if (!success) {
+            failures.increment();
+        }
+    }
+
+    /**
+     * Expected milliseconds to fetch a reference-sized piece from the source; lower is better
+     */
+    public double score(String source) {
+        AtomicReference<Estimate> ref = source != null ? estimates.get(source) : null;
+        long now = System.currentTimeMillis();
+        Estimate estimate = ref != null ? ref.get() : prior(now);
+        return estimate.score(this, now);
+    }
+
+    /**
+     * The sources ordered best first
+     */
+    public List<String> rank(Collection<String> sources) {
+        Map<String, Double> scores = new HashMap<>();
+        for (String source : sources) {
+            scores.put(source, score(source));
+        }
+        List<String> ranked = new ArrayList<>(scores.keySet());
+        ranked.sort(Comparator.comparingDouble(scores::get));
+        return ranked;
+    }
+
+    /**
+     * The current estimate for a source, aged to now
+     */
+    public Map<String, Object> describe(String source) {
+        AtomicReference<Estimate> ref = estimates.get(source);
+        long now = System.currentTimeMillis();
+        Estimate estimate = ref != null ? ref.get() : prior(now);
+        double weight = estimate.weight(this, now);
+        Map<String, Object> result = new HashMap<>();
+        result.put("source", source);
+        result.put("score", estimate.score(this, now));
+        result.put("throughputBps", blend(estimate.throughput, priorThroughput, weight));
+        result.put("rttMs", blend(estimate.rttMs, priorRttMs, weight));
+        result.put("successRate", blend(estimate.successRate, priorSuccessRate, weight));
+        result.put("samples", estimate.samples);
+        result.put("failing", estimate.isFailing(this, now));
+        return result;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("sources", estimates.size());
+        stats.put("reports", reports.sum());
+        stats.put("failures", failures.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("rejectedReports", rejectedReports.sum());
+        stats.put("expectedReports", expectedReports.size());
+        return stats;
+    }
+
+    private Estimate prior(long now) {
+        return new Estimate(priorThroughput, priorRttMs, priorSuccessRate, 0, 0, now);
+    }
+
+    // Forget sources whose estimates have decayed back to the prior
+    private void pruneIfDue(long now) {
+        if (now - lastPrune < halfLifeMs) {
+            return;
+        }
+        lastPrune = now;
+        long cutoff = now - 10 * halfLifeMs;
+        int before = estimates.size();
+        estimates.values().removeIf(ref -> ref.get().updatedAt < cutoff);
+        logger.debug("Pruned {} stale source estimates", before - estimates.size());
+    }
+
+    private static double blend(double value, double prior, double weight) {
+        return prior + (value - prior) * weight;
+    }
+
+    // One source's averages as of updatedAt; replaced, never modified
+    private static final class Estimate {
+        private final double throughput;
+        private final double rttMs;
+        private final double successRate;
+        private final int failureRun;
+        private final long samples;
+        private final long updatedAt;
+
+        private Estimate(double throughput, double rttMs, double successRate, int failureRun, long samples, long updatedAt) {
+            this.throughput = throughput;
+            this.rttMs = rttMs;
+            this.successRate = successRate;
+            this.failureRun = failureRun;
+            this.samples = samples;
+            this.updatedAt = updatedAt;
+        }
+
+        // Decay toward the prior first, then take the new sample in
+        private Estimate update(PeerRankingService config, long now, double sampleThroughput, double sampleRtt, boolean success) {
+            double weight = weight(config, now);
+            double a = config.alpha;
+            double newThroughput = blend(throughput, config.priorThroughput, weight);
+            double newRtt = blend(rttMs, config.priorRttMs, weight);
+            double newSuccess = blend(successRate, config.priorSuccessRate, weight);
+            if (!Double.isNaN(sampleThroughput)) {
+                newThroughput += a * (sampleThroughput - newThroughput);
+            }
+            if (!Double.isNaN(sampleRtt)) {
+                newRtt += a * (sampleRtt - newRtt);
+            }
+            newSuccess += a * ((success ? 1 : 0) - newSuccess);
+            // Failures only extend a streak that is still recent
+            int run = success ? 0 : (weight > 0.5 ? failureRun : 0) + 1;
+            return new Estimate(newThroughput, newRtt, newSuccess, run, samples + 1, now);
+        }
+
+        private double weight(PeerRankingService config, long now) {
+            if (config.halfLifeMs <= 0) {
+                return 1;
+            }
+            return Math.pow(0.5, Math.max(0, now - updatedAt) / (double) config.halfLifeMs);
+        }
+
+        // A failure streak only counts while it is recent
+        private boolean isFailing(PeerRankingService config, long now) {
+            return failureRun >= config.failureStreak && weight(config, now) > 0.5;
+        }
+
+        private double score(PeerRankingService config, long now) {
+            double weight = weight(config, now);
+            double effectiveThroughput = Math.max(1, blend(throughput, config.priorThroughput, weight));
+            double effectiveRtt = Math.max(0, blend(rttMs, config.priorRttMs, weight));
+            double effectiveSuccess = Math.max(0.05, blend(successRate, config.priorSuccessRate, weight));
+            double expected = (effectiveRtt + config.referenceBytes * 1000.0 / effectiveThroughput) / effectiveSuccess;
+            return isFailing(config, now) ? expected * FAILING_PENALTY : expected;
+        }
+    }
+}
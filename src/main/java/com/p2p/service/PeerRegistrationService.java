@@ -5,6 +5,10 @@ import com.p2p.repository.PeerRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
@@ -19,10 +23,15 @@ public class PeerRegistrationService {
     private static final long ONLINE_TIMEOUT_MS = 5 * 60 * 1000; // 5 minutes
     
     private PeerRepository peerRepository;
+    private OnlinePeerSnapshot onlinePeerSnapshot;
+    private MongoTemplate mongoTemplate;
     
     @Autowired
-    public PeerRegistrationService(PeerRepository peerRepository) {
+    public PeerRegistrationService(PeerRepository peerRepository, OnlinePeerSnapshot onlinePeerSnapshot,
+                                   MongoTemplate mongoTemplate) {
         this.peerRepository = peerRepository;
+        this.onlinePeerSnapshot = onlinePeerSnapshot;
+        this.mongoTemplate = mongoTemplate;
     }
     
     public Peer registerPeer(String userId, HttpServletRequest request) {
@@ -42,7 +51,9 @@ public class PeerRegistrationService {
             existingPeer.setLastSeen(new Date());
             
             logger.info("Updated existing peer: {}", existingPeer.getId());
-            return peerRepository.save(existingPeer);
+            Peer savedPeer = peerRepository.save(existingPeer);
+            onlinePeerSnapshot.peerOnline(savedPeer);
+            return savedPeer;
         } else {
             // Create new peer
             Peer newPeer = new Peer();
@@ -53,7 +64,9 @@ public class PeerRegistrationService {
             newPeer.setLastSeen(new Date());
             
             logger.info("Created new peer");
-            return peerRepository.save(newPeer);
+            Peer savedPeer = peerRepository.save(newPeer);
+            onlinePeerSnapshot.peerOnline(savedPeer);
+            return savedPeer;
         }
     }
     
@@ -64,6 +77,7 @@ public class PeerRegistrationService {
             peer.setOnline(isOnline);
             peer.setLastSeen(new Date());
             peerRepository.save(peer);
+            onlinePeerSnapshot.peerStatusChanged(peer);
             logger.info("Updated peer status - userId: {}, online: {}", userId, isOnline);
         } else {
             logger.warn("Attempted to update status for non-existent peer - userId: {}", userId);
@@ -71,11 +85,12 @@ public class PeerRegistrationService {
     }
     
     public List<Peer> getOnlinePeers() {
-        List<Peer> onlinePeers = peerRepository.findByIsOnline(true);
+        List<Peer> onlinePeers = onlinePeerSnapshot.getOnlinePeers();
         logger.info("Retrieved {} online peers", onlinePeers.size());
         return onlinePeers;
     }
     
+    // Runs on every node; other nodes' snapshots pick the change up from Mongo (see OnlinePeerSnapshot)
     @Scheduled(fixedRate = 60000) // Run every minute
     public void checkPeerTimeouts() {
         logger.debug("Checking peer timeouts...");
@@ -88,8 +103,17 @@ public class PeerRegistrationService {
                 long timeSinceLastSeen = now.getTime() - peer.getLastSeen().getTime();
                 
                 if (timeSinceLastSeen > ONLINE_TIMEOUT_MS) {
-                    peer.setOnline(false);
-                    peerRepository.save(peer);
+                    // Only if nobody re-registered it meanwhile (on any node) or timed it out first
+                    long updated = mongoTemplate.updateFirst(
+                            Query.query(Criteria.where("_id").is(peer.getId())
+                                    .and("isOnline").is(true)
+                                    .and("lastSeen").is(peer.getLastSeen())),
+                            new Update().set("isOnline", false),
+                            Peer.class).getModifiedCount();
+                    if (updated == 0) {
+                        continue;
+                    }
+                    onlinePeerSnapshot.peerOffline(peer.getUserId());
                     timeoutCount++;
                     logger.debug("Peer timed out - userId: {}, lastSeen: {}", peer.getUserId(), peer.getLastSeen());
                 }
@@ -19,10 +19,12 @@ public class PeerService {
     private static final Logger logger = LoggerFactory.getLogger(PeerService.class);
     
     private final PeerRepository peerRepository;
+    private final OnlinePeerSnapshot onlinePeerSnapshot;
     
     @Autowired
-    public PeerService(PeerRepository peerRepository) {
+    public PeerService(PeerRepository peerRepository, OnlinePeerSnapshot onlinePeerSnapshot) {
         this.peerRepository = peerRepository;
+        this.onlinePeerSnapshot = onlinePeerSnapshot;
     }
     
     /**
@@ -39,7 +41,9 @@ public class PeerService {
                 existingPeer.setIpAddress(ipAddress);
                 existingPeer.setPort(port);
                 existingPeer.setOnline(true);
-                return peerRepository.save(existingPeer);
+                Peer savedPeer = peerRepository.save(existingPeer);
+                onlinePeerSnapshot.peerOnline(savedPeer);
+                return savedPeer;
             } else {
                 // Create new peer
                 Peer newPeer = new Peer();
@@ -47,7 +51,9 @@ public class PeerService {
                 newPeer.setIpAddress(ipAddress);
                 newPeer.setPort(port);
                 newPeer.setOnline(true);
-                return peerRepository.save(newPeer);
+                Peer savedPeer = peerRepository.save(newPeer);
+                onlinePeerSnapshot.peerOnline(savedPeer);
+                return savedPeer;
             }
         } catch (Exception e) {
             logger.error("Error registering peer", e);
@@ -60,7 +66,7 @@ public class PeerService {
      */
     public List<Peer> getOnlinePeers() {
         try {
-            return peerRepository.findByIsOnline(true);
+            return onlinePeerSnapshot.getOnlinePeers();
         } catch (Exception e) {
             logger.error("Error getting online peers", e);
             return new ArrayList<>();
@@ -76,6 +82,7 @@ public class PeerService {
             if (peer != null) {
                 peer.setOnline(isOnline);
                 peerRepository.save(peer);
+                onlinePeerSnapshot.peerStatusChanged(peer);
             }
         } catch (Exception e) {
             logger.error("Error setting peer status", e);
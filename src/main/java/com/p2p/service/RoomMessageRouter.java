@@ -0,0 +1,307 @@
+package com.p2p.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.p2p.model.ClusterEnvelope;
+import com.p2p.model.WebSocketMessage;
+import com.p2p.util.ConsistentHashRing;
+import com.p2p.util.WebSocketMessageCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Routes room broadcasts through the room's owner node.
+ *
+ * A message is forwarded to the owner (PUBLISH), which broadcasts it to its own
+ * subscribers and relays it to every other node (DELIVER) for local broadcast.
+ * Going through a single owner gives each room one order on every node.
+ * Each remote node has one link: a bounded queue drained by a single thread that
+ * posts batches to /internal/cluster/messages, so relay order is preserved.
+ * If the owner can't be reached, this node broadcasts (and logs) the message itself.
+ */
+@Service
+public class RoomMessageRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoomMessageRouter.class);
+    private static final String ROOM_TOPIC_PREFIX = "/topic/room/";
+    // Binary (WebSocketMessageCodec) copy of each room topic, for clients on the native /ws-native endpoint
+    public static final String BINARY_TOPIC_SUFFIX = "/bin";
+    public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+    private SimpMessagingTemplate messagingTemplate;
+    private ClusterMembershipService membershipService;
+    private ChatLogService chatLogService;
+    private RoomReplayBuffer replayBuffer;
+    private RoomOccupancyIndex occupancyIndex;
+    private ObjectMapper objectMapper;
+
+    @Value("${cluster.secret:}")
+    private String secret;
+
+    @Value("${cluster.link.queue-capacity:10000}")
+    private int linkQueueCapacity;
+
+    @Value("${cluster.link.batch-size:100}")
+    private int linkBatchSize;
+
+    @Value("${cluster.link.timeout-ms:2000}")
+    private long linkTimeoutMs;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(2))
+            .build();
+    private final Map<String, NodeLink> links = new ConcurrentHashMap<>();
+    private final Object[] roomLocks = new Object[256];
+    private volatile ConsistentHashRing linkedRing;
+
+    // Metrics
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder relayed = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder ownerFailovers = new LongAdder();
+
+    @Autowired
+    public RoomMessageRouter(SimpMessagingTemplate messagingTemplate, ClusterMembershipService membershipService,
+                             ChatLogService chatLogService, RoomReplayBuffer replayBuffer,
+                             RoomOccupancyIndex occupancyIndex, ObjectMapper objectMapper) {
+        this.messagingTemplate = messagingTemplate;
+        this.membershipService = membershipService;
+        this.chatLogService = chatLogService;
+        this.replayBuffer = replayBuffer;
+        this.occupancyIndex = occupancyIndex;
+        this.objectMapper = objectMapper;
+        
+        for (int i = 0; i < roomLocks.length; i++) {
+            roomLocks[i] = new Object();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        links.values().forEach(NodeLink::close);
+        links.clear();
+    }
+
+    /**
+     * Broadcast a message to everyone subscribed to the room, on any node
+     */
+    public void publish(String roomId, WebSocketMessage message) {
+        String owner = membershipService.getOwner(roomId);
+        if (owner == null || membershipService.isSelf(owner)) {
+            broadcast(roomId, message);
+        } else {
+            forwarded.increment();
+            link(owner).send(new ClusterEnvelope(ClusterEnvelope.Type.PUBLISH, roomId, message));
+        }
+    }
+
+    /**
+     * Handle a batch relayed by another node
+     */
+    public void receive(List<ClusterEnvelope> envelopes) {
+        for (ClusterEnvelope envelope : envelopes) {
+            received.increment();
+            if (envelope.getType() == ClusterEnvelope.Type.PUBLISH) {
+                // Owner side; also taken during a rebalance when the sender's ring was stale
+                broadcast(envelope.getRoomId(), envelope.getMessage());
+            } else {
+                deliverLocally(envelope.getRoomId(), envelope.getMessage());
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("forwarded", forwarded.sum());
+        stats.put("relayed", relayed.sum());
+        stats.put("received", received.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("ownerFailovers", ownerFailovers.sum());
+        Map<String, Integer> queued = new HashMap<>();
+        links.forEach((node, link) -> queued.put(node, link.queue.size()));
+        stats.put("queuedPerNode", queued);
+        return stats;
+    }
+
+    // This node is (acting as) the owner: log, deliver here and relay to the others
+    private void broadcast(String roomId, WebSocketMessage message) {
+        checkRing();
+        
+        // One lock stripe per room: sequence order = log order = delivery order
+        synchronized (roomLocks[Math.floorMod(roomId.hashCode(), roomLocks.length)]) {
+            message.setSeq(chatLogService.append(roomId, message));
+            deliverLocally(roomId, message);
+            if (!membershipService.isEnabled()) {
+                return;
+            }
+            
+            ClusterEnvelope envelope = new ClusterEnvelope(ClusterEnvelope.Type.DELIVER, roomId, message);
+            for (String node : membershipService.getRing().getNodes()) {
+                if (!membershipService.isSelf(node)) {
+                    relayed.increment();
+                    link(node).send(envelope);
+                }
+            }
+        }
+    }
+
+    // Each representation is encoded once here; the broker shares the bytes across subscribers
+    private void deliverLocally(String roomId, WebSocketMessage message) {
+        replayBuffer.record(roomId, message);
+        
+        String destination = ROOM_TOPIC_PREFIX + roomId;
+        try {
+            send(destination, objectMapper.writeValueAsBytes(message), MimeTypeUtils.APPLICATION_JSON);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Error encoding room message", e);
+        }
+        
+        String binaryDestination = destination + BINARY_TOPIC_SUFFIX;
+        if (occupancyIndex.hasBinarySubscribers(roomId)) {
+            send(binaryDestination, WebSocketMessageCodec.encode(message), MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        }
+    }
+
+    private void send(String destination, byte[] payload, MimeType contentType) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(contentType);
+        accessor.setLeaveMutable(true);
+        messagingTemplate.send(destination, MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+    }
+
+    private NodeLink link(String node) {
+        checkRing();
+        return links.computeIfAbsent(node, NodeLink::new);
+    }
+
+    private void checkRing() {
+        ConsistentHashRing ring = membershipService.getRing();
+        if (ring == linkedRing) {
+            return;
+        }
+        synchronized (this) {
+            if (ring == linkedRing) {
+                return;
+            }
+            // Membership changed: close links to nodes that left, and drop sequence blocks
+            // of rooms that may be owned elsewhere in the meantime
+            linkedRing = ring;
+            links.entrySet().removeIf(entry -> {
+                if (!ring.getNodes().contains(entry.getKey())) {
+                    entry.getValue().close();
+                    return true;
+                }
+                return false;
+            });
+            chatLogService.resetSequences();
+        }
+    }
+
+    /**
+     * Ordered, batched connection to one remote node
+     */
+    private class NodeLink implements Runnable {
+
+        private final String node;
+        private final BlockingQueue<ClusterEnvelope> queue;
+        private final Thread thread;
+        private volatile boolean closed;
+
+        NodeLink(String node) {
+            this.node = node;
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, linkQueueCapacity));
+            this.thread = new Thread(this, "cluster-link-" + node.replaceAll("^https?://", ""));
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        void send(ClusterEnvelope envelope) {
+            if (closed || !queue.offer(envelope)) {
+                fail(List.of(envelope));
+            }
+        }
+
+        void close() {
+            closed = true;
+            thread.interrupt();
+        }
+
+        @Override
+        public void run() {
+            List<ClusterEnvelope> batch = new ArrayList<>(linkBatchSize);
+            while (!closed) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    break;
+                }
+                queue.drainTo(batch, Math.max(0, linkBatchSize - 1));
+                try {
+                    post(batch);
+                } catch (InterruptedException e) {
+                    fail(batch);
+                    break;
+                } catch (Exception e) {
+                    logger.warn("Relay of {} messages to {} failed: {}", batch.size(), node, e.getMessage());
+                    fail(batch);
+                }
+                batch.clear();
+            }
+            
+            // Anything still queued when the link closes
+            List<ClusterEnvelope> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            fail(remaining);
+        }
+
+        private void post(List<ClusterEnvelope> batch) throws Exception {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(node + "/internal/cluster/messages"))
+                    .timeout(Duration.ofMillis(linkTimeoutMs))
+                    .header("Content-Type", "application/json")
+                    .header(SECRET_HEADER, secret)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(batch)))
+                    .build();
+            HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() / 100 != 2) {
+                throw new RuntimeException("HTTP " + response.statusCode());
+            }
+        }
+
+        // Undeliverable: broadcast PUBLISHes ourselves rather than lose them, drop DELIVERs
+        private void fail(List<ClusterEnvelope> envelopes) {
+            for (ClusterEnvelope envelope : envelopes) {
+                if (envelope.getType() == ClusterEnvelope.Type.PUBLISH) {
+                    ownerFailovers.increment();
+                    broadcast(envelope.getRoomId(), envelope.getMessage());
+                } else {
+                    dropped.increment();
+                }
+            }
+        }
+    }
+}
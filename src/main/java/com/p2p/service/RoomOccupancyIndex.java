@@ -0,0 +1,340 @@
+package com.p2p.service;
+
+import com.p2p.model.PresenceDelta;
+import com.p2p.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Who is in which room right now on this node, kept purely in memory from STOMP events.
+ *
+ * A session is in a room while it is subscribed to the room topic (JSON or binary);
+ * a user is in a room while at least one of their sessions is. Occupancy counts are
+ * a map lookup, and every user joining or leaving a room is pushed as a
+ * {@link PresenceDelta} to /topic/room/{roomId}/presence. Subscriptions to the binary
+ * topic are counted per room too, so a broadcast can skip encoding it when nobody wants it.
+ */
+@Service
+public class RoomOccupancyIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoomOccupancyIndex.class);
+    private static final String ROOM_TOPIC_PREFIX = "/topic/room/";
+    public static final String PRESENCE_TOPIC_SUFFIX = "/presence";
+
+    private SimpMessagingTemplate messagingTemplate;
+
+    private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+    private final Map<String, RoomOccupancy> rooms = new ConcurrentHashMap<>();
+    // Room id -> subscriptions to the room's binary topic
+    private final Map<String, Integer> binarySubscribers = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> userRooms = new ConcurrentHashMap<>();
+    // User id -> connected user, so peers can be addressed by id (e.g. for signaling)
+    private final Map<String, ConnectedUser> connectedUsers = new ConcurrentHashMap<>();
+    // Shared by all rooms so versions stay increasing even after a room empties and is dropped
+    private final AtomicLong version = new AtomicLong();
+
+    @Autowired
+    public RoomOccupancyIndex(SimpMessagingTemplate messagingTemplate) {
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    public int getOccupancy(String roomId) {
+        RoomOccupancy occupancy = rooms.get(roomId);
+        return occupancy != null ? occupancy.users.size() : 0;
+    }
+
+    public boolean isPresent(String roomId, String username) {
+        RoomOccupancy occupancy = rooms.get(roomId);
+        return occupancy != null && occupancy.users.containsKey(username);
+    }
+
+    /**
+     * Whether any session on this node is subscribed to the room's binary topic
+     */
+    public boolean hasBinarySubscribers(String roomId) {
+        return binarySubscribers.containsKey(roomId);
+    }
+
+    /**
+     * Username of a user with at least one session on this node, or null
+     */
+    public String getConnectedUsername(String userId) {
+        ConnectedUser user = userId != null ? connectedUsers.get(userId) : null;
+        return user != null ? user.username : null;
+    }
+
+    public Set<String> getRoomsOf(String username) {
+        Set<String> joined = userRooms.get(username);
+        return joined != null ? Collections.unmodifiableSet(joined) : Set.of();
+    }
+
+    /**
+     * Consistent view of one room: apply presence deltas with a higher version on top of it
+     */
+    public Map<String, Object> getSnapshot(String roomId) {
+        Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("roomId", roomId);
+        snapshot.put("occupancy", 0);
+        snapshot.put("sessions", 0);
+        snapshot.put("users", List.of());
+        snapshot.put("version", version.get());
+        rooms.computeIfPresent(roomId, (id, occupancy) -> {
+            snapshot.put("occupancy", occupancy.users.size());
+            snapshot.put("sessions", occupancy.sessions);
+            snapshot.put("users", new ArrayList<>(occupancy.users.keySet()));
+            snapshot.put("version", occupancy.version);
+            return occupancy;
+        });
+        return snapshot;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("sessions", sessions.size());
+        stats.put("occupiedRooms", rooms.size());
+        stats.put("binaryRooms", binarySubscribers.size());
+        stats.put("usersInRooms", userRooms.size());
+        stats.put("connectedUsers", connectedUsers.size());
+        stats.put("version", version.get());
+        return stats;
+    }
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        String sessionId = StompHeaderAccessor.wrap(event.getMessage()).getSessionId();
+        Principal user = event.getUser();
+        if (sessionId == null || user == null) {
+            return;
+        }
+
+        String userId = user instanceof Authentication && ((Authentication) user).getPrincipal() instanceof User
+                ? ((User) ((Authentication) user).getPrincipal()).getId()
+                : null;
+        if (sessions.putIfAbsent(sessionId, new SessionState(user.getName(), userId)) == null && userId != null) {
+            connectedUsers.compute(userId, (id, connected) -> {
+                if (connected == null) {
+                    connected = new ConnectedUser(user.getName());
+                }
+                connected.sessions++;
+                return connected;
+            });
+        }
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String destination = accessor.getDestination();
+        if (roomOf(destination) == null || accessor.getSessionId() == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+
+        // Only sessions seen connecting are tracked, so a subscribe racing a disconnect can't resurrect one
+        SessionState session = sessions.get(accessor.getSessionId());
+        if (session == null) {
+            return;
+        }
+
+        // Room updates happen under the session lock so they can't interleave with this session's disconnect
+        synchronized (session) {
+            if (session.closed) {
+                return;
+            }
+            String previous = session.subscriptions.put(accessor.getSubscriptionId(), destination);
+            if (previous != null) {
+                unsubscribe(session, previous);
+            }
+            subscribe(session, destination);
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        SessionState session = accessor.getSessionId() != null ? sessions.get(accessor.getSessionId()) : null;
+        if (session == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+
+        synchronized (session) {
+            String destination = session.subscriptions.remove(accessor.getSubscriptionId());
+            if (destination != null) {
+                unsubscribe(session, destination);
+            }
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        SessionState session = sessions.remove(event.getSessionId());
+        if (session == null) {
+            return;
+        }
+
+        if (session.userId != null) {
+            connectedUsers.computeIfPresent(session.userId,
+                    (id, connected) -> --connected.sessions > 0 ? connected : null);
+        }
+
+        synchronized (session) {
+            session.closed = true;
+            for (String destination : session.subscriptions.values()) {
+                if (isBinary(destination)) {
+                    releaseBinary(roomOf(destination));
+                }
+            }
+            for (String roomId : session.roomRefs.keySet()) {
+                leave(roomId, session.username);
+            }
+            session.subscriptions.clear();
+            session.roomRefs.clear();
+        }
+    }
+
+    // Callers hold the session lock
+    private void subscribe(SessionState session, String destination) {
+        String roomId = roomOf(destination);
+        if (isBinary(destination)) {
+            binarySubscribers.merge(roomId, 1, Integer::sum);
+        }
+        if (session.acquire(roomId)) {
+            enter(roomId, session.username);
+        }
+    }
+
+    private void unsubscribe(SessionState session, String destination) {
+        String roomId = roomOf(destination);
+        if (isBinary(destination)) {
+            releaseBinary(roomId);
+        }
+        if (session.release(roomId)) {
+            leave(roomId, session.username);
+        }
+    }
+
+    private void releaseBinary(String roomId) {
+        binarySubscribers.compute(roomId, (id, count) -> count == null || count <= 1 ? null : count - 1);
+    }
+
+    private void enter(String roomId, String username) {
+        rooms.compute(roomId, (id, occupancy) -> {
+            if (occupancy == null) {
+                occupancy = new RoomOccupancy();
+            }
+            occupancy.sessions++;
+            if (occupancy.users.merge(username, 1, Integer::sum) == 1) {
+                userRooms.computeIfAbsent(username, u -> ConcurrentHashMap.newKeySet()).add(roomId);
+                occupancy.version = version.incrementAndGet();
+                publish(new PresenceDelta(roomId, username, PresenceDelta.Type.JOINED,
+                        occupancy.users.size(), occupancy.version));
+            }
+            return occupancy;
+        });
+    }
+
+    private void leave(String roomId, String username) {
+        rooms.computeIfPresent(roomId, (id, occupancy) -> {
+            occupancy.sessions--;
+            Integer remaining = occupancy.users.computeIfPresent(username, (u, count) -> count > 1 ? count - 1 : null);
+            if (remaining == null) {
+                userRooms.computeIfPresent(username, (u, joined) -> {
+                    joined.remove(roomId);
+                    return joined.isEmpty() ? null : joined;
+                });
+                occupancy.version = version.incrementAndGet();
+                publish(new PresenceDelta(roomId, username, PresenceDelta.Type.LEFT,
+                        occupancy.users.size(), occupancy.version));
+            }
+            return occupancy.sessions > 0 ? occupancy : null;
+        });
+    }
+
+    // Sent while the room entry is locked so deltas for one room leave in version order;
+    // this only enqueues on the broker channel
+    private void publish(PresenceDelta delta) {
+        try {
+            messagingTemplate.convertAndSend(ROOM_TOPIC_PREFIX + delta.getRoomId() + PRESENCE_TOPIC_SUFFIX, delta);
+        } catch (Exception e) {
+            logger.warn("Error publishing presence for room {}: {}", delta.getRoomId(), e.getMessage());
+        }
+    }
+
+    private static boolean isBinary(String destination) {
+        return destination.endsWith(RoomMessageRouter.BINARY_TOPIC_SUFFIX);
+    }
+
+    // "/topic/room/{id}" and "/topic/room/{id}/bin" put a session in the room; other room sub-topics don't
+    private static String roomOf(String destination) {
+        if (destination == null || !destination.startsWith(ROOM_TOPIC_PREFIX)) {
+            return null;
+        }
+        String rest = destination.substring(ROOM_TOPIC_PREFIX.length());
+        int slash = rest.indexOf('/');
+        if (slash < 0) {
+            return rest.isEmpty() ? null : rest;
+        }
+        String suffix = rest.substring(slash);
+        return slash > 0 && suffix.equals(RoomMessageRouter.BINARY_TOPIC_SUFFIX) ? rest.substring(0, slash) : null;
+    }
+
+    private static class RoomOccupancy {
+        // Username -> sessions of that user in the room
+        private final Map<String, Integer> users = new ConcurrentHashMap<>();
+        private int sessions;
+        private long version;
+    }
+
+    private static class ConnectedUser {
+        private final String username;
+        private int sessions;
+
+        private ConnectedUser(String username) {
+            this.username = username;
+        }
+    }
+
+    private static class SessionState {
+        private final String username;
+        private final String userId;
+        // Subscription id -> room topic (JSON or binary)
+        private final Map<String, String> subscriptions = new HashMap<>();
+        // Room id -> subscriptions of this session to that room
+        private final Map<String, Integer> roomRefs = new HashMap<>();
+        private boolean closed;
+
+        private SessionState(String username, String userId) {
+            this.username = username;
+            this.userId = userId;
+        }
+
+        // True when this is the session's first subscription to the room
+        private boolean acquire(String roomId) {
+            return roomRefs.merge(roomId, 1, Integer::sum) == 1;
+        }
+
+        // True when this was the session's last subscription to the room
+        private boolean release(String roomId) {
+            return roomRefs.computeIfPresent(roomId, (id, refs) -> refs > 1 ? refs - 1 : null) == null;
+        }
+    }
+}
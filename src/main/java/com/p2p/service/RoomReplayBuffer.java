@@ -0,0 +1,121 @@
+package com.p2p.service;
+
+import com.p2p.model.WebSocketMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The last few sequenced messages of each room, as delivered on this node.
+ *
+ * A client that reconnects tells us the last sequence number it saw and gets just
+ * the gap from here. If the gap is older than the buffer (or this node hasn't seen
+ * the room yet) the client has to resync from the REST endpoints instead. Rooms with
+ * no new messages for {@code chat.replay.idle-ms} are dropped, so quiet and deleted
+ * rooms don't hold their buffers forever.
+ */
+@Service
+public class RoomReplayBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoomReplayBuffer.class);
+
+    @Value("${chat.replay.buffer-size:256}")
+    private int bufferSize;
+
+    @Value("${chat.replay.idle-ms:600000}")
+    private long idleMs;
+
+    private final Map<String, RoomBuffer> rooms = new ConcurrentHashMap<>();
+
+    /**
+     * Remember a message; must be called in sequence order per room
+     */
+    public void record(String roomId, WebSocketMessage message) {
+        if (message.getSeq() <= 0) {
+            return;
+        }
+        // Under the map entry's lock, so eviction can't drop a buffer as a message goes in
+        rooms.compute(roomId, (id, buffer) -> {
+            RoomBuffer current = buffer != null ? buffer : new RoomBuffer();
+            current.add(message);
+            return current;
+        });
+    }
+
+    /**
+     * Messages after {@code lastSeq}, oldest first; empty if the client is up to date,
+     * null if some of the gap is no longer buffered
+     */
+    public List<WebSocketMessage> getMessagesAfter(String roomId, long lastSeq) {
+        RoomBuffer buffer = rooms.get(roomId);
+        return buffer != null ? buffer.after(lastSeq) : null;
+    }
+
+    public long getLatestSeq(String roomId) {
+        RoomBuffer buffer = rooms.get(roomId);
+        return buffer != null ? buffer.latestSeq() : 0;
+    }
+
+    /**
+     * Drop rooms that had no messages for idle-ms; resuming clients then resync over REST
+     */
+    @Scheduled(fixedDelayString = "${chat.replay.sweep-ms:60000}")
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleMs;
+        int before = rooms.size();
+        for (String roomId : rooms.keySet()) {
+            rooms.computeIfPresent(roomId, (id, buffer) -> buffer.lastAddedAt < cutoff ? null : buffer);
+        }
+        if (rooms.size() < before) {
+            logger.debug("Evicted {} idle replay buffers", before - rooms.size());
+        }
+    }
+
+    private class RoomBuffer {
+
+        private final ArrayDeque<WebSocketMessage> messages = new ArrayDeque<>();
+        private volatile long lastAddedAt = System.currentTimeMillis();
+
+        synchronized void add(WebSocketMessage message) {
+            lastAddedAt = System.currentTimeMillis();
+            WebSocketMessage last = messages.peekLast();
+            if (last != null && message.getSeq() <= last.getSeq()) {
+                return; // Duplicate relay
+            }
+            if (last != null && message.getSeq() != last.getSeq() + 1) {
+                messages.clear(); // Missed some (e.g. dropped relay): only the new run is contiguous
+            }
+            messages.addLast(message);
+            while (messages.size() > bufferSize) {
+                messages.pollFirst();
+            }
+        }
+
+        synchronized List<WebSocketMessage> after(long lastSeq) {
+            WebSocketMessage first = messages.peekFirst();
+            if (first == null || lastSeq < first.getSeq() - 1) {
+                return null;
+            }
+            List<WebSocketMessage> gap = new ArrayList<>();
+            for (WebSocketMessage message : messages) {
+                if (message.getSeq() > lastSeq) {
+                    gap.add(message);
+                }
+            }
+            return gap;
+        }
+
+        synchronized long latestSeq() {
+            WebSocketMessage last = messages.peekLast();
+            return last != null ? last.getSeq() : 0;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.p2p.service;
 
 import com.p2p.model.Room;
 import com.p2p.repository.RoomRepository;
+import com.p2p.security.AccessControlService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -17,10 +18,12 @@ public class RoomService {
     private static final Logger logger = LoggerFactory.getLogger(RoomService.class);
     
     private RoomRepository roomRepository;
+    private AccessControlService accessControlService;
     
     @Autowired
-    public RoomService(RoomRepository roomRepository) {
+    public RoomService(RoomRepository roomRepository, AccessControlService accessControlService) {
         this.roomRepository = roomRepository;
+        this.accessControlService = accessControlService;
     }
     
     public Room createRoom(String name, String creatorId) {
@@ -32,7 +35,9 @@ public class RoomService {
         room.setRoomLink(UUID.randomUUID().toString());
         
         logger.debug("Creating room: {} with creator: {}", name, creatorId);
-        return roomRepository.save(room);
+        room = roomRepository.save(room);
+        accessControlService.onMembershipChanged(room.getId(), creatorId);
+        return room;
     }
     
     public Room getRoomById(String roomId) {
@@ -70,6 +75,7 @@ public class RoomService {
             logger.debug("Adding user {} to room {}", userId, room.getId());
             room.getMembers().add(userId);
             room = roomRepository.save(room);
+            accessControlService.onMembershipChanged(room.getId(), userId);
         } else {
             logger.debug("User {} is already a member of room {}", userId, room.getId());
         }
@@ -80,25 +86,33 @@ public class RoomService {
     public Room addMemberToRoom(String roomId, String userId) {
         Room room = getRoomById(roomId);
         room.addMember(userId);
-        return roomRepository.save(room);
+        room = roomRepository.save(room);
+        accessControlService.onMembershipChanged(roomId, userId);
+        return room;
     }
     
     public Room removeMemberFromRoom(String roomId, String userId) {
         Room room = getRoomById(roomId);
         room.removeMember(userId);
-        return roomRepository.save(room);
+        room = roomRepository.save(room);
+        accessControlService.onMembershipChanged(roomId, userId);
+        return room;
     }
     
     public Room addFileToRoom(String roomId, String fileId) {
         Room room = getRoomById(roomId);
         room.addFile(fileId);
-        return roomRepository.save(room);
+        room = roomRepository.save(room);
+        accessControlService.onRoomFilesChanged(fileId);
+        return room;
     }
     
     public Room removeFileFromRoom(String roomId, String fileId) {
         Room room = getRoomById(roomId);
         room.removeFile(fileId);
-        return roomRepository.save(room);
+        room = roomRepository.save(room);
+        accessControlService.onRoomFilesChanged(fileId);
+        return room;
     }
     
     public String generateRoomLink(String roomId) {
@@ -111,5 +125,6 @@ public class RoomService {
     
     public void deleteRoom(String roomId) {
         roomRepository.deleteById(roomId);
+        accessControlService.onRoomDeleted(roomId);
     }
 }
\ No newline at end of file
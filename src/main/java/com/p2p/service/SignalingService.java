@@ -0,0 +1,353 @@
+package com.p2p.service;
+
+import com.p2p.model.FileOffer;
+import com.p2p.model.PeerTransfer;
+import com.p2p.model.SignalMessage;
+import com.p2p.security.AccessControlService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Signaling relay for WebRTC file transfers between room members.
+ *
+ * The server only forwards small control messages (file offers, SDP, ICE candidates,
+ * state reports) between users it can see in the room on this node; the file itself
+ * travels over a data channel between the two browsers. Offers and transfers are kept
+ * in memory and dropped once they expire or finish.
+ */
+@Service
+public class SignalingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SignalingService.class);
+    public static final String SIGNAL_QUEUE = "/queue/signal";
+    private static final String ROOM_TOPIC_PREFIX = "/topic/room/";
+    private static final String SIGNAL_TOPIC_SUFFIX = "/signal";
+
+    private SimpMessagingTemplate messagingTemplate;
+    private RoomOccupancyIndex roomOccupancyIndex;
+    private AccessControlService accessControlService;
+    private PeerRankingService peerRankingService;
+
+    @Value("${signaling.offer-ttl-ms:600000}")
+    private long offerTtlMs;
+
+    @Value("${signaling.transfer-ttl-ms:3600000}")
+    private long transferTtlMs;
+
+    @Value("${signaling.max-transfers:100000}")
+    private int maxTransfers;
+
+    @Value("${signaling.prune-interval-ms:60000}")
+    private long pruneIntervalMs;
+
+    private final Map<String, FileOffer> offers = new ConcurrentHashMap<>();
+    private final Map<String, PeerTransfer> transfers = new ConcurrentHashMap<>();
+    private volatile long lastPrune = System.currentTimeMillis();
+
+    private final LongAdder relayed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    @Autowired
+    public SignalingService(SimpMessagingTemplate messagingTemplate, RoomOccupancyIndex roomOccupancyIndex,
+                            AccessControlService accessControlService, PeerRankingService peerRankingService) {
+        this.messagingTemplate = messagingTemplate;
+        this.roomOccupancyIndex = roomOccupancyIndex;
+        this.accessControlService = accessControlService;
+        this.peerRankingService = peerRankingService;
+    }
+
+    public void handle(String roomId, SignalMessage message, Principal principal) {
+        String userId = accessControlService.resolveUserId(principal);
+        if (message.getType() == null || !accessControlService.isRoomMember(userId, roomId)) {
+            reject(principal.getName(), roomId, message.getTransferId(), "Not allowed to signal in this room");
+            return;
+        }
+
+        message.setRoomId(roomId);
+        message.setFromUserId(userId);
+        message.setFromUsername(principal.getName());
+        pruneIfDue();
+
+        switch (message.getType()) {
+            case FILE_OFFER:
+                offerFile(message, principal.getName());
+                break;
+            case FILE_ACCEPT:
+                acceptOffer(message, principal.getName());
+                break;
+            case OFFER:
+            case ANSWER:
+            case ICE_CANDIDATE:
+                relay(message, principal.getName());
+                break;
+            case TRANSFER_STATE:
+                updateState(message, principal.getName());
+                break;
+            default:
+                reject(principal.getName(), roomId, message.getTransferId(), "Unsupported signal type");
+        }
+    }
+
+    public PeerTransfer getTransfer(String transferId) {
+        return transferId != null ? transfers.get(transferId) : null;
+    }
+
+    /**
+     * The receiver's own measurement of a transfer, for the sender's ranking. Each transfer
+     * is counted once, from here or from the receiver's end-state report, whichever comes first.
+     */
+    public boolean reportOutcome(String transferId, String receiverId, long bytes, long durationMs, long rttMs, boolean success) {
+        PeerTransfer transfer = getTransfer(transferId);
+        if (transfer == null || !transfer.getReceiverId().equals(receiverId) || !claimOutcome(transfer)) {
+            return false;
+        }
+        peerRankingService.recordTransfer(transfer.getSenderId(), Math.min(bytes, transfer.getFileSize()),
+                durationMs, rttMs, success);
+        return true;
+    }
+
+    /**
+     * Transfers the user sends or receives in a room, most recent first
+     */
+    public List<PeerTransfer> getTransfers(String userId, String roomId) {
+        List<PeerTransfer> result = new ArrayList<>();
+        for (PeerTransfer transfer : transfers.values()) {
+            if (transfer.involves(userId) && (roomId == null || roomId.equals(transfer.getRoomId()))) {
+                result.add(transfer);
+            }
+        }
+        result.sort((a, b) -> Long.compare(b.getCreatedAt(), a.getCreatedAt()));
+        return result;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("openOffers", offers.size());
+        stats.put("transfers", transfers.size());
+        stats.put("relayed", relayed.sum());
+        stats.put("rejected", rejected.sum());
+        return stats;
+    }
+
+    private void offerFile(SignalMessage message, String username) {
+        FileOffer requested = message.getOffer();
+        if (requested == null || requested.getFilename() == null || requested.getFileSize() < 0) {
+            reject(username, message.getRoomId(), null, "File offer needs a filename and size");
+            return;
+        }
+        if (requested.getFileId() != null && !accessControlService.canReadFile(message.getFromUserId(), requested.getFileId())) {
+            reject(username, message.getRoomId(), null, "Not allowed to offer this file");
+            return;
+        }
+
+        FileOffer offer = new FileOffer();
+        offer.setOfferId(UUID.randomUUID().toString());
+        offer.setRoomId(message.getRoomId());
+        offer.setSenderId(message.getFromUserId());
+        offer.setSenderUsername(username);
+        offer.setFileId(requested.getFileId());
+        offer.setFilename(requested.getFilename());
+        offer.setFileSize(requested.getFileSize());
+        offer.setFileType(requested.getFileType());
+        offer.setCreatedAt(System.currentTimeMillis());
+        offers.put(offer.getOfferId(), offer);
+
+        // payload is passed through so the sender can match the offer id to its local file
+        message.setOfferId(offer.getOfferId());
+        message.setOffer(offer);
+        messagingTemplate.convertAndSend(ROOM_TOPIC_PREFIX + message.getRoomId() + SIGNAL_TOPIC_SUFFIX, message);
+        relayed.increment();
+        logger.debug("User {} offered {} in room {}", username, offer.getFilename(), offer.getRoomId());
+    }
+
+    private void acceptOffer(SignalMessage message, String username) {
+        FileOffer offer = message.getOfferId() != null ? offers.get(message.getOfferId()) : null;
+        if (offer == null || !offer.getRoomId().equals(message.getRoomId())
+                || offer.getCreatedAt() + offerTtlMs < System.currentTimeMillis()) {
+            reject(username, message.getRoomId(), null, "File offer is no longer available");
+            return;
+        }
+        if (offer.getSenderId().equals(message.getFromUserId())) {
+            reject(username, message.getRoomId(), null, "Cannot accept your own offer");
+            return;
+        }
+        String senderUsername = connectedInRoom(offer.getSenderId(), offer.getRoomId());
+        if (senderUsername == null) {
+            reject(username, message.getRoomId(), null, "Sender is not connected");
+            return;
+        }
+        if (transfers.size() >= maxTransfers) {
+            reject(username, message.getRoomId(), null, "Too many active transfers, try again later");
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        PeerTransfer transfer = new PeerTransfer();
+        transfer.setTransferId(UUID.randomUUID().toString());
+        transfer.setOfferId(offer.getOfferId());
+        transfer.setRoomId(offer.getRoomId());
+        transfer.setSenderId(offer.getSenderId());
+        transfer.setReceiverId(message.getFromUserId());
+        transfer.setFilename(offer.getFilename());
+        transfer.setFileSize(offer.getFileSize());
+        transfer.setState(PeerTransfer.State.ACCEPTED);
+        transfer.setCreatedAt(now);
+        transfer.setUpdatedAt(now);
+        transfers.put(transfer.getTransferId(), transfer);
+
+        // Both sides learn the transfer id; the sender then starts the WebRTC offer
+        message.setTransferId(transfer.getTransferId());
+        message.setTransfer(transfer);
+        message.setPayload(null);
+        messagingTemplate.convertAndSendToUser(senderUsername, SIGNAL_QUEUE, message);
+        messagingTemplate.convertAndSendToUser(username, SIGNAL_QUEUE, message);
+        relayed.increment();
+    }
+
+    private void relay(SignalMessage message, String username) {
+        PeerTransfer transfer = activeTransfer(message, username);
+        if (transfer == null) {
+            return;
+        }
+        String peerId = message.getFromUserId().equals(transfer.getSenderId())
+                ? transfer.getReceiverId()
+                : transfer.getSenderId();
+        String peerUsername = connectedInRoom(peerId, transfer.getRoomId());
+        if (peerUsername == null) {
+            reject(username, message.getRoomId(), transfer.getTransferId(), "Peer is not connected");
+            return;
+        }
+
+        if (message.getType() == SignalMessage.Type.OFFER) {
+            synchronized (transfer) {
+                if (transfer.getState() == PeerTransfer.State.ACCEPTED) {
+                    transfer.setState(PeerTransfer.State.CONNECTING);
+                    transfer.setUpdatedAt(System.currentTimeMillis());
+                }
+            }
+        }
+
+        message.setOffer(null);
+        message.setTransfer(null);
+        messagingTemplate.convertAndSendToUser(peerUsername, SIGNAL_QUEUE, message);
+        relayed.increment();
+    }
+
+    private void updateState(SignalMessage message, String username) {
+        PeerTransfer transfer = activeTransfer(message, username);
+        if (transfer == null) {
+            return;
+        }
+        PeerTransfer.State state = message.getState();
+        if (state == null || state == PeerTransfer.State.ACCEPTED) {
+            reject(username, message.getRoomId(), transfer.getTransferId(), "Invalid transfer state");
+            return;
+        }
+
+        String peerId = message.getFromUserId().equals(transfer.getSenderId())
+                ? transfer.getReceiverId()
+                : transfer.getSenderId();
+        String peerUsername = roomOccupancyIndex.getConnectedUsername(peerId);
+
+        synchronized (transfer) {
+            // Whichever side reports an end state first settles the transfer
+            if (transfer.getState().isTerminal()) {
+                return;
+            }
+            transfer.setState(state);
+            transfer.setBytesTransferred(Math.max(transfer.getBytesTransferred(),
+                    Math.min(message.getBytesTransferred(), transfer.getFileSize())));
+            transfer.setUpdatedAt(System.currentTimeMillis());
+            if (state == PeerTransfer.State.TRANSFERRING && transfer.getStartedAt() == 0) {
+                transfer.setStartedAt(transfer.getUpdatedAt());
+            }
+
+            message.setTransfer(transfer);
+            message.setPayload(null);
+            if (peerUsername != null) {
+                messagingTemplate.convertAndSendToUser(peerUsername, SIGNAL_QUEUE, message);
+            }
+        }
+        relayed.increment();
+        if (state.isTerminal()) {
+            logger.debug("Transfer {} of {} ended: {}", transfer.getTransferId(), transfer.getFilename(), state);
+            // Only the receiver knows whether the bytes arrived; the sender can't vouch for itself
+            if (message.getFromUserId().equals(transfer.getReceiverId())) {
+                recordOutcome(transfer);
+            }
+        }
+    }
+
+    // Completed and failed transfers feed the sender's ranking; cancellations say nothing about it
+    private void recordOutcome(PeerTransfer transfer) {
+        if (transfer.getState() == PeerTransfer.State.CANCELLED || !claimOutcome(transfer)) {
+            return;
+        }
+        boolean completed = transfer.getState() == PeerTransfer.State.COMPLETED;
+        long start = transfer.getStartedAt() > 0 ? transfer.getStartedAt() : transfer.getCreatedAt();
+        peerRankingService.recordTransfer(transfer.getSenderId(),
+                completed ? transfer.getFileSize() : transfer.getBytesTransferred(),
+                transfer.getUpdatedAt() - start, 0, completed);
+    }
+
+    private boolean claimOutcome(PeerTransfer transfer) {
+        synchronized (transfer) {
+            if (transfer.isOutcomeRecorded()) {
+                return false;
+            }
+            transfer.setOutcomeRecorded(true);
+            return true;
+        }
+    }
+
+    // The transfer a message refers to, if the caller is part of it and it hasn't ended
+    private PeerTransfer activeTransfer(SignalMessage message, String username) {
+        PeerTransfer transfer = getTransfer(message.getTransferId());
+        if (transfer == null || !transfer.involves(message.getFromUserId())
+                || !transfer.getRoomId().equals(message.getRoomId())) {
+            reject(username, message.getRoomId(), message.getTransferId(), "Unknown transfer");
+            return null;
+        }
+        if (transfer.getState().isTerminal()) {
+            reject(username, message.getRoomId(), transfer.getTransferId(), "Transfer already " + transfer.getState());
+            return null;
+        }
+        return transfer;
+    }
+
+    // Username of a user who is in the room on this node right now, or null
+    private String connectedInRoom(String userId, String roomId) {
+        String username = roomOccupancyIndex.getConnectedUsername(userId);
+        return username != null && roomOccupancyIndex.isPresent(roomId, username) ? username : null;
+    }
+
+    private void reject(String username, String roomId, String transferId, String error) {
+        rejected.increment();
+        logger.debug("Signal from {} in room {} rejected: {}", username, roomId, error);
+        messagingTemplate.convertAndSendToUser(username, SIGNAL_QUEUE, SignalMessage.error(roomId, transferId, error));
+    }
+
+    private void pruneIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - lastPrune < pruneIntervalMs) {
+            return;
+        }
+        lastPrune = now;
+        offers.values().removeIf(offer -> offer.getCreatedAt() + offerTtlMs < now);
+        transfers.values().removeIf(transfer -> transfer.getUpdatedAt() + transferTtlMs < now
+                || (transfer.getState().isTerminal() && transfer.getUpdatedAt() + pruneIntervalMs < now));
+    }
+}
@@ -1,6 +1,7 @@
 package com.p2p.service;
 
 import com.p2p.model.Peer;
+import com.p2p.model.PeerDelta;
 import com.p2p.repository.PeerRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,10 +20,12 @@ public class SimplePeerService {
     private static final Logger logger = LoggerFactory.getLogger(SimplePeerService.class);
     
     private final PeerRepository peerRepository;
+    private final OnlinePeerSnapshot onlinePeerSnapshot;
     
     @Autowired
-    public SimplePeerService(PeerRepository peerRepository) {
+    public SimplePeerService(PeerRepository peerRepository, OnlinePeerSnapshot onlinePeerSnapshot) {
         this.peerRepository = peerRepository;
+        this.onlinePeerSnapshot = onlinePeerSnapshot;
     }
     
     /**
@@ -39,7 +42,9 @@ public class SimplePeerService {
                 existingPeer.setIpAddress(ipAddress);
                 existingPeer.setPort(port);
                 existingPeer.setOnline(true);
-                return peerRepository.save(existingPeer);
+                Peer savedPeer = peerRepository.save(existingPeer);
+                onlinePeerSnapshot.peerOnline(savedPeer);
+                return savedPeer;
             } else {
                 // Create new peer
                 Peer newPeer = new Peer();
@@ -47,7 +52,9 @@ public class SimplePeerService {
                 newPeer.setIpAddress(ipAddress);
                 newPeer.setPort(port);
                 newPeer.setOnline(true);
-                return peerRepository.save(newPeer);
+                Peer savedPeer = peerRepository.save(newPeer);
+                onlinePeerSnapshot.peerOnline(savedPeer);
+                return savedPeer;
             }
         } catch (Exception e) {
             logger.error("Error registering peer", e);
@@ -60,13 +67,20 @@ public class SimplePeerService {
      */
     public List<Peer> getOnlinePeers() {
         try {
-            return peerRepository.findByIsOnline(true);
+            return onlinePeerSnapshot.getOnlinePeers();
         } catch (Exception e) {
             logger.error("Error getting online peers", e);
             return new ArrayList<>();
         }
     }
     
+    /**
+     * Get the online peer changes since a snapshot version
+     */
+    public PeerDelta getOnlinePeerChanges(Long sinceVersion) {
+        return onlinePeerSnapshot.getChangesSince(sinceVersion);
+    }
+    
     /**
      * Set peer online status
      */
@@ -76,6 +90,7 @@ public class SimplePeerService {
             if (peer != null) {
                 peer.setOnline(isOnline);
                 peerRepository.save(peer);
+                onlinePeerSnapshot.peerStatusChanged(peer);
             }
         } catch (Exception e) {
             logger.error("Error setting peer status", e);
@@ -0,0 +1,377 @@
+package com.p2p.service;
+
+import com.p2p.model.File;
+import com.p2p.model.FileHashes;
+import com.p2p.model.Peer;
+import com.p2p.model.SwarmPeer;
+import com.p2p.model.SwarmView;
+import com.p2p.repository.FileRepository;
+import com.p2p.util.BlockHasher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Piece hashing and tracker for swarm downloads.
+ *
+ * Stored files are cut into fixed-size pieces whose SHA-256 hashes are kept in the
+ * file's {@link FileHashes}. Downloaders announce the pieces they hold and get back the online
+ * peers (from {@link OnlinePeerSnapshot}) with their bitfields, so they can fetch
+ * rarest-first from several peers and only come to the server for pieces too few
+ * peers have. The more members hold a file, the fewer pieces the server hands out.
+ * Swarm state lives in memory and is rebuilt by the next round of announces.
+ */
+@Service
+public class SwarmTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(SwarmTracker.class);
+
+    public static final String EVENT_STOPPED = "stopped";
+
+    private FileRepository fileRepository;
+    private ChunkStore chunkStore;
+    private FileHashStore fileHashStore;
+    private OnlinePeerSnapshot onlinePeerSnapshot;
+    private PeerAvailabilityIndex peerAvailabilityIndex;
+    private PeerRankingService peerRankingService;
+
+    @Value("${swarm.piece-size:262144}")
+    private int pieceSize;
+
+    @Value("${swarm.max-pieces:2048}")
+    private int maxPieces;
+
+    @Value("${swarm.announce-interval-ms:30000}")
+    private long announceIntervalMs;
+
+    @Value("${swarm.max-peers:50}")
+    private int maxPeers;
+
+    @Value("${swarm.min-peer-copies:2}")
+    private int minPeerCopies;
+
+    private final Map<String, Swarm> swarms = new ConcurrentHashMap<>();
+    private volatile long lastPrune = System.currentTimeMillis();
+
+    private final LongAdder announces = new LongAdder();
+    private final LongAdder serverPieces = new LongAdder();
+    private final LongAdder serverBytes = new LongAdder();
+    private final LongAdder reportedPeerBytes = new LongAdder();
+
+    @Autowired
+    public SwarmTracker(FileRepository fileRepository, OnlinePeerSnapshot onlinePeerSnapshot, ChunkStore chunkStore,
+                        PeerAvailabilityIndex peerAvailabilityIndex, PeerRankingService peerRankingService,
+                        FileHashStore fileHashStore) {
+        this.fileRepository = fileRepository;
+        this.onlinePeerSnapshot = onlinePeerSnapshot;
+        this.peerAvailabilityIndex = peerAvailabilityIndex;
+        this.peerRankingService = peerRankingService;
+        this.chunkStore = chunkStore;
+        this.fileHashStore = fileHashStore;
+    }
+
+    /**
+     * Hasher to feed the stored bytes of an upload through as they are written
+     */
+    public BlockHasher newPieceHasher(long length) {
+        return new BlockHasher(pieceSizeFor(length), null);
+    }
+
+    /**
+     * Set the piece size and count on the file and the piece hashes on its hashes, from a finished hasher
+     */
+    public void setPieces(File file, FileHashes hashes, BlockHasher hasher) {
+        List<String> pieceHashes = new ArrayList<>();
+        for (byte[] hash : hasher.finish()) {
+            pieceHashes.add(HexFormat.of().formatHex(hash));
+        }
+        file.setPieceSize(hasher.getBlockSize());
+        file.setPieceCount(pieceHashes.size());
+        hashes.setPieceHashes(pieceHashes);
+    }
+    
+    /**
+     * SHA-256 (hex) of one piece, for the X-Piece-SHA256 header
+     */
+    public String getPieceHash(File file, int index) {
+        return fileHashStore.getPieceHash(file.getId(), index);
+    }
+
+    /**
+     * Make sure the file has piece hashes, hashing it from disk once if it was uploaded before swarms existed
+     */
+    public File ensurePieces(File file) throws IOException {
+        if (file.hasPieces()) {
+            return file;
+        }
+        BlockHasher hasher = newPieceHasher(chunkStore.storedLength(file));
+        try (InputStream in = chunkStore.open(file).openAt(0)) {
+            byte[] buffer = new byte[hasher.getBlockSize()];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                hasher.update(buffer, 0, read);
+            }
+        }
+        FileHashes hashes = new FileHashes();
+        setPieces(file, hashes, hasher);
+        // Hashes first, so the file never claims pieces that aren't stored
+        fileHashStore.savePieces(file.getId(), hashes.getPieceHashes());
+        logger.debug("Hashed {} pieces for existing file {}", file.getPieceCount(), file.getId());
+        return fileRepository.save(file);
+    }
+
+    /**
+     * Record which pieces a user holds and return the swarm as that user should see it.
+     * An empty or missing bitfield means nothing yet; the "stopped" event leaves the swarm.
+     * {@code listenPort} is where the peer serves pieces, if not the port it registered from.
+     */
+    public SwarmView announce(File file, String userId, String bitfield, String event,
+                              int listenPort, long downloadedFromPeers) throws IOException {
+        ensurePieces(file);
+        int pieceCount = file.getPieceCount();
+        long now = System.currentTimeMillis();
+        pruneIfDue(now);
+        announces.increment();
+        if (downloadedFromPeers > 0) {
+            reportedPeerBytes.add(downloadedFromPeers);
+        }
+
+        BitSet have = EVENT_STOPPED.equals(event) ? new BitSet() : decodeBitfield(bitfield, pieceCount);
+
+        SwarmView view = new SwarmView();
+        view.setFileId(file.getId());
+        view.setLength(chunkStore.storedLength(file));
+        view.setPieceSize(file.getPieceSize());
+        view.setPieceHashes(fileHashStore.getPieceHashes(file.getId()));
+        view.setAnnounceIntervalMs(announceIntervalMs);
+
+        // Updated inside compute so pruning can't drop the swarm between lookup and update
+        Holding holding = new Holding(have, encodeBitfield(have, pieceCount), listenPort, now, pieceCount);
+        Swarm swarm = swarms.compute(file.getId(), (id, existing) -> {
+            Swarm current = existing != null ? existing : new Swarm(pieceCount);
+            synchronized (current) {
+                if (current.pieceCount != pieceCount) {
+                    // The file's pieces were recomputed; the old bitfields mean nothing now
+                    current.reset(pieceCount);
+                }
+                current.expire(now - 3 * announceIntervalMs, onlinePeerSnapshot);
+                if (EVENT_STOPPED.equals(event)) {
+                    current.remove(userId);
+                } else {
+                    current.put(userId, holding);
+                }
+            }
+            return current;
+        });
+        // Complete copies also go in the availability index, for lookups that don't need bitfields
+        if (holding.complete && !EVENT_STOPPED.equals(event)) {
+            peerAvailabilityIndex.announce(file.getId(), userId, listenPort);
+        } else {
+            peerAvailabilityIndex.withdraw(file.getId(), userId);
+        }
+
+        List<SwarmPeer> candidates = new ArrayList<>();
+        synchronized (swarm) {
+            for (Map.Entry<String, Holding> entry : swarm.holders.entrySet()) {
+                Peer peer = onlinePeerSnapshot.getOnlinePeer(entry.getKey());
+                if (entry.getKey().equals(userId) || peer == null || entry.getValue().pieces.isEmpty()) {
+                    continue;
+                }
+                SwarmPeer swarmPeer = new SwarmPeer();
+                swarmPeer.setUserId(entry.getKey());
+                swarmPeer.setIpAddress(peer.getIpAddress());
+                swarmPeer.setPort(entry.getValue().listenPort > 0 ? entry.getValue().listenPort : peer.getPort());
+                swarmPeer.setBitfield(entry.getValue().bitfield);
+                swarmPeer.setComplete(entry.getValue().complete);
+                swarmPeer.setScore(peerRankingService.score(entry.getKey()));
+                candidates.add(swarmPeer);
+            }
+
+            int[] availability = swarm.availability.clone();
+            view.setAvailability(availability);
+            for (int i = 0; i < pieceCount; i++) {
+                if (!have.get(i) && availability[i] < minPeerCopies) {
+                    view.getFromServer().add(i);
+                }
+            }
+        }
+
+        // Fastest, most reliable peers first; the slowest are the ones cut beyond max-peers
+        candidates.sort(Comparator.comparingDouble(SwarmPeer::getScore));
+        if (candidates.size() > maxPeers) {
+            candidates = new ArrayList<>(candidates.subList(0, maxPeers));
+        }
+        peerRankingService.expectReports(userId, candidates);
+        view.setPeers(candidates);
+        return view;
+    }
+
+    /**
+     * Read one piece of the stored file, for downloaders with no peer holding it
+     */
+    public byte[] readPiece(File file, int index) throws IOException {
+        if (index < 0 || index >= file.getPieceCount()) {
+            throw new RuntimeException("No such piece");
+        }
+        ChunkStore.Content content = chunkStore.open(file);
+        long offset = (long) index * file.getPieceSize();
+        try (InputStream in = content.openAt(offset)) {
+            byte[] piece = in.readNBytes((int) Math.min(file.getPieceSize(), content.length() - offset));
+            serverPieces.increment();
+            serverBytes.add(piece.length);
+            return piece;
+        }
+    }
+
+    public void onFileDeleted(String fileId) {
+        swarms.remove(fileId);
+        peerAvailabilityIndex.onFileDeleted(fileId);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        int peers = 0;
+        for (Swarm swarm : swarms.values()) {
+            peers += swarm.holders.size();
+        }
+        stats.put("swarms", swarms.size());
+        stats.put("peers", peers);
+        stats.put("announces", announces.sum());
+        stats.put("serverPieces", serverPieces.sum());
+        stats.put("serverBytes", serverBytes.sum());
+        stats.put("reportedPeerBytes", reportedPeerBytes.sum());
+        return stats;
+    }
+
+    // Grow the piece size in powers of two so big files stay under max-pieces
+    private int pieceSizeFor(long length) {
+        long size = Math.max(1, pieceSize);
+        while (length / size >= maxPieces && size < (1 << 30)) {
+            size *= 2;
+        }
+        return (int) size;
+    }
+
+    private void pruneIfDue(long now) {
+        if (now - lastPrune < announceIntervalMs) {
+            return;
+        }
+        lastPrune = now;
+        long cutoff = now - 3 * announceIntervalMs;
+        for (String fileId : swarms.keySet()) {
+            swarms.computeIfPresent(fileId, (id, swarm) -> {
+                synchronized (swarm) {
+                    swarm.expire(cutoff, onlinePeerSnapshot);
+                    return swarm.holders.isEmpty() ? null : swarm;
+                }
+            });
+        }
+    }
+
+    // Bitfields use the BitTorrent layout: piece 0 is the high bit of the first byte
+    static BitSet decodeBitfield(String bitfield, int pieceCount) {
+        BitSet bits = new BitSet(pieceCount);
+        if (bitfield == null || bitfield.isEmpty()) {
+            return bits;
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64.getDecoder().decode(bitfield);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid bitfield");
+        }
+        for (int i = 0; i < pieceCount && i / 8 < bytes.length; i++) {
+            if ((bytes[i / 8] & (0x80 >>> (i % 8))) != 0) {
+                bits.set(i);
+            }
+        }
+        return bits;
+    }
+
+    static String encodeBitfield(BitSet bits, int pieceCount) {
+        byte[] bytes = new byte[(pieceCount + 7) / 8];
+        for (int i = bits.nextSetBit(0); i >= 0 && i < pieceCount; i = bits.nextSetBit(i + 1)) {
+            bytes[i / 8] |= (byte) (0x80 >>> (i % 8));
+        }
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    private static class Holding {
+        private final BitSet pieces;
+        private final String bitfield;
+        private final int listenPort;
+        private final long announcedAt;
+        private final boolean complete;
+
+        private Holding(BitSet pieces, String bitfield, int listenPort, long announcedAt, int pieceCount) {
+            this.pieces = pieces;
+            this.bitfield = bitfield;
+            this.listenPort = listenPort;
+            this.announcedAt = announcedAt;
+            this.complete = pieces.cardinality() == pieceCount;
+        }
+    }
+
+    // One file's swarm; availability[i] is how many holders have piece i. Guarded by its own monitor.
+    private static class Swarm {
+        private final Map<String, Holding> holders = new HashMap<>();
+        private int pieceCount;
+        private int[] availability;
+
+        private Swarm(int pieceCount) {
+            reset(pieceCount);
+        }
+
+        private void reset(int pieceCount) {
+            this.pieceCount = pieceCount;
+            this.availability = new int[pieceCount];
+            holders.clear();
+        }
+
+        private void put(String userId, Holding holding) {
+            remove(userId);
+            holders.put(userId, holding);
+            count(holding.pieces, 1);
+        }
+
+        private void remove(String userId) {
+            Holding previous = holders.remove(userId);
+            if (previous != null) {
+                count(previous.pieces, -1);
+            }
+        }
+
+        // Drop holders that stopped announcing or whose peer went offline
+        private void expire(long cutoff, OnlinePeerSnapshot onlinePeerSnapshot) {
+            for (Iterator<Map.Entry<String, Holding>> it = holders.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, Holding> entry = it.next();
+                if (entry.getValue().announcedAt < cutoff || onlinePeerSnapshot.getOnlinePeer(entry.getKey()) == null) {
+                    it.remove();
+                    count(entry.getValue().pieces, -1);
+                }
+            }
+        }
+
+        private void count(BitSet pieces, int delta) {
+            for (int i = pieces.nextSetBit(0); i >= 0 && i < pieceCount; i = pieces.nextSetBit(i + 1)) {
+                availability[i] += delta;
+            }
+        }
+    }
+}
@@ -2,39 +2,107 @@ package com.p2p.service;
 
 import com.p2p.model.User;
 import com.p2p.repository.UserRepository;
+import com.p2p.util.BloomFilter;
+import com.p2p.util.ExpiringCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.util.stream.Stream;
+
 @Service
 public class UserService implements UserDetailsService {
 
+    private static final Logger logger = LoggerFactory.getLogger(UserService.class);
+    
     // Removed 'final' modifiers
     private UserRepository userRepository;
     private PasswordEncoder passwordEncoder;
     
+    @Value("${user.principal-cache.ttl-ms:30000}")
+    private long principalCacheTtlMs;
+    
+    @Value("${user.principal-cache.max-entries:10000}")
+    private int principalCacheMaxEntries;
+    
+    // Short-lived cache of authenticated principals, so JWT requests skip the Mongo lookup
+    private ExpiringCache<String, User> principalCache;
+    
+    @Value("${user.availability-filter.expected-users:100000}")
+    private long expectedUsers;
+    
+    @Value("${user.availability-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+    
+    // Taken usernames/emails; a miss means definitely available, a hit still goes to Mongo
+    private BloomFilter usernameFilter;
+    private BloomFilter emailFilter;
+    
     @Autowired
     public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
     }
     
+    @PostConstruct
+    public void init() {
+        principalCache = new ExpiringCache<>(principalCacheMaxEntries);
+        
+        usernameFilter = new BloomFilter(expectedUsers, falsePositiveRate);
+        emailFilter = new BloomFilter(expectedUsers, falsePositiveRate);
+        long count = 0;
+        try (Stream<User> users = userRepository.streamUsernamesAndEmails()) {
+            for (User user : (Iterable<User>) users::iterator) {
+                markTaken(user);
+                count++;
+            }
+            logger.info("Availability filters warmed with {} users", count);
+        } catch (Exception e) {
+            // Without a warm filter every check must go to the database
+            logger.error("Error warming availability filters", e);
+            usernameFilter = null;
+            emailFilter = null;
+        }
+    }
+    
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         return userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found"));
     }
     
+    /**
+     * Load a user for an already-authenticated request, served from the principal cache when fresh
+     */
+    public User loadCachedUserByUsername(String username) throws UsernameNotFoundException {
+        User user = principalCache.get(username);
+        if (user == null) {
+            user = userRepository.findByUsername(username)
+                    .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+            principalCache.put(username, user, System.currentTimeMillis() + principalCacheTtlMs);
+        }
+        return user;
+    }
+    
+    public void evictCachedUser(String username) {
+        principalCache.invalidate(username);
+    }
+    
     public User registerUser(User user) {
         // Check if username or email already exists
-        if (userRepository.existsByUsername(user.getUsername())) {
+        if (!isUsernameAvailable(user.getUsername())) {
             throw new RuntimeException("Username already exists");
         }
         
-        if (userRepository.existsByEmail(user.getEmail())) {
+        if (!isEmailAvailable(user.getEmail())) {
             throw new RuntimeException("Email already exists");
         }
         
@@ -46,7 +114,39 @@ public class UserService implements UserDetailsService {
             user.setRole("USER");
         }
         
-        return userRepository.save(user);
+        // The unique indexes catch anything the filters can't see (e.g. another node's insert)
+        User savedUser;
+        try {
+            savedUser = userRepository.save(user);
+        } catch (DuplicateKeyException e) {
+            throw new RuntimeException("Username or email already exists");
+        }
+        
+        markTaken(savedUser);
+        return savedUser;
+    }
+    
+    public boolean isUsernameAvailable(String username) {
+        if (username != null && usernameFilter != null && !usernameFilter.mightContain(username)) {
+            return true;
+        }
+        return !userRepository.existsByUsername(username);
+    }
+    
+    public boolean isEmailAvailable(String email) {
+        if (email != null && emailFilter != null && !emailFilter.mightContain(email)) {
+            return true;
+        }
+        return !userRepository.existsByEmail(email);
+    }
+    
+    private void markTaken(User user) {
+        if (usernameFilter != null && user.getUsername() != null) {
+            usernameFilter.put(user.getUsername());
+        }
+        if (emailFilter != null && user.getEmail() != null) {
+            emailFilter.put(user.getEmail());
+        }
     }
     
     public User getUserById(String id) {
@@ -54,7 +154,19 @@ public class UserService implements UserDetailsService {
                 .orElseThrow(() -> new RuntimeException("User not found"));
     }
     
+    /**
+     * Save changes to a user; pass a copy from {@link #getUserById}, never a cached principal
+     */
     public User updateUser(User user) {
-        return userRepository.save(user);
+        try {
+            User savedUser = userRepository.save(user);
+            markTaken(savedUser);
+            return savedUser;
+        } catch (DuplicateKeyException e) {
+            throw new RuntimeException("Email already exists");
+        } finally {
+            // Whatever happened, the next request reloads the user from Mongo
+            evictCachedUser(user.getUsername());
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,104 @@
+package com.p2p.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SHA-256 of every fixed-size block of a byte stream, fed incrementally as the bytes go by.
+ * An optional prefix is hashed in front of each block (Merkle leaves use one), and the
+ * rsync weak checksum of each block can be collected alongside.
+ */
+public class BlockHasher {
+
+    private final int blockSize;
+    private final byte[] prefix;
+    private final MessageDigest digest;
+    private final List<byte[]> hashes = new ArrayList<>();
+    private final RollingChecksum weak;
+    private final List<Integer> weakSums = new ArrayList<>();
+    private int filled;
+    private long length;
+
+    public BlockHasher(int blockSize, byte[] prefix) {
+        this(blockSize, prefix, false);
+    }
+
+    public BlockHasher(int blockSize, byte[] prefix, boolean weakSums) {
+        if (blockSize <= 0) {
+            throw new RuntimeException("Block size must be positive");
+        }
+        this.blockSize = blockSize;
+        this.prefix = prefix;
+        this.weak = weakSums ? new RollingChecksum() : null;
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+    }
+
+    public void update(byte[] data, int offset, int count) {
+        length += count;
+        while (count > 0) {
+            if (filled == 0 && prefix != null) {
+                digest.update(prefix);
+            }
+            int n = Math.min(count, blockSize - filled);
+            digest.update(data, offset, n);
+            if (weak != null) {
+                weak.update(data, offset, n);
+            }
+            filled += n;
+            offset += n;
+            count -= n;
+            if (filled == blockSize) {
+                endBlock();
+            }
+        }
+    }
+
+    /**
+     * Close the last, possibly short, block and return one hash per block
+     */
+    public List<byte[]> finish() {
+        if (filled > 0) {
+            endBlock();
+        }
+        return hashes;
+    }
+
+    /**
+     * Weak checksum per block, packed big-endian; empty unless requested
+     */
+    public byte[] finishWeakSums() {
+        finish();
+        byte[] packed = new byte[weakSums.size() * 4];
+        for (int i = 0; i < weakSums.size(); i++) {
+            int sum = weakSums.get(i);
+            packed[4 * i] = (byte) (sum >>> 24);
+            packed[4 * i + 1] = (byte) (sum >>> 16);
+            packed[4 * i + 2] = (byte) (sum >>> 8);
+            packed[4 * i + 3] = (byte) sum;
+        }
+        return packed;
+    }
+
+    private void endBlock() {
+        hashes.add(digest.digest());
+        if (weak != null) {
+            weakSums.add(weak.value());
+            weak.reset();
+        }
+        filled = 0;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public long getLength() {
+        return length;
+    }
+}
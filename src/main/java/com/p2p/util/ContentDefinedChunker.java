@@ -0,0 +1,89 @@
+package com.p2p.util;
+
+import java.io.IOException;
+
+/**
+ * Content-defined chunking with a gear rolling hash (FastCDC style).
+ *
+ * A cut is made where the hash of the last few dozen bytes hits a mask, so boundaries move
+ * with the content: an insert or delete only changes the chunks around it and every later
+ * chunk comes out identical, which is what lets file versions share chunks. A stricter mask
+ * below the average size and a looser one above it keep chunk sizes close to the average.
+ */
+public class ContentDefinedChunker {
+
+    /**
+     * Receives each chunk; the buffer is reused once this returns
+     */
+    public interface ChunkSink {
+        void chunk(byte[] data, int length) throws IOException;
+    }
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // Fixed seed: boundaries must come out the same on every node and after every restart
+        long seed = 0x2F1D5C3A9B7E4861L;
+        for (int i = 0; i < GEAR.length; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private final int minSize;
+    private final int averageSize;
+    private final long strictMask;
+    private final long looseMask;
+    private final byte[] buffer;
+    private final ChunkSink sink;
+    private int filled;
+    private long hash;
+
+    public ContentDefinedChunker(int minSize, int averageSize, int maxSize, ChunkSink sink) {
+        if (minSize <= 0 || minSize > averageSize || averageSize > maxSize) {
+            throw new RuntimeException("Chunk sizes must satisfy 0 < min <= average <= max");
+        }
+        int bits = 63 - Long.numberOfLeadingZeros(averageSize);
+        this.minSize = minSize;
+        this.averageSize = averageSize;
+        this.strictMask = highBits(bits + 1);
+        this.looseMask = highBits(Math.max(1, bits - 1));
+        this.buffer = new byte[maxSize];
+        this.sink = sink;
+    }
+
+    public void update(byte[] data, int offset, int count) throws IOException {
+        for (int i = offset; i < offset + count; i++) {
+            buffer[filled++] = data[i];
+            hash = (hash << 1) + GEAR[data[i] & 0xFF];
+            if (filled >= minSize) {
+                long mask = filled < averageSize ? strictMask : looseMask;
+                if ((hash & mask) == 0 || filled == buffer.length) {
+                    emit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Emit whatever is left as the last chunk
+     */
+    public void finish() throws IOException {
+        if (filled > 0) {
+            emit();
+        }
+    }
+
+    private void emit() throws IOException {
+        sink.chunk(buffer, filled);
+        filled = 0;
+        hash = 0;
+    }
+
+    private static long highBits(int count) {
+        return -1L << (64 - count);
+    }
+}
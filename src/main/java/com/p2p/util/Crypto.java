@@ -1,6 +1,9 @@
 package com.p2p.util;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.Cipher;
@@ -9,6 +12,7 @@ import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import java.security.*;
 import java.util.Base64;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class Crypto {
@@ -19,59 +23,123 @@ public class Crypto {
         Security.addProvider(new BouncyCastleProvider());
     }
     
+    // Time spent per crypto operation (p2p.crypto{operation=...})
+    private Timer keyPairTimer;
+    private Timer aesKeyTimer;
+    private Timer encryptTimer;
+    private Timer decryptTimer;
+    private Timer encryptKeyTimer;
+    private Timer decryptKeyTimer;
+    
+    @Autowired
+    public Crypto(MeterRegistry meterRegistry) {
+        this.keyPairTimer = operationTimer(meterRegistry, "generateKeyPair");
+        this.aesKeyTimer = operationTimer(meterRegistry, "generateAESKey");
+        this.encryptTimer = operationTimer(meterRegistry, "encryptAES");
+        this.decryptTimer = operationTimer(meterRegistry, "decryptAES");
+        this.encryptKeyTimer = operationTimer(meterRegistry, "encryptKey");
+        this.decryptKeyTimer = operationTimer(meterRegistry, "decryptKey");
+    }
+    
     /**
      * Generate key pair for asymmetric encryption
      */
     public KeyPair generateKeyPair() throws NoSuchAlgorithmException {
-        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
-        keyPairGenerator.initialize(2048);
-        return keyPairGenerator.generateKeyPair();
+        long start = System.nanoTime();
+        try {
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(2048);
+            return keyPairGenerator.generateKeyPair();
+        } finally {
+            keyPairTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            RequestTiming.record("crypto", start);
+        }
     }
     
     /**
      * Generate symmetric key for AES encryption
      */
     public SecretKey generateAESKey() throws NoSuchAlgorithmException {
-        KeyGenerator keyGenerator = KeyGenerator.getInstance(AES_ALGORITHM);
-        keyGenerator.init(256);
-        return keyGenerator.generateKey();
+        long start = System.nanoTime();
+        try {
+            KeyGenerator keyGenerator = KeyGenerator.getInstance(AES_ALGORITHM);
+            keyGenerator.init(256);
+            return keyGenerator.generateKey();
+        } finally {
+            aesKeyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            RequestTiming.record("crypto", start);
+        }
     }
     
     /**
      * Encrypt data using AES
      */
     public byte[] encryptAES(byte[] data, SecretKey key) throws Exception {
-        Cipher cipher = Cipher.getInstance(AES_ALGORITHM);
-        cipher.init(Cipher.ENCRYPT_MODE, key);
-        return cipher.doFinal(data);
+        long start = System.nanoTime();
+        try {
+            Cipher cipher = Cipher.getInstance(AES_ALGORITHM);
+            cipher.init(Cipher.ENCRYPT_MODE, key);
+            return cipher.doFinal(data);
+        } finally {
+            encryptTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            RequestTiming.record("crypto", start);
+        }
     }
     
     /**
      * Decrypt data using AES
      */
     public byte[] decryptAES(byte[] encryptedData, SecretKey key) throws Exception {
+        long start = System.nanoTime();
+        try {
+            Cipher cipher = Cipher.getInstance(AES_ALGORITHM);
+            cipher.init(Cipher.DECRYPT_MODE, key);
+            return cipher.doFinal(encryptedData);
+        } finally {
+            decryptTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            RequestTiming.record("crypto", start);
+        }
+    }
+    
+    /**
+     * Create an AES cipher for incremental (streaming) encryption or decryption.
+     * Produces the same bytes as encryptAES/decryptAES over the whole input.
+     */
+    public Cipher createAESCipher(int mode, SecretKey key) throws GeneralSecurityException {
         Cipher cipher = Cipher.getInstance(AES_ALGORITHM);
-        cipher.init(Cipher.DECRYPT_MODE, key);
-        return cipher.doFinal(encryptedData);
+        cipher.init(mode, key);
+        return cipher;
     }
     
     /**
      * Encrypt AES key using RSA public key
      */
     public byte[] encryptKey(SecretKey secretKey, PublicKey publicKey) throws Exception {
-        Cipher cipher = Cipher.getInstance("RSA");
-        cipher.init(Cipher.ENCRYPT_MODE, publicKey);
-        return cipher.doFinal(secretKey.getEncoded());
+        long start = System.nanoTime();
+        try {
+            Cipher cipher = Cipher.getInstance("RSA");
+            cipher.init(Cipher.ENCRYPT_MODE, publicKey);
+            return cipher.doFinal(secretKey.getEncoded());
+        } finally {
+            encryptKeyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            RequestTiming.record("crypto", start);
+        }
     }
     
     /**
      * Decrypt AES key using RSA private key
      */
     public SecretKey decryptKey(byte[] encryptedKey, PrivateKey privateKey) throws Exception {
-        Cipher cipher = Cipher.getInstance("RSA");
-        cipher.init(Cipher.DECRYPT_MODE, privateKey);
-        byte[] decryptedKey = cipher.doFinal(encryptedKey);
-        return new SecretKeySpec(decryptedKey, AES_ALGORITHM);
+        long start = System.nanoTime();
+        try {
+            Cipher cipher = Cipher.getInstance("RSA");
+            cipher.init(Cipher.DECRYPT_MODE, privateKey);
+            byte[] decryptedKey = cipher.doFinal(encryptedKey);
+            return new SecretKeySpec(decryptedKey, AES_ALGORITHM);
+        } finally {
+            decryptKeyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            RequestTiming.record("crypto", start);
+        }
     }
     
     /**
@@ -88,4 +156,11 @@ public class Crypto {
         byte[] decodedKey = Base64.getDecoder().decode(keyStr);
         return new SecretKeySpec(decodedKey, 0, decodedKey.length, AES_ALGORITHM);
     }
+    
+    private static Timer operationTimer(MeterRegistry meterRegistry, String operation) {
+        return Timer.builder("p2p.crypto")
+                .description("Time spent in crypto operations")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package com.p2p.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Writes a stored file while feeding every byte to the swarm piece and Merkle block hashers
+ * and a whole-file SHA-256, so the file's metadata is ready once the last byte is stored.
+ */
+public class HashingFileWriter implements Closeable {
+
+    private final OutputStream out;
+    private final BlockHasher pieces;
+    private final BlockHasher blocks;
+    private final MessageDigest digest;
+    private long length;
+
+    public HashingFileWriter(OutputStream out, BlockHasher pieces, BlockHasher blocks) {
+        this.pieces = pieces;
+        this.blocks = blocks;
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+        this.out = out;
+    }
+
+    public void write(byte[] data, int offset, int count) throws IOException {
+        out.write(data, offset, count);
+        pieces.update(data, offset, count);
+        blocks.update(data, offset, count);
+        digest.update(data, offset, count);
+        length += count;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public BlockHasher getPieces() {
+        return pieces;
+    }
+
+    public BlockHasher getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Hex SHA-256 of everything written; call once, after the last write
+     */
+    public String getSha256() {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,190 @@
+package com.p2p.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary Merkle tree over block hashes.
+ *
+ * Leaves are SHA-256(0x00 || block) and inner nodes SHA-256(0x01 || left || right), so a
+ * leaf can never be passed off as an inner node; a node without a sibling moves up a level
+ * unchanged. A run of blocks is proven by the nodes just outside its left and right edges
+ * on each level, which is at most two hashes per level however long the run is.
+ */
+public class MerkleTree {
+
+    public static final byte[] LEAF_PREFIX = {0x00};
+    private static final byte INNER_PREFIX = 0x01;
+    public static final int HASH_LENGTH = 32;
+
+    // levels[0] are the leaves, the last level holds the root
+    private final byte[][][] levels;
+
+    public MerkleTree(List<byte[]> leaves) {
+        List<byte[][]> built = new ArrayList<>();
+        byte[][] level = leaves.toArray(new byte[0][]);
+        built.add(level);
+        while (level.length > 1) {
+            byte[][] parent = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < parent.length; i++) {
+                parent[i] = 2 * i + 1 < level.length ? hashNode(level[2 * i], level[2 * i + 1]) : level[2 * i];
+            }
+            built.add(parent);
+            level = parent;
+        }
+        this.levels = built.toArray(new byte[0][][]);
+    }
+
+    /**
+     * Rebuild a tree from leaf hashes packed back to back
+     */
+    public static MerkleTree fromPackedLeaves(byte[] packed) {
+        List<byte[]> leaves = new ArrayList<>();
+        for (int offset = 0; offset + HASH_LENGTH <= packed.length; offset += HASH_LENGTH) {
+            byte[] leaf = new byte[HASH_LENGTH];
+            System.arraycopy(packed, offset, leaf, 0, HASH_LENGTH);
+            leaves.add(leaf);
+        }
+        return new MerkleTree(leaves);
+    }
+
+    public static byte[] pack(List<byte[]> leaves) {
+        byte[] packed = new byte[leaves.size() * HASH_LENGTH];
+        for (int i = 0; i < leaves.size(); i++) {
+            System.arraycopy(leaves.get(i), 0, packed, i * HASH_LENGTH, HASH_LENGTH);
+        }
+        return packed;
+    }
+
+    /**
+     * Root hash; an empty tree has the hash of no input
+     */
+    public byte[] root() {
+        return leafCount() == 0 ? sha256().digest() : levels[levels.length - 1][0];
+    }
+
+    public int leafCount() {
+        return levels[0].length;
+    }
+
+    public byte[] leaf(int index) {
+        return levels[0][index];
+    }
+
+    /**
+     * Sibling nodes needed to recompute the root from leaves [from, to)
+     */
+    public List<Node> proveRange(int from, int to) {
+        if (from < 0 || to > leafCount() || from >= to) {
+            throw new RuntimeException("Invalid block range");
+        }
+        List<Node> proof = new ArrayList<>();
+        int lo = from;
+        int hi = to - 1;
+        for (int level = 0; level < levels.length - 1; level++) {
+            int width = levels[level].length;
+            if (lo % 2 == 1) {
+                proof.add(new Node(level, lo - 1, levels[level][lo - 1]));
+            }
+            if (hi % 2 == 0 && hi + 1 < width) {
+                proof.add(new Node(level, hi + 1, levels[level][hi + 1]));
+            }
+            lo /= 2;
+            hi /= 2;
+        }
+        return proof;
+    }
+
+    /**
+     * Root implied by leaves [from, from + leaves.size()) of a tree with leafCount leaves and
+     * the given proof, or null if the proof is missing a node
+     */
+    public static byte[] rootFromRange(int leafCount, int from, List<byte[]> leaves, List<Node> proof) {
+        if (leaves.isEmpty() || from < 0 || from + leaves.size() > leafCount) {
+            return null;
+        }
+        Map<Long, byte[]> known = new HashMap<>();
+        for (Node node : proof) {
+            known.put(key(node.level, node.index), node.hash);
+        }
+        for (int i = 0; i < leaves.size(); i++) {
+            known.put(key(0, from + i), leaves.get(i));
+        }
+
+        int lo = from;
+        int hi = from + leaves.size() - 1;
+        int width = leafCount;
+        int level = 0;
+        while (width > 1) {
+            for (int parent = lo / 2; parent <= hi / 2; parent++) {
+                byte[] left = known.get(key(level, 2 * parent));
+                byte[] right = 2 * parent + 1 < width ? known.get(key(level, 2 * parent + 1)) : null;
+                if (left == null || (right == null && 2 * parent + 1 < width)) {
+                    return null;
+                }
+                known.put(key(level + 1, parent), right != null ? hashNode(left, right) : left);
+            }
+            lo /= 2;
+            hi /= 2;
+            width = (width + 1) / 2;
+            level++;
+        }
+        return known.get(key(level, 0));
+    }
+
+    public static byte[] hashLeaf(byte[] block) {
+        MessageDigest digest = sha256();
+        digest.update(LEAF_PREFIX);
+        return digest.digest(block);
+    }
+
+    public static byte[] hashNode(byte[] left, byte[] right) {
+        MessageDigest digest = sha256();
+        digest.update(INNER_PREFIX);
+        digest.update(left);
+        return digest.digest(right);
+    }
+
+    private static long key(int level, int index) {
+        return ((long) level << 32) | index;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * A tree node given out as part of a proof
+     */
+    public static class Node {
+        private final int level;
+        private final int index;
+        private final byte[] hash;
+
+        public Node(int level, int index, byte[] hash) {
+            this.level = level;
+            this.index = index;
+            this.hash = hash;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public byte[] getHash() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.p2p.util;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per-request phase timings (auth, db, disk, crypto, ...), collected on the request thread.
+ *
+ * Only active while {@code ServerTimingFilter} has started timing the current request;
+ * otherwise {@link #record} is a ThreadLocal read and a null check.
+ * Phases can nest, e.g. Mongo time spent during auth shows up in both "auth" and "db".
+ */
+public final class RequestTiming {
+
+    private static final ThreadLocal<RequestTiming> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos = System.nanoTime();
+    private final Map<String, long[]> phases = new LinkedHashMap<>(); // name -> {totalNanos, count}
+
+    private RequestTiming() {
+    }
+
+    public static RequestTiming begin() {
+        RequestTiming timing = new RequestTiming();
+        CURRENT.set(timing);
+        return timing;
+    }
+
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    public static RequestTiming current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Add the time since {@code phaseStartNanos} to a phase of the current request, if timed
+     */
+    public static void record(String phase, long phaseStartNanos) {
+        RequestTiming timing = CURRENT.get();
+        if (timing != null) {
+            timing.add(phase, System.nanoTime() - phaseStartNanos);
+        }
+    }
+
+    public void add(String phase, long nanos) {
+        long[] totals = phases.computeIfAbsent(phase, name -> new long[2]);
+        totals[0] += nanos;
+        totals[1]++;
+    }
+
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Render as a Server-Timing header value, e.g. {@code auth;dur=0.21, db;dur=3.10;desc="2 calls"}
+     */
+    public String toHeaderValue(String totalPhase) {
+        StringBuilder header = new StringBuilder();
+        for (Map.Entry<String, long[]> entry : phases.entrySet()) {
+            appendMetric(header, entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+        }
+        appendMetric(header, totalPhase, getElapsedNanos(), 1);
+        return header.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toHeaderValue("total");
+    }
+
+    private static void appendMetric(StringBuilder header, String name, long nanos, long count) {
+        if (header.length() > 0) {
+            header.append(", ");
+        }
+        header.append(name).append(";dur=").append(String.format(Locale.ROOT, "%.2f", nanos / 1e6));
+        if (count > 1) {
+            header.append(";desc=\"").append(count).append(" calls\"");
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.p2p.util;
+
+/**
+ * rsync's weak rolling checksum: a = sum of bytes, b = sum of running sums, both mod 2^16.
+ * After an initial window, {@link #roll} slides it by one byte in constant time, which lets
+ * a client find the blocks of an old version at any offset of a new one.
+ */
+public class RollingChecksum {
+
+    private int a;
+    private int b;
+    private int length;
+
+    public static int of(byte[] data, int offset, int count) {
+        RollingChecksum checksum = new RollingChecksum();
+        checksum.update(data, offset, count);
+        return checksum.value();
+    }
+
+    public void update(byte[] data, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            a += data[i] & 0xFF;
+            b += a;
+        }
+        length += count;
+    }
+
+    /**
+     * Slide the window one byte: drop {@code out} from the front, append {@code in}
+     */
+    public void roll(byte out, byte in) {
+        a += (in & 0xFF) - (out & 0xFF);
+        b += a - length * (out & 0xFF);
+    }
+
+    public int value() {
+        return (a & 0xFFFF) | (b << 16);
+    }
+
+    public void reset() {
+        a = 0;
+        b = 0;
+        length = 0;
+    }
+}
@@ -0,0 +1,161 @@
+package com.p2p.util;
+
+import com.p2p.model.File;
+import com.p2p.model.WebSocketMessage;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary encoding of {@link WebSocketMessage} for binary room topics.
+ *
+ * Layout (all integers are unsigned LEB128 varints):
+ * <pre>
+ *   version   1 byte (currently 1)
+ *   type      1 byte, MessageType ordinal, 0xFF = null
+ *   seq       varint
+ *   timestamp varint, epoch millis
+ *   sender    string
+ *   content   string
+ *   fileId    string
+ * </pre>
+ * A string is varint (UTF-8 length + 1) followed by the bytes; 0 means null.
+ * Enum ordinals are part of the format: new MessageTypes must be appended.
+ * The browser-side decoder is static/js/message-codec.js.
+ *
+ * Also encodes the header frame that opens a live file relay (/ws-relay):
+ * version, fileSize varint, filename string, fileType string, encrypted (1 byte).
+ * It is decoded by static/js/file-relay.js.
+ */
+public final class WebSocketMessageCodec {
+
+    public static final int VERSION = 1;
+    private static final int NULL_TYPE = 0xFF;
+    private static final WebSocketMessage.MessageType[] TYPES = WebSocketMessage.MessageType.values();
+
+    private WebSocketMessageCodec() {
+    }
+
+    public static byte[] encode(WebSocketMessage message) {
+        byte[] sender = utf8(message.getSender());
+        byte[] content = utf8(message.getContent());
+        byte[] fileId = utf8(message.getFileId());
+        
+        // Sized exactly up front: one allocation, no copying
+        byte[] out = new byte[2 + varintSize(message.getSeq()) + varintSize(message.getTimestamp())
+                + stringSize(sender) + stringSize(content) + stringSize(fileId)];
+        int position = 0;
+        out[position++] = VERSION;
+        out[position++] = (byte) (message.getType() != null ? message.getType().ordinal() : NULL_TYPE);
+        position = writeVarint(out, position, message.getSeq());
+        position = writeVarint(out, position, message.getTimestamp());
+        position = writeString(out, position, sender);
+        position = writeString(out, position, content);
+        writeString(out, position, fileId);
+        return out;
+    }
+
+    public static WebSocketMessage decode(byte[] bytes) {
+        int[] position = {0};
+        int version = bytes[position[0]++] & 0xFF;
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported message encoding version " + version);
+        }
+        
+        WebSocketMessage message = new WebSocketMessage();
+        int type = bytes[position[0]++] & 0xFF;
+        message.setType(type == NULL_TYPE ? null : TYPES[type]);
+        message.setSeq(readVarint(bytes, position));
+        message.setTimestamp(readVarint(bytes, position));
+        message.setSender(readString(bytes, position));
+        message.setContent(readString(bytes, position));
+        message.setFileId(readString(bytes, position));
+        return message;
+    }
+
+    public static byte[] encodeFileHeader(File file) {
+        byte[] filename = utf8(file.getOriginalFilename());
+        byte[] fileType = utf8(file.getFileType());
+        
+        byte[] out = new byte[2 + varintSize(file.getFileSize()) + stringSize(filename) + stringSize(fileType)];
+        int position = 0;
+        out[position++] = VERSION;
+        position = writeVarint(out, position, file.getFileSize());
+        position = writeString(out, position, filename);
+        position = writeString(out, position, fileType);
+        out[position] = (byte) (file.isEncrypted() ? 1 : 0);
+        return out;
+    }
+
+    public static File decodeFileHeader(byte[] bytes) {
+        int[] position = {0};
+        int version = bytes[position[0]++] & 0xFF;
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported file header version " + version);
+        }
+        
+        File file = new File();
+        file.setFileSize(readVarint(bytes, position));
+        file.setOriginalFilename(readString(bytes, position));
+        file.setFileType(readString(bytes, position));
+        file.setEncrypted(bytes[position[0]] != 0);
+        return file;
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int stringSize(byte[] utf8) {
+        return utf8 == null ? 1 : varintSize(utf8.length + 1L) + utf8.length;
+    }
+
+    private static int writeVarint(byte[] out, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+        return position;
+    }
+
+    private static long readVarint(byte[] bytes, int[] position) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int writeString(byte[] out, int position, byte[] utf8) {
+        if (utf8 == null) {
+            out[position++] = 0;
+            return position;
+        }
+        position = writeVarint(out, position, utf8.length + 1L);
+        System.arraycopy(utf8, 0, out, position, utf8.length);
+        return position + utf8.length;
+    }
+
+    private static String readString(byte[] bytes, int[] position) {
+        int length = (int) readVarint(bytes, position);
+        if (length == 0) {
+            return null;
+        }
+        String value = new String(bytes, position[0], length - 1, StandardCharsets.UTF_8);
+        position[0] += length - 1;
+        return value;
+    }
+}
@@ -0,0 +1,166 @@
+// Upload a new version of a stored file by sending only what changed (see FileService.storeDelta).
+// Fetches the previous version's block signature, finds its blocks anywhere in the new file with
+// the rsync rolling checksum (confirmed by SHA-256), and sends block references plus literal bytes.
+//
+//   DeltaUpload.upload(previousFileId, file).then(stored => ...);   // resolves with the new File
+const DeltaUpload = (function() {
+    const COPY = 0x01;
+    const LITERAL = 0x02;
+    const END = 0x00;
+    const MAX_LITERAL = 1024 * 1024;
+
+    function authHeaders() {
+        return {'Authorization': 'Bearer ' + localStorage.getItem('auth_token')};
+    }
+
+    function base64ToBytes(value) {
+        const binary = atob(value || '');
+        const bytes = new Uint8Array(binary.length);
+        for (let i = 0; i < binary.length; i++) {
+            bytes[i] = binary.charCodeAt(i);
+        }
+        return bytes;
+    }
+
+    function hex(buffer) {
+        return Array.from(new Uint8Array(buffer)).map(b => b.toString(16).padStart(2, '0')).join('');
+    }
+
+    function varint(value) {
+        const out = [];
+        while (value >= 0x80) {
+            out.push((value % 0x80) | 0x80);
+            value = Math.floor(value / 0x80);
+        }
+        out.push(value);
+        return out;
+    }
+
+    // Merkle leaf hash of a block: SHA-256(0x00 || block)
+    async function leafHash(block) {
+        const prefixed = new Uint8Array(block.length + 1);
+        prefixed.set(block, 1);
+        return hex(await crypto.subtle.digest('SHA-256', prefixed));
+    }
+
+    async function buildDelta(signature, data) {
+        const size = signature.blockSize;
+        const weak = base64ToBytes(signature.weak);
+        const strong = base64ToBytes(signature.strong);
+        const view = new DataView(weak.buffer);
+        const candidates = new Map();   // weak checksum -> block indexes
+        for (let i = 0; i < signature.blockCount; i++) {
+            const blockLength = Math.min(size, signature.length - i * size);
+            if (blockLength !== size) {
+                continue;   // only whole blocks are matched
+            }
+            const sum = view.getUint32(i * 4);
+            if (!candidates.has(sum)) {
+                candidates.set(sum, []);
+            }
+            candidates.get(sum).push(i);
+        }
+
+        const parts = [];
+        let literalStart = 0;
+        let pendingCopy = null;   // [firstBlock, count]
+        let literalBytes = 0;
+
+        function flushCopy() {
+            if (pendingCopy) {
+                parts.push(new Uint8Array([COPY, ...varint(pendingCopy[0]), ...varint(pendingCopy[1])]));
+                pendingCopy = null;
+            }
+        }
+        function flushLiteral(end) {
+            for (let offset = literalStart; offset < end; offset += MAX_LITERAL) {
+                const slice = data.subarray(offset, Math.min(end, offset + MAX_LITERAL));
+                parts.push(new Uint8Array([LITERAL, ...varint(slice.length)]), slice);
+                literalBytes += slice.length;
+            }
+            literalStart = end;
+        }
+
+        let position = 0;
+        let a = 0;
+        let b = 0;
+        let windowValid = false;
+        while (position + size <= data.length) {
+            if (!windowValid) {
+                a = 0;
+                b = 0;
+                for (let i = position; i < position + size; i++) {
+                    a = (a + data[i]) & 0xFFFF;
+                    b = (b + a) & 0xFFFF;
+                }
+                windowValid = true;
+            }
+            const sum = ((b << 16) | a) >>> 0;
+            let matched = -1;
+            const blocks = candidates.get(sum);
+            if (blocks) {
+                const hash = await leafHash(data.subarray(position, position + size));
+                matched = blocks.find(i => hex(strong.subarray(i * 32, i * 32 + 32)) === hash);
+                matched = matched === undefined ? -1 : matched;
+            }
+
+            if (matched >= 0) {
+                if (literalStart < position) {
+                    flushCopy();
+                    flushLiteral(position);
+                }
+                if (pendingCopy && pendingCopy[0] + pendingCopy[1] === matched) {
+                    pendingCopy[1]++;
+                } else {
+                    flushCopy();
+                    pendingCopy = [matched, 1];
+                }
+                position += size;
+                literalStart = position;
+                windowValid = false;
+            } else {
+                if (position + size >= data.length) {
+                    break;
+                }
+                const out = data[position];
+                const next = data[position + size];
+                a = (a - out + next) & 0xFFFF;
+                b = (b - size * out + a) & 0xFFFF;
+                position++;
+            }
+        }
+        if (literalStart < data.length) {
+            flushCopy();
+            flushLiteral(data.length);
+        }
+        flushCopy();
+        parts.push(new Uint8Array([END]));
+        return {body: new Blob(parts), literalBytes: literalBytes};
+    }
+
+    async function upload(previousFileId, file) {
+        const response = await fetch(`/api/files/${previousFileId}/signature`, {headers: authHeaders()});
+        if (!response.ok) {
+            throw new Error('Could not read the previous version');
+        }
+        const signature = await response.json();
+        const data = new Uint8Array(await file.arrayBuffer());
+        const delta = await buildDelta(signature, data);
+        const sha256 = hex(await crypto.subtle.digest('SHA-256', data));
+
+        const params = new URLSearchParams({
+            length: data.length, filename: file.name, contentType: file.type || 'application/octet-stream', sha256: sha256
+        });
+        const headers = authHeaders();
+        headers['Content-Type'] = 'application/octet-stream';
+        const stored = await fetch(`/api/files/${previousFileId}/delta?${params}`, {
+            method: 'POST', headers: headers, body: delta.body
+        });
+        if (!stored.ok) {
+            throw new Error('Delta upload failed');
+        }
+        return stored.json();
+    }
+
+    return {upload: upload};
+})();
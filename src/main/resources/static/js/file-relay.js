@@ -0,0 +1,176 @@
+// Live file relay over /ws-relay (see FileRelayService.java): the sender streams, the server
+// fans chunks out to everyone who joined, and nothing is stored. The sender only sends while
+// it holds credits, which the server hands back as the slowest receiver acknowledges.
+//
+//   FileRelay.send(token, roomId, file, {onOpened: relay => ..., onReceivers: n => ..., onProgress, onDone, onError})
+//       .start();                                  // once enough receivers have joined
+//   FileRelay.receive(token, relayId, {onHeader: header => ..., onProgress, onFile: (blob, header) => ..., onError});
+// Relays opened in a room are announced on /topic/room/{roomId}/relay.
+const FileRelay = (function() {
+    const utf8 = new TextDecoder('utf-8');
+
+    function relayUrl() {
+        return (location.protocol === 'https:' ? 'wss://' : 'ws://') + location.host + '/ws-relay';
+    }
+
+    // Header frame, see WebSocketMessageCodec.encodeFileHeader
+    function decodeHeader(buffer) {
+        const bytes = new Uint8Array(buffer);
+        let position = 1;
+        function readVarint() {
+            let value = 0;
+            let multiplier = 1;
+            let b;
+            do {
+                b = bytes[position++];
+                value += (b & 0x7F) * multiplier;
+                multiplier *= 128;
+            } while (b & 0x80);
+            return value;
+        }
+        function readString() {
+            const length = readVarint();
+            if (length === 0) {
+                return null;
+            }
+            const value = utf8.decode(bytes.subarray(position, position + length - 1));
+            position += length - 1;
+            return value;
+        }
+        const fileSize = readVarint();
+        const filename = readString();
+        const fileType = readString();
+        return {fileSize: fileSize, filename: filename, fileType: fileType, encrypted: bytes[position] === 1};
+    }
+
+    async function sha256Hex(blob) {
+        const digest = await crypto.subtle.digest('SHA-256', await blob.arrayBuffer());
+        return Array.from(new Uint8Array(digest)).map(b => b.toString(16).padStart(2, '0')).join('');
+    }
+
+    function send(token, roomId, file, handlers) {
+        const ws = new WebSocket(relayUrl());
+        let chunkSize = 16384;
+        let credits = 0;
+        let offset = 0;
+        let pumping = false;
+        let ended = false;
+
+        async function pump() {
+            if (pumping) {
+                return;
+            }
+            pumping = true;
+            while (credits > 0 && offset < file.size) {
+                const chunk = await file.slice(offset, offset + chunkSize).arrayBuffer();
+                credits--;
+                offset += chunk.byteLength;
+                ws.send(chunk);
+                if (handlers.onProgress) {
+                    handlers.onProgress(offset, file.size);
+                }
+            }
+            pumping = false;
+            if (offset >= file.size && !ended) {
+                ended = true;
+                ws.send(JSON.stringify({action: 'end'}));
+            }
+        }
+
+        ws.onopen = () => ws.send(JSON.stringify({
+            action: 'open', token: token, roomId: roomId,
+            filename: file.name, fileSize: file.size, fileType: file.type || 'application/octet-stream'
+        }));
+        ws.onmessage = event => {
+            const message = JSON.parse(event.data);
+            switch (message.event) {
+                case 'opened':
+                    chunkSize = message.chunkSize;
+                    if (handlers.onOpened) {
+                        handlers.onOpened(message);
+                    }
+                    break;
+                case 'receiver-joined':
+                case 'receiver-left':
+                    if (handlers.onReceivers) {
+                        handlers.onReceivers(message.receivers);
+                    }
+                    break;
+                case 'credit':
+                    credits += message.chunks;
+                    pump();
+                    break;
+                case 'done':
+                    if (handlers.onDone) {
+                        handlers.onDone(message);
+                    }
+                    ws.close();
+                    break;
+                case 'error':
+                    if (handlers.onError) {
+                        handlers.onError(message.message);
+                    }
+                    break;
+            }
+        };
+
+        return {
+            start: () => ws.send(JSON.stringify({action: 'start'})),
+            cancel: () => ws.send(JSON.stringify({action: 'cancel'}))
+        };
+    }
+
+    function receive(token, relayId, handlers) {
+        const ws = new WebSocket(relayUrl());
+        ws.binaryType = 'arraybuffer';
+        let header = null;
+        let chunks = [];
+        let received = 0;
+        let count = 0;
+
+        ws.onopen = () => ws.send(JSON.stringify({action: 'join', token: token, relayId: relayId}));
+        ws.onmessage = async event => {
+            if (event.data instanceof ArrayBuffer) {
+                if (header === null) {
+                    header = decodeHeader(event.data);
+                    if (handlers.onHeader) {
+                        handlers.onHeader(header);
+                    }
+                    return;
+                }
+                chunks.push(event.data);
+                received += event.data.byteLength;
+                count++;
+                // Acknowledging is what gives the sender credit back
+                ws.send(JSON.stringify({action: 'ack', chunks: count}));
+                if (handlers.onProgress) {
+                    handlers.onProgress(received, header.fileSize);
+                }
+                return;
+            }
+
+            const message = JSON.parse(event.data);
+            if (message.event === 'end') {
+                const blob = new Blob(chunks, {type: header.fileType});
+                chunks = [];
+                ws.close();
+                const intact = message.complete && await sha256Hex(blob) === message.sha256;
+                if (!intact) {
+                    if (handlers.onError) {
+                        handlers.onError('Received file failed verification');
+                    }
+                } else if (handlers.onFile) {
+                    handlers.onFile(blob, header);
+                }
+            } else if (message.event === 'error' && handlers.onError) {
+                handlers.onError(message.message);
+            }
+        };
+
+        return {
+            cancel: () => ws.close()
+        };
+    }
+
+    return {send: send, receive: receive};
+})();
@@ -0,0 +1,54 @@
+// Decoder for the binary room topics (/topic/room/{roomId}/bin), see WebSocketMessageCodec.java.
+// Use over the native /ws-native endpoint; SockJS (/ws) only carries text, so stay on JSON there.
+const MessageCodec = (function() {
+    const VERSION = 1;
+    const NULL_TYPE = 0xFF;
+    // Must match the order of WebSocketMessage.MessageType
+    const TYPES = ['JOIN', 'LEAVE', 'CHAT', 'FILE', 'ERROR'];
+    const utf8 = new TextDecoder('utf-8');
+    
+    function decode(buffer) {
+        const bytes = buffer instanceof Uint8Array ? buffer : new Uint8Array(buffer);
+        let position = 0;
+        
+        function readVarint() {
+            // Numbers instead of bit ops: timestamps don't fit in 32 bits
+            let value = 0;
+            let multiplier = 1;
+            let b;
+            do {
+                b = bytes[position++];
+                value += (b & 0x7F) * multiplier;
+                multiplier *= 128;
+            } while (b & 0x80);
+            return value;
+        }
+        
+        function readString() {
+            const length = readVarint();
+            if (length === 0) {
+                return null;
+            }
+            const value = utf8.decode(bytes.subarray(position, position + length - 1));
+            position += length - 1;
+            return value;
+        }
+        
+        const version = bytes[position++];
+        if (version !== VERSION) {
+            throw new Error('Unsupported message encoding version ' + version);
+        }
+        const type = bytes[position++];
+        
+        return {
+            type: type === NULL_TYPE ? null : TYPES[type],
+            seq: readVarint(),
+            timestamp: readVarint(),
+            sender: readString(),
+            content: readString(),
+            fileId: readString()
+        };
+    }
+    
+    return { decode: decode };
+})();
@@ -0,0 +1,217 @@
+// Direct browser-to-browser file transfers over WebRTC data channels.
+// The server only relays signaling (/app/room.signal/{roomId}, see SignalingService.java);
+// the file bytes never touch it. Needs a connected STOMP client and the current user's id.
+//
+//   const transfers = PeerTransfer.create(stompClient, roomId, userId, {
+//       onOffer: offer => transfers.accept(offer.offerId),   // someone offers a file
+//       onProgress: (transfer, bytes) => ...,
+//       onReceived: (transfer, blob) => ...,                  // receiver side, complete file
+//       onState: transfer => ...,                             // peer reported a state change
+//       onError: message => ...
+//   });
+//   transfers.offer(file);                                    // File from an <input type="file">
+const PeerTransfer = (function() {
+    const CHUNK_SIZE = 16 * 1024;
+    const MAX_BUFFERED = 1024 * 1024;
+    const PROGRESS_EVERY = 1024 * 1024;
+    const ICE_SERVERS = [{urls: 'stun:stun.l.google.com:19302'}];
+
+    function create(stompClient, roomId, userId, callbacks) {
+        const handlers = callbacks || {};
+        const pendingFiles = {};   // client ref -> File, until the server assigns an offer id
+        const offeredFiles = {};   // offer id -> File
+        const connections = {};    // transfer id -> {pc, transfer, ...}
+
+        function send(message) {
+            stompClient.send(`/app/room.signal/${roomId}`, {}, JSON.stringify(message));
+        }
+
+        function reportState(transferId, state, bytesTransferred) {
+            send({type: 'TRANSFER_STATE', transferId: transferId, state: state, bytesTransferred: bytesTransferred || 0});
+        }
+
+        function openConnection(transfer) {
+            const pc = new RTCPeerConnection({iceServers: ICE_SERVERS});
+            const entry = {pc: pc, transfer: transfer, received: [], receivedBytes: 0, reportedBytes: 0};
+            connections[transfer.transferId] = entry;
+
+            pc.onicecandidate = event => {
+                if (event.candidate) {
+                    send({type: 'ICE_CANDIDATE', transferId: transfer.transferId, payload: event.candidate.toJSON()});
+                }
+            };
+            pc.onconnectionstatechange = () => {
+                if (pc.connectionState === 'failed') {
+                    finish(entry, 'FAILED');
+                }
+            };
+            return entry;
+        }
+
+        function finish(entry, state) {
+            if (entry.done) {
+                return;
+            }
+            entry.done = true;
+            reportState(entry.transfer.transferId, state, entry.receivedBytes || entry.sentBytes);
+            setTimeout(() => entry.pc.close(), 1000);
+            delete connections[entry.transfer.transferId];
+        }
+
+        // Sender: open the data channel and stream the file, pausing while the channel buffer is full
+        async function startSending(transfer) {
+            const file = offeredFiles[transfer.offerId];
+            if (!file) {
+                reportState(transfer.transferId, 'CANCELLED');
+                return;
+            }
+            const entry = openConnection(transfer);
+            entry.sentBytes = 0;
+            const channel = entry.pc.createDataChannel('file');
+            channel.binaryType = 'arraybuffer';
+            channel.bufferedAmountLowThreshold = MAX_BUFFERED / 2;
+
+            channel.onopen = async () => {
+                reportState(transfer.transferId, 'TRANSFERRING', 0);
+                try {
+                    for (let offset = 0; offset < file.size; offset += CHUNK_SIZE) {
+                        if (channel.bufferedAmount > MAX_BUFFERED) {
+                            await new Promise(resolve => { channel.onbufferedamountlow = resolve; });
+                        }
+                        channel.send(await file.slice(offset, offset + CHUNK_SIZE).arrayBuffer());
+                        entry.sentBytes = Math.min(file.size, offset + CHUNK_SIZE);
+                        if (handlers.onProgress) {
+                            handlers.onProgress(transfer, entry.sentBytes);
+                        }
+                    }
+                } catch (error) {
+                    finish(entry, 'FAILED');
+                }
+                // The receiver reports COMPLETED once it has every byte
+            };
+
+            const description = await entry.pc.createOffer();
+            await entry.pc.setLocalDescription(description);
+            send({type: 'OFFER', transferId: transfer.transferId, payload: description});
+        }
+
+        // Receiver: answer the sender's offer and collect chunks until the announced size arrives
+        async function answer(message) {
+            const entry = connections[message.transferId];
+            if (!entry) {
+                return;
+            }
+            entry.pc.ondatachannel = event => {
+                const channel = event.channel;
+                channel.binaryType = 'arraybuffer';
+                channel.onmessage = chunk => {
+                    entry.received.push(chunk.data);
+                    entry.receivedBytes += chunk.data.byteLength;
+                    if (handlers.onProgress) {
+                        handlers.onProgress(entry.transfer, entry.receivedBytes);
+                    }
+                    if (entry.receivedBytes - entry.reportedBytes >= PROGRESS_EVERY) {
+                        entry.reportedBytes = entry.receivedBytes;
+                        reportState(entry.transfer.transferId, 'TRANSFERRING', entry.receivedBytes);
+                    }
+                    if (entry.receivedBytes >= entry.transfer.fileSize) {
+                        const blob = new Blob(entry.received);
+                        entry.received = [];
+                        finish(entry, 'COMPLETED');
+                        if (handlers.onReceived) {
+                            handlers.onReceived(entry.transfer, blob);
+                        }
+                    }
+                };
+            };
+            await entry.pc.setRemoteDescription(message.payload);
+            const description = await entry.pc.createAnswer();
+            await entry.pc.setLocalDescription(description);
+            send({type: 'ANSWER', transferId: message.transferId, payload: description});
+        }
+
+        function onRoomSignal(frame) {
+            const message = JSON.parse(frame.body);
+            if (message.type !== 'FILE_OFFER') {
+                return;
+            }
+            if (message.fromUserId === userId) {
+                const file = pendingFiles[message.payload];
+                if (file) {
+                    delete pendingFiles[message.payload];
+                    offeredFiles[message.offerId] = file;
+                }
+            } else if (handlers.onOffer) {
+                handlers.onOffer(message.offer);
+            }
+        }
+
+        async function onUserSignal(frame) {
+            const message = JSON.parse(frame.body);
+            const entry = connections[message.transferId];
+            switch (message.type) {
+                case 'FILE_ACCEPT':
+                    if (message.transfer.senderId === userId) {
+                        await startSending(message.transfer);
+                    } else {
+                        openConnection(message.transfer);
+                    }
+                    break;
+                case 'OFFER':
+                    await answer(message);
+                    break;
+                case 'ANSWER':
+                    if (entry) {
+                        await entry.pc.setRemoteDescription(message.payload);
+                    }
+                    break;
+                case 'ICE_CANDIDATE':
+                    if (entry) {
+                        await entry.pc.addIceCandidate(message.payload);
+                    }
+                    break;
+                case 'TRANSFER_STATE':
+                    if (entry && ['COMPLETED', 'FAILED', 'CANCELLED'].includes(message.transfer.state)) {
+                        entry.done = true;
+                        entry.pc.close();
+                        delete connections[message.transferId];
+                    }
+                    if (handlers.onState) {
+                        handlers.onState(message.transfer);
+                    }
+                    break;
+                case 'ERROR':
+                    if (handlers.onError) {
+                        handlers.onError(message.error);
+                    }
+                    break;
+            }
+        }
+
+        stompClient.subscribe(`/topic/room/${roomId}/signal`, onRoomSignal);
+        stompClient.subscribe('/user/queue/signal', onUserSignal);
+
+        return {
+            offer: function(file, fileId) {
+                const ref = Math.random().toString(36).slice(2);
+                pendingFiles[ref] = file;
+                send({
+                    type: 'FILE_OFFER',
+                    payload: ref,
+                    offer: {fileId: fileId || null, filename: file.name, fileSize: file.size, fileType: file.type}
+                });
+            },
+            accept: function(offerId) {
+                send({type: 'FILE_ACCEPT', offerId: offerId});
+            },
+            cancel: function(transferId) {
+                const entry = connections[transferId];
+                if (entry) {
+                    finish(entry, 'CANCELLED');
+                }
+            }
+        };
+    }
+
+    return {create: create};
+})();